@@ -0,0 +1,179 @@
+package dev.seabird.app;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+
+/**
+ * Generates media fixtures for the benchmarks, so they run offline without sample files.
+ *
+ * <p>Each fixture carries {@link #CREATION_TIME} in the place a camera would write it:
+ * <ul>
+ *   <li><b>JPEG</b> – a noisy 1600x1200 image with an EXIF {@code DateTimeOriginal}.</li>
+ *   <li><b>MP4</b> – {@code ftyp}, a large {@code mdat} and the {@code moov}/{@code mvhd} box at
+ *       the end, the layout most cameras write and the slowest one to scan.</li>
+ *   <li><b>RAW</b> – a TIFF-structured file (as ARW/NEF are) with an EXIF sub-IFD, followed by
+ *       filler standing in for the sensor data.</li>
+ * </ul>
+ */
+final class BenchmarkFixtures
+{
+	private BenchmarkFixtures() {}
+
+	/** The creation time written into every fixture. */
+	static final LocalDateTime CREATION_TIME = LocalDateTime.of(2024, 5, 1, 7, 30, 0);
+
+	private static final int JPEG_WIDTH = 1600;
+	private static final int JPEG_HEIGHT = 1200;
+	private static final int VIDEO_PAYLOAD_BYTES = 64 << 20;
+	private static final int RAW_PAYLOAD_BYTES = 24 << 20;
+	private static final long MP4_EPOCH_OFFSET = 2_082_844_800L; // seconds from 1904 to 1970
+
+	/**
+	 * Writes a fixture of the given format.
+	 *
+	 * @param dir    the directory to create it in
+	 * @param format {@code jpg}, {@code mp4} or {@code arw}
+	 * @return the fixture file
+	 * @throws IOException if the fixture cannot be written
+	 */
+	static Path create(Path dir, String format) throws IOException
+	{
+		Path f = dir.resolve("fixture." + format);
+		switch (format)
+		{
+			case "jpg" -> writeJpeg(f);
+			case "mp4" -> writeMp4(f);
+			case "arw" -> writeRaw(f);
+			default -> throw new IllegalArgumentException("Unknown fixture format " + format);
+		}
+		return f;
+	}
+
+	/**
+	 * Deletes a fixture directory and everything in it.
+	 *
+	 * @param dir the directory
+	 * @throws IOException if a file cannot be deleted
+	 */
+	static void delete(Path dir) throws IOException
+	{
+		try (Stream<Path> files = Files.walk(dir))
+		{
+			for (Path p : files.sorted(Comparator.reverseOrder()).toList())
+				Files.delete(p);
+		}
+	}
+
+	private static void writeJpeg(Path f) throws IOException
+	{
+		Random rnd = new Random(1);
+		BufferedImage img = new BufferedImage(JPEG_WIDTH, JPEG_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < JPEG_HEIGHT; y++)
+		{
+			for (int x = 0; x < JPEG_WIDTH; x++)
+				img.setRGB(x, y, rnd.nextInt());
+		}
+
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		ImageIO.write(img, "jpg", plain);
+
+		TiffOutputSet outputSet = new TiffOutputSet();
+		outputSet.getOrCreateExifDirectory().add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL,
+				CREATION_TIME.format(CreationDateProvider.imageDtf));
+
+		try (OutputStream out = Files.newOutputStream(f))
+		{
+			new ExifRewriter().updateExifMetadataLossless(plain.toByteArray(), out, outputSet);
+		}
+	}
+
+	private static void writeMp4(Path f) throws IOException
+	{
+		long created = CREATION_TIME.toEpochSecond(ZoneOffset.UTC) + MP4_EPOCH_OFFSET;
+
+		ByteBuffer ftyp = ByteBuffer.allocate(24)
+				.putInt(24).put(ascii("ftyp")).put(ascii("isom")).putInt(0x200).put(ascii("isom")).put(ascii("mp41"))
+				.flip();
+
+		// version 0 mvhd: 100 bytes of payload after the 8-byte box header
+		ByteBuffer mvhd = ByteBuffer.allocate(108).putInt(108).put(ascii("mvhd"))
+				.putInt(0).putInt((int) created).putInt((int) created).putInt(1000).putInt(60_000);
+		mvhd.position(108).flip();
+		ByteBuffer moov = ByteBuffer.allocate(8 + 108).putInt(8 + 108).put(ascii("moov")).put(mvhd).flip();
+
+		try (OutputStream out = Files.newOutputStream(f))
+		{
+			out.write(ftyp.array());
+			writeBox(out, "mdat", VIDEO_PAYLOAD_BYTES);
+			out.write(moov.array());
+		}
+	}
+
+	private static void writeRaw(Path f) throws IOException
+	{
+		byte[] dateTime = (CREATION_TIME.format(CreationDateProvider.imageDtf) + "\0").getBytes(StandardCharsets.US_ASCII);
+
+		int ifd0 = 8;
+		int exifIfd = ifd0 + 2 + 12 + 4;
+		int dateValue = exifIfd + 2 + 12 + 4;
+		int headerSize = dateValue + dateTime.length;
+
+		ByteBuffer tiff = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN)
+				.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(ifd0)
+				// IFD0: ExifIFDPointer
+				.putShort((short) 1)
+				.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(exifIfd)
+				.putInt(0)
+				// Exif IFD: DateTimeOriginal
+				.putShort((short) 1)
+				.putShort((short) 0x9003).putShort((short) 2).putInt(dateTime.length).putInt(dateValue)
+				.putInt(0)
+				.put(dateTime);
+
+		try (OutputStream out = Files.newOutputStream(f))
+		{
+			out.write(tiff.array());
+			writeFiller(out, RAW_PAYLOAD_BYTES);
+		}
+	}
+
+	private static void writeBox(OutputStream out, String type, int payloadBytes) throws IOException
+	{
+		out.write(ByteBuffer.allocate(8).putInt(8 + payloadBytes).put(ascii(type)).array());
+		writeFiller(out, payloadBytes);
+	}
+
+	private static void writeFiller(OutputStream out, int bytes) throws IOException
+	{
+		Random rnd = new Random(2);
+		byte[] block = new byte[1 << 16];
+		for (int left = bytes; left > 0; left -= block.length)
+		{
+			rnd.nextBytes(block);
+			out.write(block, 0, Math.min(left, block.length));
+		}
+	}
+
+	private static byte[] ascii(String s)
+	{
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+}
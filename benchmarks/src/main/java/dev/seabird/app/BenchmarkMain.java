@@ -0,0 +1,40 @@
+package dev.seabird.app;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so every result reports allocation rate
+ * ({@code gc.alloc.rate.norm}, bytes per operation) next to throughput. Results are also written
+ * to {@code jmh-result.json}.
+ *
+ * <p>Accepts the usual JMH command line, e.g. a benchmark regex or {@code -p format=jpg}.
+ */
+public final class BenchmarkMain
+{
+	private BenchmarkMain() {}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException
+	{
+		CommandLineOptions cmdLine = new CommandLineOptions(args);
+
+		OptionsBuilder builder = new OptionsBuilder();
+		builder.parent(cmdLine);
+		if (cmdLine.getIncludes().isEmpty())
+			builder.include("dev\\.seabird\\.app\\..*Benchmark");
+
+		Options opts = builder
+				.addProfiler(GCProfiler.class)
+				.resultFormat(cmdLine.getResultFormat().orElse(ResultFormatType.JSON))
+				.result(cmdLine.getResult().orElse("jmh-result.json"))
+				.build();
+
+		new Runner(opts).run();
+	}
+}
@@ -0,0 +1,103 @@
+package dev.seabird.app;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeMap;
+import com.google.common.collect.TreeRangeMap;
+
+/**
+ * Checklist lookup by media time: {@link ChecklistIntervalIndex} against the Guava
+ * {@link TreeRangeMap} it replaced.
+ *
+ * <p>Checklists are generated back to back with random gaps and durations, as a long-time
+ * eBirder's export looks. Half of the queried times fall inside a checklist.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChecklistLookupBenchmark
+{
+	private static final int NUM_QUERIES = 1 << 12;
+	private static final LocalDateTime FIRST_CHECKLIST = LocalDateTime.of(2005, 1, 1, 6, 0);
+
+	@Param({ "60000" })
+	public int numChecklists;
+
+	private ChecklistIntervalIndex index;
+	private RangeMap<LocalDateTime, String> rangeMap;
+	private LocalDateTime[] queries;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void build()
+	{
+		Random rnd = new Random(42);
+		ChecklistIntervalIndex.Builder indexBuilder = ChecklistIntervalIndex.builder();
+		TreeRangeMap<LocalDateTime, String> treeRangeMap = TreeRangeMap.create();
+		LocalDateTime[] starts = new LocalDateTime[numChecklists];
+		int[] durations = new int[numChecklists];
+
+		LocalDateTime t = FIRST_CHECKLIST;
+		for (int i = 0; i < numChecklists; i++)
+		{
+			t = t.plusMinutes(10 + rnd.nextInt(600));
+			int duration = 5 + rnd.nextInt(180);
+			LocalDateTime end = t.plusMinutes(duration);
+			String subId = "S" + (100_000_000 + i);
+
+			indexBuilder.add(t, end, subId);
+			treeRangeMap.put(Range.closed(t, end), subId);
+			starts[i] = t;
+			durations[i] = duration;
+			t = end;
+		}
+
+		index = indexBuilder.build();
+		rangeMap = treeRangeMap;
+
+		queries = new LocalDateTime[NUM_QUERIES];
+		for (int q = 0; q < NUM_QUERIES; q++)
+		{
+			int i = rnd.nextInt(numChecklists);
+			queries[q] = q % 2 == 0
+					? starts[i].plusMinutes(rnd.nextInt(durations[i] + 1))
+					: starts[i].minusMinutes(1 + rnd.nextInt(5));
+		}
+	}
+
+	private LocalDateTime nextQuery()
+	{
+		return queries[next++ & (NUM_QUERIES - 1)];
+	}
+
+	@Benchmark
+	public String intervalIndex()
+	{
+		return index.get(nextQuery());
+	}
+
+	@Benchmark
+	public String treeRangeMap()
+	{
+		return rangeMap.get(nextQuery());
+	}
+}
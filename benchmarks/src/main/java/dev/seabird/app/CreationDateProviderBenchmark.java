@@ -0,0 +1,103 @@
+package dev.seabird.app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of each {@link CreationDateProvider} on a single file.
+ *
+ * <p>The EXIF provider reads generated JPEG, MP4 and RAW fixtures (see {@link BenchmarkFixtures}),
+ * so the numbers include page-cache reads but, after warmup, no disk I/O. The file name provider
+ * is configured with two extra patterns and measured on names it matches as well as on a camera
+ * name it rejects, which is the common case for photos.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CreationDateProviderBenchmark
+{
+	/** A generated media file read by the EXIF and file-modified providers. */
+	@State(Scope.Benchmark)
+	public static class MediaFixture
+	{
+		@Param({ "jpg", "mp4", "arw" })
+		public String format;
+
+		Path dir;
+		Path file;
+
+		@Setup(Level.Trial)
+		public void create() throws IOException
+		{
+			dir = Files.createTempDirectory("media-sorter-bench");
+			file = BenchmarkFixtures.create(dir, format);
+		}
+
+		@TearDown(Level.Trial)
+		public void delete() throws IOException
+		{
+			BenchmarkFixtures.delete(dir);
+		}
+	}
+
+	/** A file name in one of the formats {@link FileNameCreationDateProvider} knows, or none. */
+	@State(Scope.Benchmark)
+	public static class FileNameFixture
+	{
+		@Param({ "20240501_0730.wav", "20240501-0730.wav", "2024-05-01 0730.mp3", "2024-05-01 07_30.mp3",
+				"IMG_20240501_073000.jpg", "PXL_20240501_073000123.jpg", "IMG_4711.JPG" })
+		public String fileName;
+
+		Path file;
+
+		@Setup(Level.Trial)
+		public void create()
+		{
+			file = Path.of("media", fileName);
+		}
+	}
+
+	private final FileNameCreationDateProvider fileNameProvider = new FileNameCreationDateProvider(
+			List.of("IMG_yyyyMMdd_HHmmss", "PXL_yyyyMMdd_HHmmssSSS"));
+	private final CreationDateProvider exifProvider = new ExifCreationDateProvider();
+	private final CreationDateProvider fileModifiedProvider = new FileModifiedCreationDateProvider();
+
+	@Benchmark
+	public LocalDateTime fileName(FileNameFixture fixture)
+	{
+		return fileNameProvider.findCreationDate(fixture.file, 0L);
+	}
+
+	@Benchmark
+	public LocalDateTime exif(MediaFixture fixture) throws IOException
+	{
+		return exifProvider.findCreationDate(fixture.file, 0L);
+	}
+
+	@Benchmark
+	public LocalDateTime fileModified(MediaFixture fixture) throws IOException
+	{
+		return fileModifiedProvider.findCreationDate(fixture.file, 0L);
+	}
+}
@@ -0,0 +1,87 @@
+package dev.seabird.app;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing an eBird export of about {@link #EXPORT_MB} MB with {@link EbirdCsvIngest} on one and
+ * on several threads, in milliseconds per export. One thread is the serial
+ * {@code EbirdCsvParser} path; the others split the file. The speedup is bounded by the number
+ * of cores and by the disk, as every chunk is copied to a temporary file for the parser.
+ *
+ * <p>The export has {@link #CHECKLISTS} checklists of several rows each, in random order, with
+ * quoted comments containing commas, quotes and newlines, like a real one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvIngestBenchmark
+{
+	static final int EXPORT_MB = 128;
+	static final int CHECKLISTS = 100_000;
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	private Path dir;
+	private Path csv;
+
+	@Setup(Level.Trial)
+	public void create() throws IOException
+	{
+		dir = Files.createTempDirectory("media-sorter-bench");
+		csv = dir.resolve("MyEBirdData.csv");
+
+		Random rnd = new Random(9);
+		try (BufferedWriter w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8))
+		{
+			w.write("Submission ID,Common Name,Scientific Name,Taxonomic Order,Count,State/Province,County,Location ID,"
+					+ "Location,Latitude,Longitude,Date,Time,Protocol,Duration (Min),All Obs Reported,Distance Traveled (km),"
+					+ "Area Covered (ha),Number of Observers,Breeding Code,Observation Details,Checklist Comments,ML Catalog Numbers\n");
+			for (long written = 0, row = 0; written < (long) EXPORT_MB << 20; row++)
+			{
+				int sub = rnd.nextInt(CHECKLISTS);
+				String line = String.format("S%d,American Robin,Turdus migratorius,%d,%d,US-CA,Marin,L%d,\"Point Reyes, %d\",38.1,-122.9,"
+						+ "2024-%02d-%02d,%d:%02d %s,Traveling,%d,1,1.2,,2,,\"Seen \"\"well\"\",\nnear the pond\",,%s\n",
+						sub, row % 30000, 1 + row % 9, sub, sub, 1 + sub % 12, 1 + sub % 28, 1 + sub % 12, sub % 60,
+						sub % 2 == 0 ? "AM" : "PM", 5 + sub % 180, row % 10 == 0 ? "ML" + row : "");
+				w.write(line);
+				written += line.length();
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() throws IOException
+	{
+		BenchmarkFixtures.delete(dir);
+	}
+
+	@Benchmark
+	public int parse() throws IOException
+	{
+		return EbirdCsvIngest.parse(csv, threads, 0).size();
+	}
+}
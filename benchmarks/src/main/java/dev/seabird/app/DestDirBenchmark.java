@@ -0,0 +1,51 @@
+package dev.seabird.app;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Destination directory construction in {@link MediaSortEngine#calcDestDir} for each
+ * {@link FolderGroup}, for a file that matched a checklist and for one that did not.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DestDirBenchmark
+{
+	private static final LocalDateTime MEDIA_TIME = LocalDateTime.of(2024, 5, 1, 7, 42, 13);
+	private static final String SUB_ID = "S178333280";
+
+	@Param({ "date", "location" })
+	public FolderGroup folderGroup;
+
+	private final Path outputDir = Path.of("media", "ebird_1714548133000");
+	private final SubStats stats = new SubStats(LocalDateTime.of(2024, 5, 1, 7, 30), "US-TN", "Hamilton",
+			"Standifer Gap Marsh, Chattanooga, Hamilton County, Tennessee, US");
+
+	@Benchmark
+	public Path matched()
+	{
+		return MediaSortEngine.calcDestDir(outputDir, SUB_ID, stats, MEDIA_TIME, folderGroup);
+	}
+
+	@Benchmark
+	public Path unmatched()
+	{
+		return MediaSortEngine.calcDestDir(outputDir, null, null, MEDIA_TIME, folderGroup);
+	}
+}
@@ -0,0 +1,180 @@
+package dev.seabird.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creation date reads of one folder through the engine's date stage,
+ * {@link MediaSortEngine#dispatchDateExtraction}, in walk order and in the inode order used by
+ * {@link MediaSortCmd#isDiskOrder()}, on a simulated spinning disk. Results are in files per
+ * second.
+ *
+ * <p>The folder holds {@link #FILES} RAW headers written in shuffled name order, as a card
+ * written over several sessions would be. The simulated disk lays the files out in the order they
+ * were written, as a file system filling a fresh folder does; inode numbers play no part in the
+ * layout, so whether inode order follows it is measured rather than assumed. The disk serves one
+ * read at a time, after seeking from the previous file's position: the next file costs a
+ * track-to-track seek, farther ones follow the usual square-root seek curve up to a full stroke.
+ * The reads themselves hit the page cache, so the difference between the orders is seek time.
+ *
+ * <p>Reads run on the engine's date pool with {@link #threads} threads, which take submitted
+ * lookups in order but reach the disk in whatever order they get to it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiskOrderBenchmark
+{
+	static final int FILES = 256;
+
+	private static final int HEADER_BYTES = 64 << 10;
+	private static final long TRACK_TO_TRACK_NANOS = 100_000;
+	private static final long MIN_SEEK_NANOS = 1_000_000;
+	private static final long SEEK_RANGE_NANOS = 7_000_000;
+
+	@Param({ "name", "inode" })
+	public String order;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	private final CreationDateProvider exifProvider = new ExifCreationDateProvider();
+
+	private Path dir;
+	/** The files in walk order, that is by name. */
+	private List<MediaFile> files;
+	/** Position of each file on the simulated disk: the order it was written in. */
+	private final Map<Path, Integer> positions = new HashMap<>();
+	private int head;
+
+	private ExecutorService dateExecutor;
+	private ExecutorService dispatcher;
+
+	@Setup(Level.Trial)
+	public void create() throws IOException
+	{
+		dir = Files.createTempDirectory("media-sorter-bench");
+		Path raw = BenchmarkFixtures.create(dir, "arw");
+		byte[] header;
+		try (InputStream in = Files.newInputStream(raw))
+		{
+			header = in.readNBytes(HEADER_BYTES);
+		}
+		Files.delete(raw);
+
+		List<Integer> creationOrder = new ArrayList<>();
+		for (int i = 0; i < FILES; i++)
+			creationOrder.add(i);
+		Collections.shuffle(creationOrder, new Random(3));
+		for (int i : creationOrder)
+		{
+			Path f = Files.write(dir.resolve(String.format("DSC%05d.ARW", i)), header);
+			positions.put(f, positions.size());
+		}
+
+		files = new ArrayList<>();
+		for (int i = 0; i < FILES; i++)
+		{
+			Path f = dir.resolve(String.format("DSC%05d.ARW", i));
+			files.add(MediaFile.of(f, Files.readAttributes(f, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS), true));
+		}
+
+		dateExecutor = MediaSortEngine.newDateExecutor(threads);
+		dispatcher = Executors.newSingleThreadExecutor();
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() throws IOException
+	{
+		dateExecutor.shutdownNow();
+		dispatcher.shutdownNow();
+		BenchmarkFixtures.delete(dir);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FILES)
+	public int readFolder() throws InterruptedException, ExecutionException
+	{
+		head = 0;
+		BlockingQueue<MediaFile> walkQueue = new ArrayBlockingQueue<>(FILES + 1);
+		walkQueue.addAll(files);
+		walkQueue.add(MediaSortEngine.END_OF_FILES);
+		BlockingQueue<MediaSortEngine.PendingFile> dateQueue =
+				new ArrayBlockingQueue<>(threads * MediaSortEngine.DATE_LOOKAHEAD_PER_THREAD);
+
+		Future<?> dispatch = dispatcher.submit(() -> {
+			MediaSortEngine.dispatchDateExtraction(walkQueue, dateQueue, "inode".equals(order),
+					f -> dateExecutor.submit(() -> read(f)));
+			return null;
+		});
+
+		int found = 0;
+		for (MediaSortEngine.PendingFile pf = dateQueue.take(); pf != MediaSortEngine.END_OF_PENDING; pf = dateQueue.take())
+		{
+			if (pf.dated().get().creationDt() != null)
+				found++;
+		}
+		dispatch.get();
+		return found;
+	}
+
+	private MediaFile read(MediaFile f) throws IOException
+	{
+		LocalDateTime dt;
+		synchronized (positions)
+		{
+			seekTo(positions.get(f.path()));
+			dt = exifProvider.findCreationDate(f, 0L);
+		}
+		return dt == null ? f : f.withCreationDt(dt, "exif");
+	}
+
+	private void seekTo(int target)
+	{
+		int distance = Math.abs(target - head);
+		head = target;
+		if (distance == 0)
+			return;
+
+		long nanos = distance == 1 ? TRACK_TO_TRACK_NANOS
+				: MIN_SEEK_NANOS + (long) (SEEK_RANGE_NANOS * Math.sqrt((double) distance / FILES));
+		LockSupport.parkNanos(nanos);
+	}
+}
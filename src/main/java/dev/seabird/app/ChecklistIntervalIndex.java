@@ -0,0 +1,200 @@
+package dev.seabird.app;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable index of checklist time intervals answering "which checklist was running at this
+ * moment?".
+ *
+ * <p>Intervals are stored as parallel, sorted {@code long} arrays of epoch minutes (start and
+ * end, both inclusive, in the checklists' local time) together with a running maximum of the end
+ * times, so a point query is a binary search followed by a short backwards scan that stops as
+ * soon as no earlier checklist can still be running. Point queries do not allocate.
+ *
+ * <p><b>Overlaps.</b> When several checklists contain the queried time, candidates are ranked by
+ * <ol>
+ *   <li>latest start time first (the checklist the observer most recently began),</li>
+ *   <li>then shortest duration,</li>
+ *   <li>then the order in which the checklists were added.</li>
+ * </ol>
+ * {@link #get(LocalDateTime)} returns the first-ranked candidate and {@link #candidates(LocalDateTime)}
+ * returns all of them in rank order.
+ */
+final class ChecklistIntervalIndex
+{
+	/** An index without any checklists. */
+	static final ChecklistIntervalIndex EMPTY = builder().build();
+
+	private final long[] startMinutes;
+	private final long[] endMinutes;
+	private final long[] maxEndMinutes;
+	private final String[] subIds;
+
+	private ChecklistIntervalIndex(long[] startMinutes, long[] endMinutes, String[] subIds)
+	{
+		this.startMinutes = startMinutes;
+		this.endMinutes = endMinutes;
+		this.subIds = subIds;
+
+		this.maxEndMinutes = new long[endMinutes.length];
+		long max = Long.MIN_VALUE;
+		for (int i = 0; i < endMinutes.length; i++)
+		{
+			max = Math.max(max, endMinutes[i]);
+			maxEndMinutes[i] = max;
+		}
+	}
+
+	/** @return a builder for a new index */
+	static Builder builder()
+	{
+		return new Builder();
+	}
+
+	static long toEpochMinute(LocalDateTime t)
+	{
+		return Math.floorDiv(t.toEpochSecond(ZoneOffset.UTC), 60);
+	}
+
+	/** @return the number of checklists in the index */
+	int size()
+	{
+		return subIds.length;
+	}
+
+	/**
+	 * Returns the first-ranked checklist containing the given time.
+	 *
+	 * @param t the media time
+	 * @return the checklist's subId, or {@code null} if no checklist contains {@code t}
+	 */
+	String get(LocalDateTime t)
+	{
+		int i = firstCandidate(t.toEpochSecond(ZoneOffset.UTC));
+		return i < 0 ? null : subIds[i];
+	}
+
+	/**
+	 * Returns every checklist containing the given time, in rank order.
+	 *
+	 * @param t the media time
+	 * @return the subIds of all candidates, empty if none
+	 */
+	List<String> candidates(LocalDateTime t)
+	{
+		long tSec = t.toEpochSecond(ZoneOffset.UTC);
+		List<String> result = new ArrayList<>();
+		for (int i = lastStartingAtOrBefore(tSec); i >= 0 && maxEndMinutes[i] * 60 >= tSec; i--)
+		{
+			if (endMinutes[i] * 60 >= tSec)
+				result.add(subIds[i]);
+		}
+		return result;
+	}
+
+	private int firstCandidate(long tSec)
+	{
+		for (int i = lastStartingAtOrBefore(tSec); i >= 0 && maxEndMinutes[i] * 60 >= tSec; i--)
+		{
+			if (endMinutes[i] * 60 >= tSec)
+				return i;
+		}
+		return -1;
+	}
+
+	/** Binary search for the highest index whose start is at or before {@code tSec}. */
+	private int lastStartingAtOrBefore(long tSec)
+	{
+		int lo = 0;
+		int hi = startMinutes.length - 1;
+		int found = -1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (startMinutes[mid] * 60 <= tSec)
+			{
+				found = mid;
+				lo = mid + 1;
+			}
+			else
+				hi = mid - 1;
+		}
+		return found;
+	}
+
+	/**
+	 * Accumulates checklist intervals and sorts them into an index. Not thread-safe.
+	 */
+	static final class Builder
+	{
+		private long[] starts = new long[256];
+		private long[] ends = new long[256];
+		private final List<String> ids = new ArrayList<>();
+
+		private Builder() {}
+
+		/**
+		 * Adds a checklist.
+		 *
+		 * @param start the checklist's start time
+		 * @param end   the checklist's end time (inclusive)
+		 * @param subId the checklist's submission ID
+		 * @return this builder
+		 */
+		Builder add(LocalDateTime start, LocalDateTime end, String subId)
+		{
+			return add(toEpochMinute(start), toEpochMinute(end), subId);
+		}
+
+		/**
+		 * Adds a checklist using epoch minutes.
+		 *
+		 * @return this builder
+		 */
+		Builder add(long startMinute, long endMinute, String subId)
+		{
+			int n = ids.size();
+			if (n == starts.length)
+			{
+				starts = Arrays.copyOf(starts, n * 2);
+				ends = Arrays.copyOf(ends, n * 2);
+			}
+			starts[n] = startMinute;
+			ends[n] = endMinute;
+			ids.add(subId);
+			return this;
+		}
+
+		/** @return the index; the builder may keep being used afterwards */
+		ChecklistIntervalIndex build()
+		{
+			int n = ids.size();
+
+			// ascending storage order is the reverse of the rank order, since queries scan backwards
+			int[] order = IntStream.range(0, n).boxed()
+					.sorted(Comparator.<Integer>comparingLong(i -> starts[i])
+							.thenComparing(Comparator.<Integer>comparingLong(i -> ends[i]).reversed())
+							.thenComparing(Comparator.<Integer>reverseOrder()))
+					.mapToInt(Integer::intValue)
+					.toArray();
+
+			long[] sortedStarts = new long[n];
+			long[] sortedEnds = new long[n];
+			String[] sortedIds = new String[n];
+			for (int k = 0; k < n; k++)
+			{
+				sortedStarts[k] = starts[order[k]];
+				sortedEnds[k] = ends[order[k]];
+				sortedIds[k] = ids.get(order[k]);
+			}
+
+			return new ChecklistIntervalIndex(sortedStarts, sortedEnds, sortedIds);
+		}
+	}
+}
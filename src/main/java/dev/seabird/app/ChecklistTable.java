@@ -0,0 +1,158 @@
+package dev.seabird.app;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.SequencedMap;
+
+import fun.seabird.EbirdCsvRow;
+
+/**
+ * The checklists of a parsed eBird export: per-checklist {@link SubStats} in export order,
+ * plus a {@link ChecklistIntervalIndex} over their time intervals.
+ *
+ * <p>A table is built once per export with a {@link Builder} and is read-only afterwards,
+ * apart from the counters inside each {@link SubStats}.
+ */
+final class ChecklistTable
+{
+	/** A table without any checklists. */
+	static final ChecklistTable EMPTY = builder().build();
+
+	/**
+	 * A single checklist.
+	 *
+	 * @param subId the checklist's submission ID
+	 * @param stats the checklist's details and counters; {@link SubStats#getStartTime()} is its start
+	 * @param end   the checklist's end time (start plus duration)
+	 */
+	record Checklist(String subId, SubStats stats, LocalDateTime end) {}
+
+	private final SequencedMap<String, Checklist> checklists;
+	private final ChecklistIntervalIndex index;
+
+	private ChecklistTable(SequencedMap<String, Checklist> checklists)
+	{
+		this.checklists = Collections.unmodifiableSequencedMap(checklists);
+
+		ChecklistIntervalIndex.Builder indexBuilder = ChecklistIntervalIndex.builder();
+		for (Checklist c : checklists.values())
+			indexBuilder.add(c.stats().getStartTime(), c.end(), c.subId());
+		this.index = indexBuilder.build();
+	}
+
+	/** @return a builder for a new table */
+	static Builder builder()
+	{
+		return new Builder();
+	}
+
+	/**
+	 * Returns the checklist running at the given time.
+	 *
+	 * @param mediaTime the media time
+	 * @return the subId of the matching checklist, or {@code null} if none
+	 * @see ChecklistIntervalIndex#get(LocalDateTime)
+	 */
+	String find(LocalDateTime mediaTime)
+	{
+		return index.get(mediaTime);
+	}
+
+	/**
+	 * @param subId a submission ID
+	 * @return the stats of the checklist, or {@code null} if unknown
+	 */
+	SubStats get(String subId)
+	{
+		Checklist c = checklists.get(subId);
+		return c == null ? null : c.stats();
+	}
+
+	/** @return all checklists in export order */
+	Collection<Checklist> checklists()
+	{
+		return checklists.values();
+	}
+
+	/** @return the number of checklists */
+	int size()
+	{
+		return checklists.size();
+	}
+
+	/** Resets the local asset counts of every checklist, so a second run doesn't double them. */
+	void resetLocalCounts()
+	{
+		checklists.values().forEach(c -> c.stats().reset());
+	}
+
+	/**
+	 * Accumulates checklists from eBird CSV rows. Not thread-safe.
+	 */
+	static final class Builder
+	{
+		private final SequencedMap<String, Checklist> checklists = new LinkedHashMap<>();
+
+		private Builder() {}
+
+		/**
+		 * Parses a CSV record. The first row of each checklist defines it; every row adds its
+		 * uploaded asset count. Rows without a duration or start time are ignored.
+		 *
+		 * @param row The CSV record to be parsed.
+		 */
+		void add(EbirdCsvRow row)
+		{
+			int duration = row.getDuration();
+			if (duration <= 0 || row.getTime() == null)
+				return;
+
+			Checklist c = checklists.computeIfAbsent(row.getSubId(), subId ->
+			{
+				var subBeginTime = row.dateTime();
+				var subEndTime = subBeginTime.plusMinutes(duration);
+
+				return new Checklist(subId, new SubStats(subBeginTime,row.getSubnat1Code(),row.getSubnat2Name(),row.getLocName()), subEndTime);
+			});
+
+			var assetIds = row.getAssetIds();
+			if (!assetIds.isEmpty())
+				c.stats().incNumAssetsUploaded(assetIds.size());
+		}
+
+		/**
+		 * Appends the checklists of a builder that parsed a later part of the same export. A
+		 * checklist seen before keeps its first definition and gains the other's uploaded asset
+		 * count, so merging partial builders in file order gives the same table as a serial parse.
+		 *
+		 * @param later the builder of the following part of the export
+		 */
+		void merge(Builder later)
+		{
+			for (Checklist c : later.checklists.values())
+			{
+				Checklist existing = checklists.putIfAbsent(c.subId(), c);
+				if (existing != null)
+					existing.stats().incNumAssetsUploaded(c.stats().getNumAssetsUploaded());
+			}
+		}
+
+		/**
+		 * Adds a fully formed checklist, e.g. one restored from a snapshot.
+		 *
+		 * @param checklist the checklist
+		 */
+		void add(Checklist checklist)
+		{
+			checklists.putIfAbsent(checklist.subId(), checklist);
+		}
+
+		/** @return the table; the builder must not be used afterwards */
+		ChecklistTable build()
+		{
+			return new ChecklistTable(checklists);
+		}
+	}
+}
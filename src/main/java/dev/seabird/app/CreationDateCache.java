@@ -0,0 +1,341 @@
+package dev.seabird.app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persistent cache of resolved creation dates, keyed by absolute path, file size and
+ * last-modified time.
+ *
+ * <p>Each entry remembers which {@link CreationDateProvider} produced the date and the raw
+ * timestamp before any hour offset was applied, so a file that has not changed since an earlier
+ * run never has its metadata parsed again. The cache is stored as a compact binary file and is
+ * rewritten atomically by {@link #save()}.
+ *
+ * <p>Entries do not outlive their files: the sorter {@linkplain #removed removes} the entry of a
+ * source it deletes, and after a full walk {@link #prune} drops the entries below the walked
+ * folder whose files the walk did not {@linkplain #seen see}, e.g. because they were deleted or
+ * moved by another program. The cache thus stays as large as the media it describes rather than
+ * growing with every file ever sorted.
+ *
+ * <p>Lookups and updates are thread-safe.
+ */
+@Slf4j
+class CreationDateCache
+{
+	/** Default location of the cache file. */
+	static final Path DEFAULT_CACHE_FILE = MediaSortUtils.APP_DATA_DIR.resolve("creationDateCache.bin");
+
+	private static final int MAGIC = 0x45424344; // "EBCD"
+	private static final int VERSION = 1;
+
+	/**
+	 * A cached creation date.
+	 *
+	 * @param size           file size in bytes when the date was resolved
+	 * @param modifiedMillis last-modified time in epoch milliseconds when the date was resolved
+	 * @param providerIdx    index of the successful provider in the provider chain
+	 * @param creationDt     the raw creation date, without any hour offset
+	 */
+	record Entry(long size, long modifiedMillis, int providerIdx, LocalDateTime creationDt) {}
+
+	private final Path cacheFile;
+	private final List<String> providerNames;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	/** Keys of entries whose files the current walk saw. */
+	private final Set<String> seen = ConcurrentHashMap.newKeySet();
+	/** Keys of folders the current walk skipped as a whole; the entries of their files are kept. */
+	private final Set<String> seenFolders = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private volatile boolean dirty = false;
+
+	private CreationDateCache(Path cacheFile, List<String> providerNames)
+	{
+		this.cacheFile = cacheFile;
+		this.providerNames = providerNames;
+	}
+
+	private static String key(Path file)
+	{
+		return file.toAbsolutePath().normalize().toString();
+	}
+
+	/**
+	 * Loads the cache from disk. A missing, unreadable or outdated file yields an empty cache.
+	 *
+	 * @param cacheFile the cache file location
+	 * @param providers the current provider chain; an entry is kept only if its provider and all
+	 *                  providers before it are unchanged, see {@link CreationDateProvider#cacheKey()}
+	 * @return the loaded cache, never {@code null}
+	 */
+	static CreationDateCache load(Path cacheFile, List<CreationDateProvider> providers)
+	{
+		List<String> providerNames = providers.stream().map(CreationDateProvider::cacheKey).toList();
+		CreationDateCache cache = new CreationDateCache(cacheFile, providerNames);
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				log.warn("Ignoring creation date cache {} with unknown format", cacheFile);
+				return cache;
+			}
+
+			// a date from provider i is still valid only if providers 0..i are the same, since
+			// a changed earlier provider may now find a different date
+			int numProviders = in.readUnsignedByte();
+			int numUnchanged = 0;
+			for (int i = 0; i < numProviders; i++)
+			{
+				String name = in.readUTF();
+				if (numUnchanged == i && i < providerNames.size() && providerNames.get(i).equals(name))
+					numUnchanged++;
+			}
+
+			int numEntries = in.readInt();
+			for (int i = 0; i < numEntries; i++)
+			{
+				String path = in.readUTF();
+				long size = in.readLong();
+				long modifiedMillis = in.readLong();
+				int providerIdx = in.readUnsignedByte();
+				LocalDateTime creationDt = LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC);
+
+				if (providerIdx < numUnchanged)
+					cache.entries.put(path, new Entry(size, modifiedMillis, providerIdx, creationDt));
+			}
+			log.info("Loaded {} cached creation dates", cache.entries.size());
+		}
+		catch (NoSuchFileException e)
+		{
+			// first run
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.warn("Could not read creation date cache {}, starting empty", cacheFile, e);
+			cache.entries.clear();
+		}
+
+		return cache;
+	}
+
+	/**
+	 * Returns the cached entry for a file if its size and last-modified time still match.
+	 *
+	 * @param file           the media file
+	 * @param size           the current file size
+	 * @param modifiedMillis the current last-modified time in epoch milliseconds
+	 * @return the matching entry, or {@code null} on a cache miss
+	 */
+	Entry lookup(Path file, long size, long modifiedMillis)
+	{
+		Entry e = entries.get(key(file));
+		if (e != null && e.size() == size && e.modifiedMillis() == modifiedMillis)
+		{
+			hits.increment();
+			return e;
+		}
+
+		misses.increment();
+		return null;
+	}
+
+	/**
+	 * Records the creation date resolved for a file.
+	 *
+	 * @param file           the media file
+	 * @param size           the file size
+	 * @param modifiedMillis the last-modified time in epoch milliseconds
+	 * @param providerIdx    index of the provider that produced the date
+	 * @param creationDt     the raw creation date, without any hour offset
+	 */
+	void put(Path file, long size, long modifiedMillis, int providerIdx, LocalDateTime creationDt)
+	{
+		entries.put(key(file), new Entry(size, modifiedMillis, providerIdx, creationDt));
+		dirty = true;
+	}
+
+	/**
+	 * Re-keys the entry of a file that has been moved, so the next run finds it at its new location.
+	 *
+	 * @param from the previous location
+	 * @param to   the new location
+	 */
+	void moved(Path from, Path to)
+	{
+		Entry e = entries.remove(key(from));
+		if (e != null)
+		{
+			entries.put(key(to), e);
+			seen.add(key(to));
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Drops the entry of a file that has been deleted.
+	 *
+	 * @param file the deleted file
+	 */
+	void removed(Path file)
+	{
+		if (entries.remove(key(file)) != null)
+			dirty = true;
+	}
+
+	/**
+	 * Marks a file as present, so {@link #prune} keeps its entry.
+	 *
+	 * @param file a file found by the walk
+	 */
+	void seen(Path file)
+	{
+		String k = key(file);
+		if (entries.containsKey(k))
+			seen.add(k);
+	}
+
+	/**
+	 * Marks every file directly in a folder as present, for a folder the walk skips without
+	 * listing it.
+	 *
+	 * @param dir the skipped folder
+	 */
+	void seenFolder(Path dir)
+	{
+		seenFolders.add(key(dir));
+	}
+
+	/**
+	 * Drops the entries of files below a walked folder that the walk did not see, and forgets
+	 * what it saw. Must only be called after a complete walk.
+	 *
+	 * @param root    the walked folder
+	 * @param skipped a folder below {@code root} the walk left out on purpose; its entries are kept
+	 */
+	void prune(Path root, Path skipped)
+	{
+		String separator = root.getFileSystem().getSeparator();
+		String rootPrefix = key(root) + separator;
+		String skippedPrefix = key(skipped) + separator;
+
+		int pruned = 0;
+		for (String k : List.copyOf(entries.keySet()))
+		{
+			if (!k.startsWith(rootPrefix) || k.startsWith(skippedPrefix) || seen.contains(k)
+					|| seenFolders.contains(k.substring(0, k.lastIndexOf(separator))))
+				continue;
+			entries.remove(k);
+			pruned++;
+		}
+		seen.clear();
+		seenFolders.clear();
+
+		if (pruned > 0)
+		{
+			dirty = true;
+			log.info("Dropped {} cached creation dates of files no longer in {}", pruned, root);
+		}
+	}
+
+	/**
+	 * Re-keys every entry below a directory that has been moved or whose contents have been moved
+	 * into another directory.
+	 *
+	 * @param fromDir the previous directory location
+	 * @param toDir   the directory the contents now live in
+	 */
+	void movedTree(Path fromDir, Path toDir)
+	{
+		String fromPrefix = key(fromDir) + fromDir.getFileSystem().getSeparator();
+		String toPrefix = key(toDir) + toDir.getFileSystem().getSeparator();
+
+		for (String k : List.copyOf(entries.keySet()))
+		{
+			if (!k.startsWith(fromPrefix))
+				continue;
+
+			Entry e = entries.remove(k);
+			if (e != null)
+			{
+				String moved = toPrefix + k.substring(fromPrefix.length());
+				entries.put(moved, e);
+				if (seen.remove(k))
+					seen.add(moved);
+				dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Writes the cache to disk if it changed. The file is replaced atomically so an interrupted
+	 * write never leaves a corrupt cache behind.
+	 */
+	void save()
+	{
+		if (!dirty)
+			return;
+
+		try
+		{
+			Files.createDirectories(cacheFile.getParent());
+			Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+
+				out.writeByte(providerNames.size());
+				for (String name : providerNames)
+					out.writeUTF(name);
+
+				List<Map.Entry<String, Entry>> snapshot = List.copyOf(entries.entrySet());
+				out.writeInt(snapshot.size());
+				for (Map.Entry<String, Entry> me : snapshot)
+				{
+					Entry e = me.getValue();
+					out.writeUTF(me.getKey());
+					out.writeLong(e.size());
+					out.writeLong(e.modifiedMillis());
+					out.writeByte(e.providerIdx());
+					out.writeLong(e.creationDt().toEpochSecond(ZoneOffset.UTC));
+				}
+			}
+
+			Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			dirty = false;
+		}
+		catch (IOException e)
+		{
+			log.warn("Could not save creation date cache {}", cacheFile, e);
+		}
+	}
+
+	/** Logs the hit and miss counts accumulated since the cache was loaded. */
+	void logStats()
+	{
+		long h = hits.sum();
+		long m = misses.sum();
+		if (h + m > 0)
+			log.info("Creation date cache: {} hits, {} misses ({}% hit rate)", h, m, Math.round(100.0 * h / (h + m)));
+	}
+}
@@ -71,6 +71,41 @@ public interface CreationDateProvider
         return mediaTime == null ? null : (hrsOffset == 0l ? mediaTime : mediaTime.plusHours(hrsOffset));
     }
 
+    /**
+     * Indicates whether {@link #findCreationDate(Path, long)} applies its {@code hrsOffset}
+     * argument. Providers that ignore the offset return {@code false}, which lets callers cache
+     * the raw timestamp and apply the offset themselves.
+     *
+     * @return {@code true} if the offset is added to the returned timestamp
+     */
+    default boolean appliesHrsOffset()
+    {
+        return false;
+    }
+
+    /**
+     * Indicates whether {@link #findCreationDate(Path, long)} reads the file's content, as
+     * opposed to only its name or attributes.
+     *
+     * @return {@code true} if the provider opens and reads the file
+     */
+    default boolean readsFileContent()
+    {
+        return false;
+    }
+
+    /**
+     * Identifies this provider and its configuration in the {@link CreationDateCache}. Cached
+     * dates are discarded when the key of their provider, or of a provider before it in the
+     * chain, changes.
+     *
+     * @return the class name, followed by any configuration that affects the results
+     */
+    default String cacheKey()
+    {
+        return getClass().getName();
+    }
+
     /**
      * Determines the creation date of the given file.
      *
@@ -82,4 +117,20 @@ public interface CreationDateProvider
      * @throws IOException if an I/O error occurs while reading the file
      */
     LocalDateTime findCreationDate(Path f, long hrsOffset) throws IOException;
+
+    /**
+     * Determines the creation date of a walked file. Providers that only need the attributes
+     * captured by the walk override this to avoid querying the file system again.
+     *
+     * @param f         the walked media file
+     * @param hrsOffset the number of hours to add to the raw timestamp extracted
+     *                  from the file; use {@code 0} to leave the time unchanged
+     * @return the creation date/time of the file, or {@code null} if it cannot
+     *         be determined
+     * @throws IOException if an I/O error occurs while reading the file
+     */
+    default LocalDateTime findCreationDate(MediaFile f, long hrsOffset) throws IOException
+    {
+        return findCreationDate(f.path(), hrsOffset);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+package dev.seabird.app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * What one sort run knows about its destination folders.
+ *
+ * <p>Thousands of files usually land in the same checklist folder. The cache remembers, per run:
+ * <ul>
+ *   <li>the destination directory of each checklist and date, so the abbreviated and sanitized
+ *       location name is built once per checklist rather than once per file;</li>
+ *   <li>which destination directories exist, so each is created once;</li>
+ *   <li>which file names are taken in them, so a move into a known folder needs no existence
+ *       check and costs a single rename.</li>
+ * </ul>
+ *
+ * <p>Names are recorded as files are placed. A name being copied to from another file system is
+ * reserved while the copy is in flight and released if it fails. A directory that already existed when first seen is
+ * listed once. Collisions the cache cannot know of, e.g. with files created by another program
+ * during the run, still surface as a failed move and are then recorded.
+ *
+ * <p>Not thread-safe; the cache belongs to the move stage.
+ */
+final class DestinationCache
+{
+	/** A checklist (or no checklist) on a day, under a parent folder such as a year. */
+	private record Key(Path parentDir, String subId, LocalDate date) {}
+
+	private final FolderGroup folderGroup;
+	private final Map<Key, Path> destDirs = new HashMap<>();
+	private final Map<Path, Set<String>> takenNames = new HashMap<>();
+
+	/**
+	 * @param folderGroup the folder grouping of the run
+	 */
+	DestinationCache(FolderGroup folderGroup)
+	{
+		this.folderGroup = folderGroup;
+	}
+
+	/**
+	 * Returns the destination directory for a file, creating it on first use.
+	 *
+	 * @param parentDir the output directory, or its year folder
+	 * @param subId     the matched checklist, {@code null} if none matched
+	 * @param ss        the stats of {@code subId}, ignored if {@code subId} is {@code null}
+	 * @param mediaTime the creation date of the file
+	 * @return the existing destination directory
+	 * @throws IOException if the directory cannot be created or listed
+	 * @see MediaSortEngine#calcDestDir
+	 */
+	Path directoryFor(Path parentDir, String subId, SubStats ss, LocalDateTime mediaTime) throws IOException
+	{
+		Key key = new Key(parentDir, subId, mediaTime.toLocalDate());
+		Path dir = destDirs.get(key);
+		if (dir == null)
+		{
+			dir = MediaSortEngine.calcDestDir(parentDir, subId, ss, mediaTime, folderGroup);
+			destDirs.put(key, dir);
+		}
+
+		if (!takenNames.containsKey(dir))
+			takenNames.put(dir, prepare(dir));
+
+		return dir;
+	}
+
+	private static Set<String> prepare(Path dir) throws IOException
+	{
+		Set<String> names = new HashSet<>();
+		if (Files.isDirectory(dir))
+		{
+			try (Stream<Path> existing = Files.list(dir))
+			{
+				existing.forEach(p -> names.add(p.getFileName().toString()));
+			}
+		}
+		else
+			Files.createDirectories(dir);
+
+		return names;
+	}
+
+	/**
+	 * @param file a file in a directory returned by {@link #directoryFor}
+	 * @return {@code true} if a file of that name is known to exist
+	 */
+	boolean isTaken(Path file)
+	{
+		Set<String> names = takenNames.get(file.getParent());
+		return names != null && names.contains(file.getFileName().toString());
+	}
+
+	/**
+	 * Records that a file now exists.
+	 *
+	 * @param file a file in a directory returned by {@link #directoryFor}
+	 */
+	void markTaken(Path file)
+	{
+		takenNames.computeIfAbsent(file.getParent(), _ -> new HashSet<>()).add(file.getFileName().toString());
+	}
+
+	/**
+	 * Frees a name recorded by {@link #markTaken}, e.g. of a copy that failed.
+	 *
+	 * @param file a file in a directory returned by {@link #directoryFor}
+	 */
+	void release(Path file)
+	{
+		Set<String> names = takenNames.get(file.getParent());
+		if (names != null)
+			names.remove(file.getFileName().toString());
+	}
+}
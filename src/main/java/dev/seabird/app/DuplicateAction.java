@@ -0,0 +1,7 @@
+package dev.seabird.app;
+
+/** What happens to a file whose content is already in its destination folder. */
+public enum DuplicateAction {
+    skip,   // remove the source, the destination already has it
+    link    // remove the source and keep its name as a hard link to the existing copy
+}
@@ -0,0 +1,375 @@
+package dev.seabird.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+/**
+ * Finds files whose content is already in their destination folder.
+ *
+ * <p>Candidates are narrowed down in stages, each more expensive than the last:
+ * <ol>
+ *   <li>the files of the destination folder are bucketed by size, and only files of the same size
+ *       are compared;</li>
+ *   <li>a CRC32C of the first and last {@value #PARTIAL_BLOCK_SIZE} bytes rules out most files of
+ *       equal size, e.g. recordings of the same length;</li>
+ *   <li>only if those agree are the whole files hashed with SHA-256, the new file and all its
+ *       remaining candidates in parallel.</li>
+ * </ol>
+ * Hashes are remembered with the modification time they were computed for, so a file that is
+ * compared against several new files is read once.
+ *
+ * <p>A file of the same name but different content is a conflict. It is resolved by a
+ * deterministic new name, {@code name_1.ext}, {@code name_2.ext} and so on, so importing the same
+ * card again finds the earlier copies under the same names.
+ *
+ * <p>A run sorts into a folder of its own that is merged into the library when it ends. Each of
+ * its destination folders is therefore checked together with the library folder it will be
+ * merged into: duplicates are found in both, and a chosen name is free in both.
+ *
+ * <p>Not thread-safe; the detector belongs to the move stage, like the {@link DestinationCache}
+ * whose file names it uses.
+ */
+final class DuplicateDetector implements AutoCloseable
+{
+	private static final int PARTIAL_BLOCK_SIZE = 64 * 1024;
+	private static final int HASH_BUFFER_SIZE = 1 << 20;
+	private static final int MAX_HASH_THREADS = 4;
+
+	/**
+	 * Where a file should go.
+	 *
+	 * @param target      a free name in the destination folder, or the duplicate
+	 * @param isDuplicate whether {@code target} already holds the file's content
+	 */
+	record Resolution(Path target, boolean isDuplicate) {}
+
+	/** Hashes of a file's content as of its modification time; the full hash is computed on demand. */
+	private static final class Hashes
+	{
+		final long modifiedMillis;
+		final long partial;
+		volatile byte[] full;
+
+		Hashes(long modifiedMillis, long partial)
+		{
+			this.modifiedMillis = modifiedMillis;
+			this.partial = partial;
+		}
+	}
+
+	private static final ThreadLocal<ByteBuffer> hashBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(HASH_BUFFER_SIZE));
+
+	/** The files of a folder by size, and their names. */
+	private record Folder(Map<Long, List<Path>> bySize, Set<String> names) {}
+
+	private final DestinationCache destinations;
+	private final Function<Path, Path> mergeTargetOf;
+	private final ExecutorService hashers;
+	private final RunMetrics.Stat partialStat;
+	private final RunMetrics.Stat fullStat;
+
+	private final Map<Path, Folder> folders = new HashMap<>();
+	private final Map<Path, Hashes> hashes = new ConcurrentHashMap<>();
+
+	/**
+	 * @param destinations  the file names known to be taken
+	 * @param mergeTargetOf maps a destination folder to the library folder it will be merged
+	 *                      into, or to {@code null} if it is not merged
+	 * @param metrics       receives the hashing timings
+	 */
+	DuplicateDetector(DestinationCache destinations, Function<Path, Path> mergeTargetOf, RunMetrics metrics)
+	{
+		this.destinations = destinations;
+		this.mergeTargetOf = mergeTargetOf;
+		this.hashers = Executors.newFixedThreadPool(Math.min(MAX_HASH_THREADS, Runtime.getRuntime().availableProcessors()),
+				Thread.ofPlatform().name("duplicate-hash-", 0).daemon().factory());
+		this.partialStat = metrics.stat("duplicates.partialHash");
+		this.fullStat = metrics.stat("duplicates.fullHash");
+	}
+
+	/**
+	 * Decides where a file goes in its destination folder.
+	 *
+	 * @param file     the file to place
+	 * @param destFile the file's name in the destination folder, which must exist
+	 * @return the duplicate of the file if the folder has one, otherwise {@code destFile} or, if
+	 *         that is taken by different content, the first free numbered variant of it
+	 * @throws IOException          if the folder or a file cannot be read
+	 * @throws InterruptedException if interrupted while hashing
+	 */
+	Resolution resolve(MediaFile file, Path destFile) throws IOException, InterruptedException
+	{
+		Path dir = destFile.getParent();
+		List<Path> sameSize = new ArrayList<>(folder(dir).bySize().getOrDefault(file.size(), List.of()));
+		Path mergeTarget = mergeTargetOf.apply(dir);
+		if (mergeTarget != null)
+			sameSize.addAll(folder(mergeTarget).bySize().getOrDefault(file.size(), List.of()));
+
+		Path duplicate = findDuplicate(file, sameSize);
+		if (duplicate != null)
+			return new Resolution(duplicate, true);
+
+		Path target = destFile;
+		String baseName = MediaSortUtils.getBaseName(file.name());
+		String ext = MediaSortUtils.getFileExtension(file.path());
+		for (int n = 1; !isFree(target) && !isLibraryLocation(file, target); n++)
+			target = destFile.resolveSibling(baseName + "_" + n + (ext.isEmpty() ? "" : "." + ext));
+
+		return new Resolution(target, false);
+	}
+
+	/** Whether a file already sits where {@code destFile} will be merged to, i.e. it keeps its place. */
+	private boolean isLibraryLocation(MediaFile file, Path destFile)
+	{
+		Path mergeTarget = mergeTargetOf.apply(destFile.getParent());
+		return mergeTarget != null && mergeTarget.resolve(destFile.getFileName().toString()).equals(file.path());
+	}
+
+	/**
+	 * @param destFile a file in a destination folder
+	 * @return {@code true} if the name is neither taken in the folder nor in the library folder
+	 *         it will be merged into
+	 * @throws IOException if the library folder cannot be listed
+	 */
+	boolean isFree(Path destFile) throws IOException
+	{
+		if (destinations.isTaken(destFile))
+			return false;
+		Path mergeTarget = mergeTargetOf.apply(destFile.getParent());
+		return mergeTarget == null || !folder(mergeTarget).names().contains(destFile.getFileName().toString());
+	}
+
+	/**
+	 * Records a file placed in a destination folder, so later files are compared with it.
+	 *
+	 * @param source the file's location before it was placed, whose hashes are kept
+	 * @param placed the file's new location
+	 * @param size   the file's size
+	 */
+	void added(Path source, Path placed, long size)
+	{
+		Folder folder = folders.get(placed.getParent());
+		if (folder != null)
+		{
+			folder.bySize().computeIfAbsent(size, _ -> new ArrayList<>(1)).add(placed);
+			folder.names().add(placed.getFileName().toString());
+		}
+
+		Hashes h = hashes.remove(source);
+		if (h != null)
+			hashes.put(placed, h);
+	}
+
+	/** Lists a folder once; a folder that does not exist is empty. */
+	private Folder folder(Path dir) throws IOException
+	{
+		Folder folder = folders.get(dir);
+		if (folder != null)
+			return folder;
+
+		Folder listed = new Folder(new HashMap<>(), new HashSet<>());
+		Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path f, BasicFileAttributes attrs)
+			{
+				if (f.equals(dir))
+					return FileVisitResult.CONTINUE;
+				listed.names().add(f.getFileName().toString());
+				if (attrs.isRegularFile())
+					listed.bySize().computeIfAbsent(attrs.size(), _ -> new ArrayList<>(1)).add(f);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path f, IOException exc)
+			{
+				// missing, or a broken link
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		folders.put(dir, listed);
+		return listed;
+	}
+
+	private Path findDuplicate(MediaFile file, List<Path> sameSize) throws IOException, InterruptedException
+	{
+		if (sameSize.isEmpty())
+			return null;
+
+		Hashes own = hashesOf(file.path());
+		if (own == null)
+			return null;
+
+		List<Path> candidates = new ArrayList<>();
+		List<Hashes> candidateHashes = new ArrayList<>();
+		for (Path other : sameSize)
+		{
+			// the file itself, e.g. when sorting the library again, or another name for it
+			if (isSameFile(file.path(), other))
+				continue;
+
+			Hashes h = hashesOf(other);
+			if (h != null && h.partial == own.partial && Files.size(other) == file.size())
+			{
+				candidates.add(other);
+				candidateHashes.add(h);
+			}
+		}
+		if (candidates.isEmpty())
+			return null;
+
+		List<Future<byte[]>> pending = new ArrayList<>();
+		pending.add(hashers.submit(() -> fullHash(file.path(), own)));
+		for (int i = 0; i < candidates.size(); i++)
+		{
+			Path p = candidates.get(i);
+			Hashes h = candidateHashes.get(i);
+			pending.add(hashers.submit(() -> fullHash(p, h)));
+		}
+
+		byte[] ownFull = await(pending.get(0));
+		for (int i = 0; i < candidates.size(); i++)
+		{
+			if (Arrays.equals(ownFull, await(pending.get(i + 1))))
+				return candidates.get(i);
+		}
+		return null;
+	}
+
+	private static boolean isSameFile(Path a, Path b) throws IOException
+	{
+		try {
+			return Files.isSameFile(a, b);
+		} catch (NoSuchFileException _) {
+			return false;
+		}
+	}
+
+	private static <T> T await(Future<T> f) throws IOException, InterruptedException
+	{
+		try {
+			return f.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException ioe)
+				throw ioe;
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/** @return the file's hashes, or {@code null} if it no longer exists */
+	private Hashes hashesOf(Path file) throws IOException
+	{
+		long modifiedMillis;
+		try {
+			modifiedMillis = Files.getLastModifiedTime(file).toMillis();
+		} catch (NoSuchFileException _) {
+			return null;
+		}
+
+		Hashes h = hashes.get(file);
+		if (h != null && h.modifiedMillis == modifiedMillis)
+			return h;
+
+		long start = System.nanoTime();
+		h = new Hashes(modifiedMillis, partialHash(file));
+		partialStat.recordSince(start, 2L * PARTIAL_BLOCK_SIZE);
+		hashes.put(file, h);
+		return h;
+	}
+
+	private static long partialHash(Path file) throws IOException
+	{
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			long size = ch.size();
+			ByteBuffer buf = hashBuffer.get();
+			CRC32C crc = new CRC32C();
+
+			readBlock(ch, 0, buf);
+			crc.update(buf);
+			long head = crc.getValue();
+
+			crc.reset();
+			readBlock(ch, Math.max(0, size - PARTIAL_BLOCK_SIZE), buf);
+			crc.update(buf);
+			return head << 32 | crc.getValue();
+		}
+	}
+
+	private static void readBlock(FileChannel ch, long position, ByteBuffer buf) throws IOException
+	{
+		buf.clear().limit(PARTIAL_BLOCK_SIZE);
+		while (buf.hasRemaining())
+		{
+			if (ch.read(buf, position + buf.position()) < 0)
+				break;
+		}
+		buf.flip();
+	}
+
+	private byte[] fullHash(Path file, Hashes h) throws IOException
+	{
+		byte[] full = h.full;
+		if (full != null)
+			return full;
+
+		long start = System.nanoTime();
+		MessageDigest md = sha256();
+		long bytes = 0;
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			ByteBuffer buf = hashBuffer.get();
+			for (buf.clear(); ch.read(buf) >= 0; buf.clear())
+			{
+				buf.flip();
+				bytes += buf.remaining();
+				md.update(buf);
+			}
+		}
+		full = md.digest();
+		fullStat.recordSince(start, bytes);
+		h.full = full;
+		return full;
+	}
+
+	private static MessageDigest sha256()
+	{
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		hashers.shutdownNow();
+	}
+}
@@ -0,0 +1,243 @@
+package dev.seabird.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fun.seabird.EbirdCsvParser;
+import fun.seabird.EbirdCsvParser.PreSort;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads an eBird CSV export into a {@link ChecklistTable}, optionally on several cores for large
+ * files.
+ *
+ * <p>The parallel path cuts the file into byte ranges of whole records. Each worker hands its
+ * range to {@link EbirdCsvParser} as a temporary file holding the header record followed by the
+ * range, copied by the kernel with {@link FileChannel#transferTo}, so every row is converted by
+ * the library exactly as on the serial path. The partial builders are merged in file order, so
+ * the resulting table is the same as that of a serial parse, including checklist order and
+ * uploaded asset counts.
+ *
+ * <p>Record boundaries are found in parallel too. A newline ends a record unless it is inside a
+ * quoted field, which depends on the number of quotes before it. The workers first count the
+ * quotes in equal slices of the file; the parity of the counts before a slice tells whether it
+ * starts inside quotes, and its boundary is the first newline outside quotes from there.
+ *
+ * <p>Small files and a single thread use the serial path. The parallel path is opt-in: every
+ * chunk is written to a temporary file, because the parser only reads files, which doubles the
+ * I/O of an export. On the single-core machine it was measured on, it was slower than the
+ * serial path; {@code CsvIngestBenchmark} measures it on others.
+ */
+@Slf4j
+final class EbirdCsvIngest
+{
+	private EbirdCsvIngest() {}
+
+	/** Files smaller than this are parsed serially; splitting them costs more than it gains. */
+	static final long MIN_PARALLEL_BYTES = 32L << 20;
+
+	private static final long MAX_CHUNK_BYTES = 64L << 20;
+	private static final int CHUNKS_PER_THREAD = 4;
+	private static final int SCAN_BUFFER_SIZE = 1 << 20;
+	private static final int BOUNDARY_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Parses an eBird CSV export.
+	 *
+	 * @param csvFile the export
+	 * @param threads the number of worker threads; 1 forces the serial path
+	 * @return the parsed table
+	 * @throws IOException if the file cannot be read
+	 */
+	static ChecklistTable parse(Path csvFile, int threads) throws IOException
+	{
+		return parse(csvFile, threads, MIN_PARALLEL_BYTES);
+	}
+
+	/**
+	 * Parses an eBird CSV export, splitting it from a given size on.
+	 *
+	 * @param csvFile          the export
+	 * @param threads          the number of worker threads; 1 forces the serial path
+	 * @param minParallelBytes the size from which the file is parsed in parallel
+	 * @return the parsed table
+	 * @throws IOException if the file cannot be read
+	 */
+	static ChecklistTable parse(Path csvFile, int threads, long minParallelBytes) throws IOException
+	{
+		if (threads > 1 && Files.size(csvFile) >= minParallelBytes)
+			return parseParallel(csvFile, threads);
+
+		ChecklistTable.Builder builder = ChecklistTable.builder();
+		EbirdCsvParser.parseCsv(csvFile, builder::add, PreSort.NONE);
+		return builder.build();
+	}
+
+	private static ChecklistTable parseParallel(Path csvFile, int threads) throws IOException
+	{
+		ExecutorService workers = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("csv-ingest-", 0).daemon().factory());
+		try (FileChannel ch = FileChannel.open(csvFile, StandardOpenOption.READ))
+		{
+			long size = ch.size();
+			int numChunks = (int) Math.max((long) threads * CHUNKS_PER_THREAD, Math.ceilDiv(size, MAX_CHUNK_BYTES));
+			long[] bounds = recordBoundaries(ch, size, numChunks, workers);
+			log.info("Parsing {} in {} chunks on {} threads", csvFile.getFileName(), bounds.length - 1, threads);
+
+			long headerEnd = bounds[0];
+			List<Future<ChecklistTable.Builder>> partials = new ArrayList<>(bounds.length - 1);
+			for (int i = 0; i + 1 < bounds.length; i++)
+			{
+				long start = bounds[i];
+				long end = bounds[i + 1];
+				if (start < end)
+					partials.add(workers.submit(() -> parseChunk(ch, headerEnd, start, end)));
+			}
+
+			ChecklistTable.Builder merged = ChecklistTable.builder();
+			for (Future<ChecklistTable.Builder> partial : partials)
+				merged.merge(partial.get());
+			return merged.build();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing " + csvFile, e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException io)
+				throw io;
+			if (e.getCause() instanceof RuntimeException re)
+				throw re;
+			throw new IOException(e.getCause());
+		}
+		finally
+		{
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Finds the ends of records near equally spaced offsets.
+	 *
+	 * @return the end of the header record, followed by one record end per slice in ascending
+	 *         order, the last being the file size
+	 */
+	private static long[] recordBoundaries(FileChannel ch, long size, int slices, ExecutorService workers)
+			throws InterruptedException, ExecutionException
+	{
+		long sliceSize = Math.max(1, Math.ceilDiv(size, slices));
+		int n = (int) Math.ceilDiv(size, sliceSize);
+
+		List<Future<Long>> quotes = new ArrayList<>(n);
+		for (int i = 0; i < n; i++)
+		{
+			long from = i * sliceSize;
+			quotes.add(workers.submit(() -> countQuotes(ch, from, Math.min(size, from + sliceSize))));
+		}
+
+		List<Future<Long>> ends = new ArrayList<>(n);
+		boolean inQuotes = false;
+		for (int i = 0; i < n; i++)
+		{
+			long from = i * sliceSize;
+			boolean startsInQuotes = inQuotes;
+			ends.add(workers.submit(() -> nextRecordEnd(ch, from, size, startsInQuotes)));
+			// an escaped quote ("") toggles twice, so tracking parity is enough
+			inQuotes ^= (quotes.get(i).get() & 1) == 1;
+		}
+
+		long[] bounds = new long[n + 1];
+		for (int i = 0; i < n; i++)
+			bounds[i] = Math.max(ends.get(i).get(), i > 0 ? bounds[i - 1] : 0);
+		bounds[n] = size;
+		return bounds;
+	}
+
+	private static long countQuotes(FileChannel ch, long from, long to) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		long count = 0;
+		for (long pos = from; pos < to; )
+		{
+			buf.clear().limit((int) Math.min(buf.capacity(), to - pos));
+			int n = ch.read(buf, pos);
+			if (n < 0)
+				break;
+			byte[] bytes = buf.array();
+			for (int i = 0; i < n; i++)
+			{
+				if (bytes[i] == '"')
+					count++;
+			}
+			pos += n;
+		}
+		return count;
+	}
+
+	/** @return the offset just after the first newline outside quotes at or after {@code from}, or the file size */
+	private static long nextRecordEnd(FileChannel ch, long from, long size, boolean inQuotes) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(BOUNDARY_BUFFER_SIZE);
+		for (long pos = from; pos < size; )
+		{
+			buf.clear();
+			int n = ch.read(buf, pos);
+			if (n < 0)
+				break;
+			byte[] bytes = buf.array();
+			for (int i = 0; i < n; i++)
+			{
+				if (bytes[i] == '"')
+					inQuotes = !inQuotes;
+				else if (bytes[i] == '\n' && !inQuotes)
+					return pos + i + 1;
+			}
+			pos += n;
+		}
+		return size;
+	}
+
+	/** Parses the records in {@code [start, end)} with the library, behind a copy of the header. */
+	private static ChecklistTable.Builder parseChunk(FileChannel ch, long headerEnd, long start, long end) throws IOException
+	{
+		Path part = Files.createTempFile("ebird-csv-", ".csv");
+		try
+		{
+			try (FileChannel out = FileChannel.open(part, StandardOpenOption.WRITE))
+			{
+				copy(ch, 0, headerEnd, out);
+				copy(ch, start, end, out);
+			}
+
+			ChecklistTable.Builder builder = ChecklistTable.builder();
+			EbirdCsvParser.parseCsv(part, builder::add, PreSort.NONE);
+			return builder;
+		}
+		finally
+		{
+			Files.deleteIfExists(part);
+		}
+	}
+
+	private static void copy(FileChannel in, long from, long to, FileChannel out) throws IOException
+	{
+		for (long pos = from; pos < to; )
+		{
+			long n = in.transferTo(pos, to - pos, out);
+			if (n <= 0)
+				throw new IOException("CSV file shrank while being parsed");
+			pos += n;
+		}
+	}
+}
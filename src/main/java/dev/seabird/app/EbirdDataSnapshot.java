@@ -0,0 +1,236 @@
+package dev.seabird.app;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Binary snapshot of a parsed eBird export, so later sessions can skip re-parsing
+ * {@code MyEBirdData.csv}.
+ *
+ * <p>The snapshot is keyed by the CSV's absolute path, size, last-modified time and a CRC32C
+ * of its content. If size and modification time match, the snapshot is used without touching
+ * the CSV at all. If only the modification time differs (e.g. the same export was extracted
+ * again), the content checksum decides. The CSV is only parsed again when it has really changed.
+ *
+ * <p>Layout (big-endian): a fixed header, then the start minutes, end minutes and uploaded asset
+ * counts as fixed-width arrays, then the strings of each checklist. The file is memory-mapped
+ * when loaded.
+ */
+@Slf4j
+final class EbirdDataSnapshot
+{
+	private EbirdDataSnapshot() {}
+
+	/** Default location of the snapshot file. */
+	static final Path DEFAULT_SNAPSHOT_FILE = MediaSortUtils.APP_DATA_DIR.resolve("ebirdDataSnapshot.bin");
+
+	private static final int MAGIC = 0x4542534E; // "EBSN"
+	private static final int VERSION = 1;
+
+	private static final int OFFSET_CSV_MODIFIED = 16;
+	private static final int HEADER_SIZE = 40;
+	private static final int CHECKSUM_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Computes the CRC32C of a file's content.
+	 *
+	 * @param f the file
+	 * @return the checksum
+	 * @throws IOException if the file cannot be read
+	 */
+	static long checksum(Path f) throws IOException
+	{
+		CRC32C crc = new CRC32C();
+		ByteBuffer buf = ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE);
+		try (FileChannel ch = FileChannel.open(f, StandardOpenOption.READ))
+		{
+			while (ch.read(buf) >= 0)
+			{
+				crc.update(buf.flip());
+				buf.clear();
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Loads the snapshot if it was taken from the given CSV in its current state.
+	 *
+	 * @param snapshotFile the snapshot location
+	 * @param csvFile      the eBird CSV export
+	 * @return the restored table, or {@code null} if there is no usable snapshot
+	 */
+	static ChecklistTable load(Path snapshotFile, Path csvFile)
+	{
+		try (FileChannel ch = FileChannel.open(snapshotFile, StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			ByteBuffer hdr = ByteBuffer.allocate(HEADER_SIZE);
+			while (hdr.hasRemaining() && ch.read(hdr) >= 0) {}
+			hdr.flip();
+
+			if (hdr.remaining() < HEADER_SIZE || hdr.getInt() != MAGIC || hdr.getInt() != VERSION)
+				return null;
+
+			long csvSize = hdr.getLong();
+			long csvModified = hdr.getLong();
+			long csvChecksum = hdr.getLong();
+			int count = hdr.getInt();
+			int pathLen = hdr.getInt();
+
+			BasicFileAttributes csvAttrs = Files.readAttributes(csvFile, BasicFileAttributes.class);
+			if (csvAttrs.size() != csvSize)
+				return null;
+
+			ByteBuffer path = ByteBuffer.allocate(pathLen);
+			while (path.hasRemaining() && ch.read(path) >= 0) {}
+			if (!csvFile.toAbsolutePath().toString().equals(readString(path.flip(), pathLen)))
+				return null;
+
+			long modified = csvAttrs.lastModifiedTime().toMillis();
+			if (modified != csvModified)
+			{
+				if (checksum(csvFile) != csvChecksum)
+					return null;
+
+				ch.write(ByteBuffer.allocate(Long.BYTES).putLong(0, modified), OFFSET_CSV_MODIFIED);
+			}
+
+			// only map once the snapshot is known to be current, so a stale one can still be replaced
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+
+			int startsPos = HEADER_SIZE + pathLen;
+			int endsPos = startsPos + count * Long.BYTES;
+			int uploadedPos = endsPos + count * Long.BYTES;
+			buf.position(uploadedPos + count * Integer.BYTES);
+
+			ChecklistTable.Builder builder = ChecklistTable.builder();
+			for (int i = 0; i < count; i++)
+			{
+				LocalDateTime start = fromEpochMinute(buf.getLong(startsPos + i * Long.BYTES));
+				LocalDateTime end = fromEpochMinute(buf.getLong(endsPos + i * Long.BYTES));
+				int numUploaded = buf.getInt(uploadedPos + i * Integer.BYTES);
+
+				String subId = readString(buf, buf.getInt());
+				String subnational1Code = readString(buf, buf.getInt());
+				String county = readString(buf, buf.getInt());
+				String locName = readString(buf, buf.getInt());
+
+				SubStats stats = new SubStats(start, subnational1Code, county, locName);
+				stats.incNumAssetsUploaded(numUploaded);
+				builder.add(new ChecklistTable.Checklist(subId, stats, end));
+			}
+
+			log.info("Loaded {} checklists from snapshot of {}", count, csvFile.getFileName());
+			return builder.build();
+		}
+		catch (NoSuchFileException e)
+		{
+			return null;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.warn("Could not read eBird data snapshot {}, re-parsing CSV", snapshotFile, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a snapshot of a table parsed from the given CSV. Failures are logged, not thrown.
+	 *
+	 * @param snapshotFile the snapshot location
+	 * @param csvFile      the eBird CSV export the table was parsed from
+	 * @param table        the parsed table
+	 */
+	static void save(Path snapshotFile, Path csvFile, ChecklistTable table)
+	{
+		try
+		{
+			BasicFileAttributes csvAttrs = Files.readAttributes(csvFile, BasicFileAttributes.class);
+			long csvChecksum = checksum(csvFile);
+			List<ChecklistTable.Checklist> checklists = List.copyOf(table.checklists());
+
+			Files.createDirectories(snapshotFile.getParent());
+			Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))
+			{
+				byte[] path = csvFile.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(csvAttrs.size());
+				out.writeLong(csvAttrs.lastModifiedTime().toMillis());
+				out.writeLong(csvChecksum);
+				out.writeInt(checklists.size());
+				out.writeInt(path.length);
+				out.write(path);
+
+				for (var c : checklists)
+					out.writeLong(ChecklistIntervalIndex.toEpochMinute(c.stats().getStartTime()));
+				for (var c : checklists)
+					out.writeLong(ChecklistIntervalIndex.toEpochMinute(c.end()));
+				for (var c : checklists)
+					out.writeInt(c.stats().getNumAssetsUploaded());
+
+				for (var c : checklists)
+				{
+					writeString(out, c.subId());
+					writeString(out, c.stats().getSubnational1Code());
+					writeString(out, c.stats().getCounty());
+					writeString(out, c.stats().getLocName());
+				}
+			}
+
+			Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			log.warn("Could not save eBird data snapshot {}", snapshotFile, e);
+		}
+	}
+
+	private static LocalDateTime fromEpochMinute(long epochMinute)
+	{
+		return LocalDateTime.ofEpochSecond(epochMinute * 60, 0, ZoneOffset.UTC);
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException
+	{
+		if (s == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static String readString(ByteBuffer buf, int len)
+	{
+		if (len < 0)
+			return null;
+
+		byte[] b = new byte[len];
+		buf.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+}
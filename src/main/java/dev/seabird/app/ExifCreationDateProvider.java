@@ -36,7 +36,9 @@ import com.drew.metadata.mp4.Mp4Directory;
  *         <li>{@code .mov} → {@link QuickTimeMediaDirectory}</li>
  *         <li>{@code .avi} → {@link AviDirectory}</li>
  *       </ul>
- *       Video timestamps are parsed using a timezone-aware formatter.</li>
+ *       Video timestamps are parsed using a timezone-aware formatter. The container is
+ *       first read with {@link VideoCreationDateReader}, which only touches a few kilobytes
+ *       of the file; the directories above are the fallback when it finds no date.</li>
  * </ul>
  *
  * <p>Files whose extension is not recognised as an image or video return
@@ -86,10 +88,21 @@ public class ExifCreationDateProvider implements CreationDateProvider
         };
     }
 
+    @Override
+    public boolean appliesHrsOffset() {
+        return true;
+    }
+
+    @Override
+    public boolean readsFileContent() {
+        return true;
+    }
+
     /**
      * Reads the creation date of a media file from its embedded metadata.
      *
-     * <p>The method opens the file as a stream, delegates metadata parsing to
+     * <p>Videos are first handed to {@link VideoCreationDateReader}. Otherwise, or if that
+     * finds no date, the method opens the file as a stream, delegates metadata parsing to
      * {@link ImageMetadataReader}, then locates the appropriate directory and
      * tag for the file type. Any warning-level issues (e.g. a corrupt metadata
      * block) are logged but do not propagate as exceptions.
@@ -115,6 +128,12 @@ public class ExifCreationDateProvider implements CreationDateProvider
             return null;
         }
 
+        if (isVideo) {
+            LocalDateTime containerTime = VideoCreationDateReader.findCreationDate(f, fileExt);
+            if (containerTime != null)
+                return hrsOffset == 0l ? containerTime : containerTime.plusHours(hrsOffset);
+        }
+
         Metadata metadata = null;
         try (InputStream stream = Files.newInputStream(f)) {
             try {
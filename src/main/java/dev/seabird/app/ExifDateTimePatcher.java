@@ -0,0 +1,198 @@
+package dev.seabird.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Overwrites the EXIF {@code DateTimeOriginal} value of a JPEG in place.
+ *
+ * <p>The value is always formatted as {@code yyyy:MM:dd HH:mm:ss}, so a new date has the same
+ * length as the old one and only those 19 bytes need to change. The patcher walks the JPEG
+ * marker segments up to the EXIF {@code APP1} segment, follows the TIFF IFD0 to the EXIF sub-IFD
+ * and locates the {@code DateTimeOriginal} entry, whose bytes are then overwritten through a
+ * {@link FileChannel} and forced to disk. Image data is never loaded onto the heap.
+ *
+ * <p>The file is written in place rather than replaced, so a symbolic link is followed to the
+ * file it points to and every hard link of the file sees the new date.
+ */
+final class ExifDateTimePatcher
+{
+	private ExifDateTimePatcher() {}
+
+	private static final int DATE_TIME_LENGTH = 19;
+
+	private static final int MARKER_SOI = 0xD8;
+	private static final int MARKER_EOI = 0xD9;
+	private static final int MARKER_SOS = 0xDA;
+	private static final int MARKER_APP1 = 0xE1;
+
+	private static final int TAG_EXIF_IFD_POINTER = 0x8769;
+	private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+	private static final int TYPE_ASCII = 2;
+
+	private static final byte[] EXIF_HEADER = { 'E', 'x', 'i', 'f', 0, 0 };
+
+	/**
+	 * Replaces the {@code DateTimeOriginal} value of a JPEG file.
+	 *
+	 * @param jpeg        the JPEG file
+	 * @param newDateTime the new value, formatted as {@code yyyy:MM:dd HH:mm:ss}
+	 * @return {@code true} if the value was patched, {@code false} if the file has no
+	 *         {@code DateTimeOriginal} entry that can be patched in place
+	 * @throws IOException if an I/O error occurs
+	 */
+	static boolean patchDateTimeOriginal(Path jpeg, String newDateTime) throws IOException
+	{
+		byte[] value = newDateTime.getBytes(StandardCharsets.US_ASCII);
+		if (value.length != DATE_TIME_LENGTH)
+			return false;
+
+		try (FileChannel ch = FileChannel.open(jpeg, StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			long valuePos = findDateTimeOriginal(ch);
+			if (valuePos < 0)
+				return false;
+
+			ByteBuffer buf = ByteBuffer.wrap(value);
+			while (buf.hasRemaining())
+				ch.write(buf, valuePos + buf.position());
+			ch.force(false);
+			return true;
+		}
+	}
+
+	private static ByteBuffer read(FileChannel ch, long pos, int len) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(len);
+		while (buf.hasRemaining())
+		{
+			if (ch.read(buf, pos + buf.position()) < 0)
+				break;
+		}
+		return buf.flip();
+	}
+
+	/**
+	 * Returns the absolute file position of the {@code DateTimeOriginal} value, or {@code -1} if
+	 * the file is not a JPEG or has no patchable entry.
+	 */
+	private static long findDateTimeOriginal(FileChannel ch) throws IOException
+	{
+		ByteBuffer soi = read(ch, 0, 2);
+		if (soi.remaining() < 2 || (soi.get() & 0xff) != 0xFF || (soi.get() & 0xff) != MARKER_SOI)
+			return -1;
+
+		long pos = 2;
+		while (true)
+		{
+			ByteBuffer hdr = read(ch, pos, 4);
+			if (hdr.remaining() < 4 || (hdr.get(0) & 0xff) != 0xFF)
+				return -1;
+
+			int marker = hdr.get(1) & 0xff;
+			if (marker == 0xFF)
+			{
+				pos++; // fill byte
+				continue;
+			}
+			if (marker == MARKER_SOS || marker == MARKER_EOI)
+				return -1;
+
+			int segmentLength = hdr.getShort(2) & 0xffff;
+			if (segmentLength < 2)
+				return -1;
+
+			long payloadPos = pos + 4;
+			if (marker == MARKER_APP1)
+			{
+				ByteBuffer payload = read(ch, payloadPos, segmentLength - 2);
+				if (hasExifHeader(payload))
+				{
+					int offset = findInTiff(payload.position(EXIF_HEADER.length).slice());
+					return offset < 0 ? -1 : payloadPos + EXIF_HEADER.length + offset;
+				}
+			}
+
+			pos = payloadPos + segmentLength - 2;
+		}
+	}
+
+	private static boolean hasExifHeader(ByteBuffer payload)
+	{
+		if (payload.remaining() < EXIF_HEADER.length)
+			return false;
+
+		for (int i = 0; i < EXIF_HEADER.length; i++)
+		{
+			if (payload.get(i) != EXIF_HEADER[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the offset of the {@code DateTimeOriginal} value relative to the TIFF header, or
+	 * {@code -1} if there is none.
+	 */
+	private static int findInTiff(ByteBuffer tiff)
+	{
+		if (tiff.remaining() < 8)
+			return -1;
+
+		byte b0 = tiff.get(0);
+		byte b1 = tiff.get(1);
+		if (b0 == 'I' && b1 == 'I')
+			tiff.order(ByteOrder.LITTLE_ENDIAN);
+		else if (b0 == 'M' && b1 == 'M')
+			tiff.order(ByteOrder.BIG_ENDIAN);
+		else
+			return -1;
+
+		if ((tiff.getShort(2) & 0xffff) != 42)
+			return -1;
+
+		int ifd0 = tiff.getInt(4);
+		int exifIfd = findEntry(tiff, ifd0, TAG_EXIF_IFD_POINTER);
+		if (exifIfd < 0)
+			return -1;
+
+		int entry = findEntry(tiff, tiff.getInt(exifIfd + 8), TAG_DATE_TIME_ORIGINAL);
+		if (entry < 0)
+			return -1;
+
+		int type = tiff.getShort(entry + 2) & 0xffff;
+		int count = tiff.getInt(entry + 4);
+		int valueOffset = tiff.getInt(entry + 8);
+
+		if (type != TYPE_ASCII || count < DATE_TIME_LENGTH || valueOffset < 0 || valueOffset + DATE_TIME_LENGTH > tiff.limit())
+			return -1;
+
+		return valueOffset;
+	}
+
+	/**
+	 * Returns the position of the 12-byte IFD entry with the given tag, or {@code -1} if the IFD
+	 * is out of bounds or has no such entry.
+	 */
+	private static int findEntry(ByteBuffer tiff, int ifdOffset, int tag)
+	{
+		if (ifdOffset < 8 || ifdOffset + 2 > tiff.limit())
+			return -1;
+
+		int numEntries = tiff.getShort(ifdOffset) & 0xffff;
+		for (int i = 0; i < numEntries; i++)
+		{
+			int entry = ifdOffset + 2 + i * 12;
+			if (entry + 12 > tiff.limit())
+				return -1;
+			if ((tiff.getShort(entry) & 0xffff) == tag)
+				return entry;
+		}
+		return -1;
+	}
+}
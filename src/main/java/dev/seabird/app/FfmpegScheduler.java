@@ -0,0 +1,213 @@
+package dev.seabird.app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs FFmpeg jobs concurrently within a total CPU budget.
+ *
+ * <p>The budget is a pool of cores that jobs take their {@code -threads} from and return when their
+ * process exits, so the threads of all running processes never add up to more than the budget.
+ * A job gets a fixed share of the budget, enough for {@code cpuBudget / MIN_THREADS_PER_JOB} jobs
+ * to run side by side, or fewer threads if its operation cannot use more, e.g. one for audio
+ * extraction. A job never takes the whole budget just because it was queued first, so the jobs
+ * queued behind it start right away on the remaining cores. Every live child process is tracked
+ * so that {@link #destroyAll()} can shut all of them down.
+ */
+@Slf4j
+class FfmpegScheduler implements AutoCloseable
+{
+	private static final int MIN_THREADS_PER_JOB = 2;
+	private static final long GRACEFUL_QUIT_MILLIS = 400;
+
+	private final int threadsPerJob;
+	private final ExecutorService workers;
+	/** Cores not used by a running job; fair, so a job waiting for several is not overtaken. */
+	private final Semaphore cores;
+	private final RunMetrics.Stat runStat;
+
+	private final Set<Process> liveProcesses = ConcurrentHashMap.newKeySet();
+	private final Queue<Future<Boolean>> pendingJobs = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	/**
+	 * @param cpuBudget the total number of cores FFmpeg processes may use together
+	 * @param runStat   records the run time of every FFmpeg process
+	 */
+	FfmpegScheduler(int cpuBudget, RunMetrics.Stat runStat)
+	{
+		this.runStat = runStat;
+		int budget = Math.max(1, cpuBudget);
+		this.threadsPerJob = budget / Math.max(1, budget / MIN_THREADS_PER_JOB);
+		this.cores = new Semaphore(budget, true);
+		// one worker per core, so single-threaded jobs can fill the cores a larger share leaves
+		this.workers = Executors.newFixedThreadPool(budget, Thread.ofPlatform().name("ffmpeg-", 0).daemon().factory());
+	}
+
+	/**
+	 * Queues an FFmpeg job.
+	 *
+	 * @param operation  a descriptive name of the operation (used in log messages)
+	 * @param maxThreads the most threads the operation can make use of
+	 * @param command    builds the FFmpeg command line for the given thread count
+	 * @param onSuccess  run after the process exits with code 0
+	 * @return a future completing with {@code true} if FFmpeg succeeded
+	 */
+	Future<Boolean> submit(String operation, int maxThreads, IntFunction<String[]> command, Runnable onSuccess)
+	{
+		int threads = Math.max(1, Math.min(maxThreads, threadsPerJob));
+		outstanding.incrementAndGet();
+		Future<Boolean> job = workers.submit(() -> {
+			try {
+				try {
+					cores.acquire(threads);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					log.info("FFmpeg {} cancelled", operation);
+					return false;
+				}
+				boolean ok;
+				try {
+					ok = run(command.apply(threads), operation);
+				} finally {
+					cores.release(threads);
+				}
+				if (ok)
+					onSuccess.run();
+				return ok;
+			} finally {
+				outstanding.decrementAndGet();
+			}
+		});
+		pendingJobs.add(job);
+		return job;
+	}
+
+	/**
+	 * Waits until every job submitted so far has finished.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	void awaitAll() throws InterruptedException
+	{
+		int numJobs = outstanding.get();
+		if (numJobs > 0)
+			log.info("Waiting for {} ffmpeg job(s) to finish...", numJobs);
+
+		for (Future<Boolean> job = pendingJobs.poll(); job != null; job = pendingJobs.poll()) {
+			try {
+				job.get();
+			} catch (ExecutionException e) {
+				log.error("FFmpeg job failed", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Executes an FFmpeg command and waits for its completion.
+	 *
+	 * <p>Captures the combined output (stdout + stderr) and logs it if the exit code is non-zero.
+	 * The process is tracked while it runs so it can be destroyed on shutdown.
+	 *
+	 * @return {@code true} if the process completed successfully (exit code 0),
+	 *         {@code false} otherwise (failure, interruption, or IOException)
+	 */
+	private boolean run(String[] command, String operation)
+	{
+		Process process = null;
+		long start = System.nanoTime();
+		try {
+			ProcessBuilder pb = new ProcessBuilder(command);
+			pb.redirectErrorStream(true);
+			pb.redirectOutput(ProcessBuilder.Redirect.PIPE);
+
+			process = pb.start();
+			liveProcesses.add(process);
+
+			String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+			int exitCode = process.waitFor();
+
+			if (exitCode != 0) {
+				log.warn("FFmpeg {} failed with exit code {}\nOutput: {}", operation, exitCode, output.trim());
+				return false;
+			}
+
+			return true;
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.info("FFmpeg {} interrupted", operation);
+			return false;
+		} catch (IOException e) {
+			log.error("Failed to execute FFmpeg {}", operation, e);
+			return false;
+		} finally {
+			if (process != null) {
+				liveProcesses.remove(process);
+				runStat.recordSince(start, 0);
+			}
+		}
+	}
+
+	/** @return {@code true} if any FFmpeg process is still running */
+	boolean hasLiveProcesses()
+	{
+		return liveProcesses.stream().anyMatch(Process::isAlive);
+	}
+
+	/**
+	 * Gracefully shuts down every running FFmpeg {@link Process}.
+	 *
+	 * <p>Sends each process a quit command, then forcefully terminates the process trees using
+	 * {@link ProcessHandle} as a fallback.
+	 */
+	void destroyAll()
+	{
+		if (!hasLiveProcesses())
+			return;
+
+		// Try graceful quit first (ffmpeg understands 'q')
+		for (Process p : liveProcesses) {
+			try {
+				OutputStream os = p.getOutputStream();
+				os.write("q\n".getBytes(StandardCharsets.UTF_8));
+				os.flush();
+			} catch (IOException ignored) {}
+		}
+
+		try {
+			Thread.sleep(GRACEFUL_QUIT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// Kill all child processes + main processes
+		for (Process p : liveProcesses) {
+			ProcessHandle handle = p.toHandle();
+			handle.descendants().forEach(ProcessHandle::destroyForcibly);
+			handle.destroyForcibly();
+		}
+	}
+
+	/** Stops accepting jobs and kills anything still running. */
+	@Override
+	public void close()
+	{
+		workers.shutdownNow();
+		destroyAll();
+	}
+}
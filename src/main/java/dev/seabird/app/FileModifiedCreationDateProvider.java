@@ -3,14 +3,16 @@ package dev.seabird.app;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.Date;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 
 /**
  * Provides the creation date of a file based on its last modified time.
  * 
- * <p>This implementation uses the file system's last modified timestamp as
- * the creation date. If the timestamp is invalid (epoch 0), it falls back
+ * <p>This implementation uses the file system's last modified timestamp, in the system time zone
+ * and to the second, as the creation date. If the timestamp is invalid (epoch 0), it falls back
  * to January 1, 1900.
  */
 public class FileModifiedCreationDateProvider implements CreationDateProvider 
@@ -19,15 +21,28 @@ public class FileModifiedCreationDateProvider implements CreationDateProvider
 	 * A constant representing January 1, 1900 at midnight.
 	 * Used as a fallback/default date for images with missing or invalid timestamps.
 	 */
-	final LocalDateTime nineteenHundred = parseTime("1900:01:01 00:00:00",imageDtf);	
+	final LocalDateTime nineteenHundred = LocalDateTime.of(1900, 1, 1, 0, 0);
 
 	@Override
 	public LocalDateTime findCreationDate(Path f,long hrsOffset) throws IOException
 	{
-		Long epoch = Files.getLastModifiedTime(f).toMillis();
-		if (epoch == 0L)
+		return toLocalTime(Files.getLastModifiedTime(f).toInstant());
+	}
+	
+	/**
+	 * Uses the modification time read by the walk, without touching the file.
+	 */
+	@Override
+	public LocalDateTime findCreationDate(MediaFile f,long hrsOffset)
+	{
+		return toLocalTime(f.modified());
+	}
+	
+	private LocalDateTime toLocalTime(Instant modified)
+	{
+		if (modified.toEpochMilli() == 0L)
 			return nineteenHundred;
 		
-		return parseTime(new Date(epoch).toString(),timezoneDtf);		
+		return LocalDateTime.ofInstant(modified, ZoneId.systemDefault()).truncatedTo(ChronoUnit.SECONDS);
 	}
 }
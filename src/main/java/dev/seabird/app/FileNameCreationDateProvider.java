@@ -2,52 +2,64 @@ package dev.seabird.app;
 
 import java.nio.file.Path;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.Strings;
+import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Provides the creation date of a file based on date strings within the filename
  */
 public class FileNameCreationDateProvider implements CreationDateProvider 
 {
-	private static final DateTimeFormatter recForgeDtf1 = DateTimeFormatter.ofPattern("yyyyMMdd_HHmm");
-	private static final DateTimeFormatter recForgeDtf2 = DateTimeFormatter.ofPattern("yyyyMMdd-HHmm");
-	private static final DateTimeFormatter merlinOldDtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HHmm");
-	private static final DateTimeFormatter merlinNewDtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH_mm");
+	private final FileNameTimestampMatcher matcher;
+	
+	/**
+	 * Understands the built-in RecForge and Merlin file names only.
+	 */
+	public FileNameCreationDateProvider()
+	{
+		this(List.of());
+	}
+	
+	/**
+	 * @param extraPatterns patterns tried after the built-in ones, see {@link FileNameTimestampMatcher}
+	 * @throws IllegalArgumentException if a pattern is invalid
+	 */
+	public FileNameCreationDateProvider(List<String> extraPatterns)
+	{
+		matcher = FileNameTimestampMatcher.compile(
+				Stream.concat(FileNameTimestampMatcher.BUILT_IN_PATTERNS.stream(), extraPatterns.stream()).toList());
+	}
 	
 	@Override
 	/**
 	 * This method attempts to find the creation date of the given file by parsing the date and time from the file name.
-	 * It supports three file name formats:
+	 * It supports these file name formats out of the box:
 	 *   - "yyyyMMdd_HHmm" or "yyyyMMdd-HHmm" for files created by RecForge on Android devices
 	 *   - "yyyy-MM-dd HHmm" for files created by Merlin
 	 *   - "yyyy-MM-dd HH_mm" for files created by a newer version of Merlin
+	 * plus any extra patterns given at construction.
 	 *
-	 * If the file name does not match any of these formats or if the date and time information is missing, this method
-	 * returns null.
+	 * If the file name does not start with any of these formats, this method returns null. No objects are created
+	 * for such names.
 	 *
 	 * @param f the file to find the creation date for
-	 * @param hrsOffset the offset in hours to add or subtract from the creation date (can be null)
+	 * @param hrsOffset ignored, file name times are taken as they are
 	 * @return the creation date of the file, or null if it cannot be determined
 	 */
 	public LocalDateTime findCreationDate(Path f,long hrsOffset)
 	{
-		String fileName = f.getFileName().toString();
-		String dateTimeOrigStr = StringUtils.left(fileName,16);
-		
-		if (!Strings.CS.startsWithAny(dateTimeOrigStr,"1","2") || StringUtils.containsNone(dateTimeOrigStr,'-','_'))
-			return null;
-		
-		if (StringUtils.countMatches(dateTimeOrigStr,"-") == 2)
-		{
-			if (StringUtils.countMatches(dateTimeOrigStr,"_") == 1)
-				return parseTime(dateTimeOrigStr,merlinNewDtf);
-			
-			return parseTime(StringUtils.left(fileName,15),merlinOldDtf);
-		}
-		
-		return dateTimeOrigStr.contains("_") ? parseTime(StringUtils.left(fileName,13),recForgeDtf1) : parseTime(StringUtils.left(fileName,13),recForgeDtf2);
+		// Path.toString() is cached, unlike getFileName().toString()
+		String path = f.toString();
+		int nameStart = path.lastIndexOf(f.getFileSystem().getSeparator()) + 1;
+		return matcher.match(path, nameStart);
+	}
+	
+	/**
+	 * Includes the patterns, so cached dates are re-resolved when they change.
+	 */
+	@Override
+	public String cacheKey()
+	{
+		return CreationDateProvider.super.cacheKey() + matcher;
 	}
 }
@@ -0,0 +1,235 @@
+package dev.seabird.app;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds a timestamp at the start of a file name using a list of simple patterns.
+ *
+ * <p>A pattern is made of the fields {@code yyyy}, {@code MM}, {@code dd}, {@code HH}, {@code mm},
+ * {@code ss} and {@code SSS} (milliseconds), each matching exactly that many digits, and literal
+ * characters that must appear as written, e.g. {@code IMG_yyyyMMdd_HHmmss}. A pattern matches a
+ * prefix of the name; whatever follows is ignored.
+ *
+ * <p>All patterns are compiled into a single matcher. Patterns are grouped by the first character
+ * they accept, so a name is only compared with the patterns that can start with its first
+ * character, and each comparison is a plain scan over the name's characters that stops at the
+ * first mismatch. A name that matches no pattern costs no allocation. Patterns are tried in
+ * registration order and the first match with a valid time and a year from 1000 to 2999 wins.
+ */
+final class FileNameTimestampMatcher
+{
+	/**
+	 * Patterns always understood: Merlin (new and old style) and RecForge on Android.
+	 */
+	static final List<String> BUILT_IN_PATTERNS = List.of(
+			"yyyy-MM-dd HH_mm", // Merlin, newer versions
+			"yyyy-MM-dd HHmm",  // Merlin, older versions
+			"yyyyMMdd_HHmm",    // RecForge
+			"yyyyMMdd-HHmm");   // RecForge
+
+	private static final byte LITERAL = 0;
+	private static final byte YEAR = 1;
+	private static final byte MONTH = 2;
+	private static final byte DAY = 3;
+	private static final byte HOUR = 4;
+	private static final byte MINUTE = 5;
+	private static final byte SECOND = 6;
+	private static final byte MILLI = 7;
+
+	private static final String[] FIELD_TOKENS = { null, "yyyy", "MM", "dd", "HH", "mm", "ss", "SSS" };
+
+	/** Digits that don't form a year in this range are not a timestamp, e.g. a counter. */
+	private static final int MIN_YEAR = 1000;
+	private static final int MAX_YEAR = 2999;
+
+	private static final int ASCII = 128;
+	private static final int[] NO_PATTERNS = {};
+
+	/** A compiled pattern: one field kind and, for literals, one character per name position. */
+	private record Compiled(String source, byte[] kinds, char[] literals) {}
+
+	private final List<String> patterns;
+	private final Compiled[] compiled;
+	private final int[][] byFirstChar;
+
+	private FileNameTimestampMatcher(List<String> patterns, Compiled[] compiled, int[][] byFirstChar)
+	{
+		this.patterns = patterns;
+		this.compiled = compiled;
+		this.byFirstChar = byFirstChar;
+	}
+
+	/**
+	 * Compiles patterns into a matcher.
+	 *
+	 * @param patterns the patterns, in order of precedence
+	 * @return the matcher
+	 * @throws IllegalArgumentException if a pattern lacks a date or has a field twice
+	 */
+	static FileNameTimestampMatcher compile(List<String> patterns)
+	{
+		Compiled[] compiled = patterns.stream().map(FileNameTimestampMatcher::compilePattern).toArray(Compiled[]::new);
+
+		List<List<Integer>> candidates = new ArrayList<>(ASCII);
+		for (int c = 0; c < ASCII; c++)
+			candidates.add(new ArrayList<>());
+
+		for (int p = 0; p < compiled.length; p++)
+		{
+			Compiled cp = compiled[p];
+			if (cp.kinds()[0] == LITERAL)
+			{
+				char c = cp.literals()[0];
+				if (c < ASCII)
+					candidates.get(c).add(p);
+			}
+			else
+			{
+				for (char c = '0'; c <= '9'; c++)
+					candidates.get(c).add(p);
+			}
+		}
+
+		int[][] byFirstChar = new int[ASCII][];
+		for (int c = 0; c < ASCII; c++)
+		{
+			List<Integer> l = candidates.get(c);
+			byFirstChar[c] = l.isEmpty() ? NO_PATTERNS : l.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		return new FileNameTimestampMatcher(List.copyOf(patterns), compiled, byFirstChar);
+	}
+
+	private static Compiled compilePattern(String pattern)
+	{
+		List<Byte> kinds = new ArrayList<>();
+		StringBuilder literals = new StringBuilder();
+		boolean[] seen = new boolean[FIELD_TOKENS.length];
+
+		int i = 0;
+		outer:
+		while (i < pattern.length())
+		{
+			for (byte kind = YEAR; kind <= MILLI; kind++)
+			{
+				String token = FIELD_TOKENS[kind];
+				if (pattern.startsWith(token, i))
+				{
+					if (seen[kind])
+						throw new IllegalArgumentException("Field " + token + " appears twice in file name pattern " + pattern);
+					seen[kind] = true;
+					for (int k = 0; k < token.length(); k++)
+					{
+						kinds.add(kind);
+						literals.append('\0');
+					}
+					i += token.length();
+					continue outer;
+				}
+			}
+
+			char c = pattern.charAt(i++);
+			if (c >= ASCII)
+				throw new IllegalArgumentException("File name pattern " + pattern + " must be ASCII");
+			kinds.add(LITERAL);
+			literals.append(c);
+		}
+
+		if (!seen[YEAR] || !seen[MONTH] || !seen[DAY])
+			throw new IllegalArgumentException("File name pattern " + pattern + " needs yyyy, MM and dd");
+
+		byte[] k = new byte[kinds.size()];
+		for (int j = 0; j < k.length; j++)
+			k[j] = kinds.get(j);
+		return new Compiled(pattern, k, literals.toString().toCharArray());
+	}
+
+	/** @return the patterns of this matcher, in order of precedence */
+	List<String> patterns()
+	{
+		return patterns;
+	}
+
+	/**
+	 * Matches the start of a file name.
+	 *
+	 * @param s     a string containing the file name
+	 * @param start the index of the file name's first character in {@code s}
+	 * @return the timestamp of the first matching pattern, or {@code null} if none matches
+	 */
+	LocalDateTime match(CharSequence s, int start)
+	{
+		if (start >= s.length())
+			return null;
+
+		char first = s.charAt(start);
+		int[] candidates = first < ASCII ? byFirstChar[first] : NO_PATTERNS;
+		for (int p : candidates)
+		{
+			LocalDateTime t = matchPattern(compiled[p], s, start);
+			if (t != null)
+				return t;
+		}
+		return null;
+	}
+
+	private static LocalDateTime matchPattern(Compiled cp, CharSequence s, int start)
+	{
+		byte[] kinds = cp.kinds();
+		char[] literals = cp.literals();
+		if (s.length() - start < kinds.length)
+			return null;
+
+		int year = 0, month = 0, day = 0, hour = 0, minute = 0, second = 0, milli = 0;
+		for (int i = 0; i < kinds.length; i++)
+		{
+			char c = s.charAt(start + i);
+			byte kind = kinds[i];
+			if (kind == LITERAL)
+			{
+				if (c != literals[i])
+					return null;
+				continue;
+			}
+
+			int digit = c - '0';
+			if (digit < 0 || digit > 9)
+				return null;
+
+			switch (kind)
+			{
+				case YEAR -> year = year * 10 + digit;
+				case MONTH -> month = month * 10 + digit;
+				case DAY -> day = day * 10 + digit;
+				case HOUR -> hour = hour * 10 + digit;
+				case MINUTE -> minute = minute * 10 + digit;
+				case SECOND -> second = second * 10 + digit;
+				default -> milli = milli * 10 + digit;
+			}
+		}
+
+		if (year < MIN_YEAR || year > MAX_YEAR || month < 1 || month > 12 || day < 1 || day > 31
+				|| hour > 24 || minute > 59 || second > 59)
+			return null;
+
+		// like DateTimeFormatter's default resolver: Feb 30 becomes the last day of February and
+		// 24:00 midnight of the next day
+		boolean endOfDay = hour == 24;
+		if (endOfDay && (minute > 0 || second > 0 || milli > 0))
+			return null;
+
+		day = Math.min(day, YearMonth.of(year, month).lengthOfMonth());
+		LocalDateTime t = LocalDateTime.of(year, month, day, endOfDay ? 0 : hour, minute, second, milli * 1_000_000);
+		return endOfDay ? t.plusDays(1) : t;
+	}
+
+	@Override
+	public String toString()
+	{
+		return Arrays.toString(Arrays.stream(compiled).map(Compiled::source).toArray());
+	}
+}
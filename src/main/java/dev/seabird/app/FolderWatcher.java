@@ -0,0 +1,282 @@
+package dev.seabird.app;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Watches an inbox folder and reports media files once they have stopped growing.
+ *
+ * <p>The inbox and every folder created in it are registered with a {@link WatchService}. A file
+ * that appears is a candidate until its size and modification time have not changed for the
+ * settle time, so files still being copied from a card are never handed out half-written. The
+ * attributes are polled rather than trusting modify events, which some file systems coalesce.
+ * Files that already exist when watching starts are candidates too. If the watch service loses
+ * events, the inbox is scanned again.
+ *
+ * <p>The folder of the eBird CSV is watched as well: a new or rewritten CSV whose name starts
+ * like the configured one, e.g. {@code MyEBirdData (1).csv} from a browser download, is reported
+ * once it has settled.
+ *
+ * <p>Not thread-safe; the watcher belongs to the thread that calls {@link #next(int)}.
+ */
+@Slf4j
+final class FolderWatcher implements Closeable
+{
+	/**
+	 * Settled changes.
+	 *
+	 * @param files   media files that stopped growing, in path order
+	 * @param csvFile the newest settled eBird CSV, {@code null} if none changed
+	 */
+	record Batch(List<MediaFile> files, Path csvFile) {}
+
+	/** A file seen to exist, with the attributes it had when it was last seen to change. */
+	private record Candidate(long size, FileTime modified, long changedNanos) {}
+
+	private static final Candidate NOT_READ = new Candidate(-1, null, 0);
+	private static final String CSV_EXTENSION = "csv";
+
+	private final WatchService watchService;
+	private final Path inbox;
+	private final Path excludedDir;
+	private final Path csvDir;
+	private final String csvPrefix;
+	private final long settleNanos;
+	private final long pollMillis;
+	private final boolean inodes;
+
+	private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+	private final Map<Path, Candidate> candidates = new LinkedHashMap<>();
+
+	/**
+	 * Starts watching and queues the media already in the inbox.
+	 *
+	 * @param inbox       the folder receiving new media
+	 * @param excludedDir a folder below the inbox that is ignored, e.g. the output folder
+	 * @param csvFile     the eBird CSV in use, {@code null} if none
+	 * @param settle      how long a file must stay unchanged before it is reported
+	 * @param inodes      whether reported files carry their inode number, see {@link MediaFile#inode()}
+	 * @throws IOException if the folders cannot be registered
+	 */
+	FolderWatcher(Path inbox, Path excludedDir, Path csvFile, Duration settle, boolean inodes) throws IOException
+	{
+		this.watchService = inbox.getFileSystem().newWatchService();
+		this.inbox = inbox.toAbsolutePath().normalize();
+		this.excludedDir = excludedDir.toAbsolutePath().normalize();
+		this.settleNanos = settle.toNanos();
+		this.pollMillis = Math.max(100, settle.toMillis() / 4);
+		this.inodes = inodes;
+
+		if (csvFile != null)
+		{
+			Path csv = csvFile.toAbsolutePath().normalize();
+			this.csvDir = csv.getParent();
+			this.csvPrefix = MediaSortUtils.getBaseName(csv.getFileName().toString());
+			register(csvDir);
+		}
+		else
+		{
+			this.csvDir = null;
+			this.csvPrefix = null;
+		}
+
+		scan(this.inbox);
+	}
+
+	/**
+	 * Waits until media files have settled or the eBird CSV has changed.
+	 *
+	 * @param maxFiles the most files returned at once; the rest follow in later batches
+	 * @return the settled changes, never empty
+	 * @throws IOException          if a new folder cannot be registered or scanned
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	Batch next(int maxFiles) throws IOException, InterruptedException
+	{
+		while (true)
+		{
+			WatchKey key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+			while (key != null)
+			{
+				handle(key);
+				key = watchService.poll();
+			}
+
+			Batch batch = collectSettled(maxFiles);
+			if (!batch.files().isEmpty() || batch.csvFile() != null)
+				return batch;
+		}
+	}
+
+	private Batch collectSettled(int maxFiles) throws IOException
+	{
+		List<MediaFile> files = new ArrayList<>();
+		Path csvFile = null;
+		long now = System.nanoTime();
+
+		for (Iterator<Map.Entry<Path, Candidate>> it = candidates.entrySet().iterator(); it.hasNext();)
+		{
+			Map.Entry<Path, Candidate> e = it.next();
+			Path file = e.getKey();
+			Candidate c = e.getValue();
+
+			BasicFileAttributes attrs;
+			try {
+				attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			} catch (NoSuchFileException _) {
+				it.remove();
+				continue;
+			}
+
+			if (!attrs.isRegularFile())
+			{
+				it.remove();
+				continue;
+			}
+
+			if (attrs.size() != c.size() || !attrs.lastModifiedTime().equals(c.modified()))
+			{
+				e.setValue(new Candidate(attrs.size(), attrs.lastModifiedTime(), now));
+				continue;
+			}
+
+			if (now - c.changedNanos() < settleNanos)
+				continue;
+
+			if (isCsvUpdate(file))
+				csvFile = newer(csvFile, file);
+			else if (files.size() < maxFiles)
+				files.add(MediaFile.of(file, attrs, inodes));
+			else
+				continue;
+
+			it.remove();
+		}
+
+		files.sort(Comparator.comparing(MediaFile::path));
+		return new Batch(files, csvFile);
+	}
+
+	private static Path newer(Path a, Path b) throws IOException
+	{
+		if (a == null)
+			return b;
+		return Files.getLastModifiedTime(b).compareTo(Files.getLastModifiedTime(a)) > 0 ? b : a;
+	}
+
+	private void handle(WatchKey key) throws IOException
+	{
+		Path dir = watchedDirs.get(key);
+		for (WatchEvent<?> event : key.pollEvents())
+		{
+			if (event.kind() == OVERFLOW)
+			{
+				log.warn("Missed file system events, scanning {} again", inbox);
+				scan(inbox);
+				continue;
+			}
+			if (dir == null)
+				continue;
+
+			Path path = dir.resolve((Path) event.context());
+			if (event.kind() == ENTRY_DELETE)
+				candidates.remove(path);
+			else if (isInInbox(path) && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+				scan(path);
+			else
+				offer(path);
+		}
+
+		if (!key.reset())
+			watchedDirs.remove(key);
+	}
+
+	private boolean isInInbox(Path path)
+	{
+		return path.startsWith(inbox) && !path.startsWith(excludedDir);
+	}
+
+	private boolean isCsvUpdate(Path file)
+	{
+		if (csvDir == null || !csvDir.equals(file.getParent()))
+			return false;
+		String name = file.getFileName().toString();
+		return name.startsWith(csvPrefix) && MediaSortUtils.getFileExtension(file).equalsIgnoreCase(CSV_EXTENSION);
+	}
+
+	private void offer(Path file)
+	{
+		boolean media = isInInbox(file)
+				&& MediaSortUtils.mediaExtensions.contains(MediaSortUtils.getFileExtension(file).toLowerCase());
+		if (media || isCsvUpdate(file))
+			candidates.putIfAbsent(file, NOT_READ);
+	}
+
+	/** Registers a folder tree below the inbox and queues the media in it. */
+	private void scan(Path dir) throws IOException
+	{
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException
+			{
+				if (d.startsWith(excludedDir))
+					return FileVisitResult.SKIP_SUBTREE;
+				register(d);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+			{
+				if (attrs.isRegularFile())
+					offer(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exc)
+			{
+				// deleted or moved away while scanning
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void register(Path dir) throws IOException
+	{
+		watchedDirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		watchService.close();
+	}
+}
@@ -0,0 +1,88 @@
+package dev.seabird.app;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * A media file as it moves through the sort pipeline.
+ *
+ * <p>Size and modification time are taken from the attributes the directory walk already read,
+ * so later stages never query the file system for them again. The creation date and the matched
+ * checklist are filled in by the stages that determine them.
+ *
+ * @param path       the file's current location
+ * @param source     the location the file was walked at
+ * @param size       the size in bytes when the file was walked
+ * @param modified   the last-modified time when the file was walked
+ * @param inode      the file's inode number, 0 if the file system does not report one
+ * @param ext        the lowercase file extension, without the dot
+ * @param creationDt the creation date with the hour offset applied, {@code null} until resolved
+ * @param dateSource the provider that found the creation date, {@code null} if not known
+ * @param subId      the matched checklist, {@code null} if none matched or not matched yet
+ */
+public record MediaFile(Path path, Path source, long size, Instant modified, long inode, String ext,
+		LocalDateTime creationDt, String dateSource, String subId)
+{
+	/**
+	 * @param path      the walked file
+	 * @param attrs     the attributes the walk read for it
+	 * @param withInode whether to take the inode number from the attributes, which costs a string
+	 *                  conversion; only needed for {@link MediaSortCmd#isDiskOrder()}
+	 * @return a record without creation date or checklist
+	 */
+	static MediaFile of(Path path, BasicFileAttributes attrs, boolean withInode)
+	{
+		return of(path, attrs.size(), attrs.lastModifiedTime().toInstant(), withInode ? MediaSortUtils.inodeOf(attrs) : 0);
+	}
+
+	/**
+	 * @param path     the walked file
+	 * @param size     its size in bytes
+	 * @param modified its last-modified time
+	 * @param inode    its inode number, 0 if not known
+	 * @return a record without creation date or checklist
+	 */
+	static MediaFile of(Path path, long size, Instant modified, long inode)
+	{
+		return new MediaFile(path, path, size, modified, inode, MediaSortUtils.getFileExtension(path).toLowerCase(),
+				null, null, null);
+	}
+
+	/** @return the file name including the extension */
+	String name()
+	{
+		return path.getFileName().toString();
+	}
+
+	/** @return the file name without the extension */
+	String baseName()
+	{
+		return MediaSortUtils.getBaseName(name());
+	}
+
+	/** @return the last-modified time in epoch milliseconds */
+	long modifiedMillis()
+	{
+		return modified.toEpochMilli();
+	}
+
+	/** @return a copy with the resolved creation date and the provider that found it */
+	MediaFile withCreationDt(LocalDateTime creationDt, String dateSource)
+	{
+		return new MediaFile(path, source, size, modified, inode, ext, creationDt, dateSource, subId);
+	}
+
+	/** @return a copy with the matched checklist */
+	MediaFile withSubId(String matchedSubId)
+	{
+		return new MediaFile(path, source, size, modified, inode, ext, creationDt, dateSource, matchedSubId);
+	}
+
+	/** @return a copy at the location the file was moved or linked to, with the matched checklist */
+	MediaFile movedTo(Path newPath, String matchedSubId)
+	{
+		return new MediaFile(newPath, source, size, modified, inode, ext, creationDt, dateSource, matchedSubId);
+	}
+}
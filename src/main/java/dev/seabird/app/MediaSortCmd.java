@@ -1,6 +1,7 @@
 package dev.seabird.app;
 
 import java.nio.file.Path;
+import java.util.List;
 
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -17,6 +18,18 @@ public class MediaSortCmd
 	private Path mediaPath;
 	private long hrsOffset = 0l;
 	
+	/** Folder that receives the sorted media; {@code null} sorts within the media folder. */
+	private Path outputPath;
+	
+	/** Whether an interrupted run found in the output folder is undone instead of resumed. */
+	private boolean rollBackUnfinished = false;
+	
+	/** Whether the media folder is watched and new media sorted as it arrives, see {@link MediaSortEngine#watch()}. */
+	private boolean watch = false;
+	
+	/** Seconds a watched file must stay unchanged before it is sorted. */
+	private int watchSettleSeconds = 10;
+	
 	private Path csvFile;
 	private boolean reParseCsv=true;
 	
@@ -26,4 +39,37 @@ public class MediaSortCmd
 	private boolean createSubDir = true;
 	private boolean useSymbolicLinks = false;
 	private FolderGroup folderGroup = FolderGroup.date;	
+	
+	/** What happens to a file whose content is already in its destination folder. */
+	private DuplicateAction duplicateAction = DuplicateAction.skip;
+	
+	/**
+	 * File name patterns tried after the built-in RecForge and Merlin ones, e.g.
+	 * {@code IMG_yyyyMMdd_HHmmss}. See {@link FileNameTimestampMatcher} for the syntax.
+	 */
+	private List<String> fileNamePatterns = List.of();
+	
+	/**
+	 * Whether creation dates are read in inode order within each folder rather than in name
+	 * order, which saves seeks on spinning disks. Files are still moved in name order.
+	 */
+	private boolean diskOrder = false;
+	
+	/** Number of threads used to resolve creation dates ahead of the move step. */
+	private int dateExtractionThreads = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * Number of threads used to parse large eBird CSV exports; 1 parses them serially. Serial is
+	 * the default, as splitting has not yet been measured to be faster, see {@link EbirdCsvIngest}.
+	 */
+	private int csvIngestThreads = 1;
+	
+	/** Number of files copied at once when the output is on another file system. */
+	private int transferThreads = 4;
+	
+	/** Whether files copied to another file system are verified with a checksum before their source is deleted. */
+	private boolean verifyTransfers = false;
+	
+	/** Total number of cores that concurrently running FFmpeg processes may use. */
+	private int ffmpegCpuBudget = Runtime.getRuntime().availableProcessors();
 }
@@ -0,0 +1,1388 @@
+package dev.seabird.app;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SequencedSet;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+import org.apache.commons.lang3.StringUtils;
+
+import de.siegmar.fastcsv.writer.CsvWriter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Engine responsible for sorting and organizing media files (photos and videos).
+ * 
+ * <p>This task performs the following operations:
+ * <ul>
+ *   <li>Analyzes media files and determines creation dates using multiple strategies (EXIF, filename, file modified time)</li>
+ *   <li>Organizes files into folders using eBird CSV data based on date and/or eBird checklist location</li>
+ *   <li>Optionally transcodes videos, extracts audio, and corrects EXIF timestamps</li>
+ *   <li>Generates a checklist index CSV with statistics</li>
+ * </ul>
+ * 
+ * <p>Files stream through a staged pipeline (walk and filter, date extraction, checklist match and
+ * move, post-move work) connected by bounded queues, so the first files are sorted while the
+ * directory walk is still running and memory use does not grow with the number of files.
+ * 
+ * <p>The engine has no UI dependencies: progress goes to a {@link ProgressListener} and messages
+ * to the log. {@link MediaSortTask} runs it behind the JavaFX UI and {@link MediaSorterCli} runs
+ * it from the command line.
+ */
+@Slf4j
+public class MediaSortEngine {
+	
+	/**
+	 * Receives progress updates from a running engine.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+		
+		/** A listener that ignores all updates. */
+		ProgressListener NONE = (_, _) -> {};
+		
+		/**
+		 * Called after each sorted file and once more when the run ends.
+		 * 
+		 * @param workDone  the number of files sorted so far
+		 * @param totalWork the number of files found so far; grows while the walk is running
+		 */
+		void updateProgress(long workDone, long totalWork);
+	}
+		
+	private static final DateTimeFormatter imageDtf = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+	private static final DateTimeFormatter folderDtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");	
+
+	private static final int LOGGING_WINDOW_SIZE = 1000;
+	static final int DATE_LOOKAHEAD_PER_THREAD = 4;
+	private static final int DISK_ORDER_WINDOW = 256;
+	private static final int PIPELINE_QUEUE_CAPACITY = 1000;
+	private static final long HANDOFF_POLL_MILLIS = 100;
+	private static final int WATCH_BATCH_SIZE = 500;
+	private static final long MAX_ML_UPLOAD_SIZE_VIDEO = 1000l;
+	private static final String TRANSCODED_VIDEO_SUFFIX = "_s";
+
+	private static final String[] invalidChars = new String[] { " ", ":", ",", ".", "/", "\\", ">", "<" };
+	private static final String[] validChars = new String[] { "-", "--", "-", "-", "-", "-", "-", "-" };
+
+	
+	//eBird CSV fields
+	private static volatile ChecklistTable checklists = ChecklistTable.EMPTY;
+	private static final SequencedSet<String> subIds = new TreeSet<>();
+	
+	/**
+	 * The eligible files of a directory being walked. Names are kept in a {@link PathArena} and
+	 * attributes in a primitive array, so a large directory costs no objects per file until its
+	 * files are handed to the pipeline.
+	 */
+	private static final class DirListing {
+		final PathArena files = new PathArena();
+		final int dirId;
+		/** Size, last-modified time in epoch nanoseconds and inode of each entry, interleaved. */
+		long[] attrs = new long[48];
+		/** Whether inodes are read; otherwise they are left 0, see {@link MediaSortCmd#isDiskOrder()}. */
+		final boolean inodes;
+		/** Time spent listing this directory itself, excluding its sub-directories. */
+		long listingNanos;
+		private long resumedNanos = System.nanoTime();
+		long bytes;
+		
+		DirListing(Path dir, boolean inodes) {
+			dirId = files.dirId(dir);
+			this.inodes = inodes;
+		}
+		
+		void add(Path file, BasicFileAttributes fileAttrs) {
+			int entry = files.append(dirId, file.getFileName().toString());
+			if (3 * entry + 3 > attrs.length)
+				attrs = Arrays.copyOf(attrs, attrs.length * 2);
+			attrs[3 * entry] = fileAttrs.size();
+			attrs[3 * entry + 1] = fileAttrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+			attrs[3 * entry + 2] = inodes ? MediaSortUtils.inodeOf(fileAttrs) : 0;
+			bytes += fileAttrs.size();
+		}
+		
+		/** Stops the listing time while a sub-directory is walked. */
+		void pause() {
+			listingNanos += System.nanoTime() - resumedNanos;
+		}
+		
+		void resume() {
+			resumedNanos = System.nanoTime();
+		}
+		
+		/** @return the entries in file name order */
+		int[] byName() {
+			int[] order = files.liveEntries();
+			files.sortByName(order);
+			return order;
+		}
+		
+		MediaFile file(int entry) {
+			return MediaFile.of(files.path(entry), attrs[3 * entry], Instant.ofEpochSecond(0, attrs[3 * entry + 1]),
+			                    attrs[3 * entry + 2]);
+		}
+	}
+	
+	/** Supplies the files of a run to the pipeline and ends them with {@link #END_OF_FILES}. */
+	@FunctionalInterface
+	private interface FileFeed {
+		void feed(BlockingQueue<MediaFile> walkQueue) throws IOException, InterruptedException;
+	}
+	
+	/** A walked file whose creation date is being resolved. */
+	record PendingFile(MediaFile file, Future<MediaFile> dated) {}
+	
+	/** A completed transfer to another file system, registered by the move stage. */
+	private record SettledTransfer(MediaFile file, Path destFile, boolean placed) {}
+	
+	/** End-of-stream markers for the pipeline queues, compared by identity. */
+	static final MediaFile END_OF_FILES = new MediaFile(Path.of(""), Path.of(""), 0, Instant.EPOCH, 0, "", null, null, null);
+	static final PendingFile END_OF_PENDING = new PendingFile(END_OF_FILES, null);
+	
+	private final MediaSortCmd msc;	
+	private final ProgressListener progress;
+	private final List<CreationDateProvider> creationDateProviders;
+	/** Short provider names, as reported in the metrics and the {@link SortManifest}. */
+	private final List<String> providerNames;
+	
+	private final AtomicLong numFound = new AtomicLong();
+	private final AtomicLong numSkipped = new AtomicLong();
+	private final AtomicLong numDated = new AtomicLong();
+	private final AtomicLong numMoved = new AtomicLong();
+	private final AtomicLong numFinished = new AtomicLong();
+	private final AtomicLong numDuplicates = new AtomicLong();
+	
+	private final RunMetrics metrics = new RunMetrics();
+	private final RunMetrics.Stat[] providerStats;
+	private final RunMetrics.Stat dateCacheStat = metrics.stat("date.cache");
+	private final RunMetrics.Stat walkDirStat = metrics.stat("walk.directory");
+	private final RunMetrics.Stat matchAndMoveStat = metrics.stat("matchAndMove");
+	private final RunMetrics.Stat moveStat = metrics.stat("move");
+	private final RunMetrics.Stat exifDateStat = metrics.stat("exifDateChange");
+	
+	private CreationDateCache dateCache;
+	private DestinationCache destinations;
+	private SortLedger ledger;
+	
+	private volatile FfmpegScheduler ffmpeg;
+	private TransferEngine transfers;
+	private DuplicateDetector duplicates;
+	/** Transfers completed on transfer threads, not yet registered with the move stage's caches. */
+	private final Queue<SettledTransfer> settledTransfers = new ConcurrentLinkedQueue<>();
+	
+	private MoveJournal journal;
+	private SortManifest manifest;
+	/** Maps a folder of the run's output directory to the library folder it is merged into, {@code null} if none. */
+	private Function<Path, Path> mergeTargetOf = _ -> null;
+	/** Sources an interrupted run already handled, skipped by the walk when it is resumed. */
+	private Set<Path> handledSources = Set.of();
+	/** Files an interrupted run moved without finishing their post-move work. */
+	private List<MediaFile> unfinishedFiles = List.of();
+	
+	/**
+	 * @param msc      the sort settings
+	 * @param progress receives progress updates
+	 * @throws IllegalArgumentException if a configured file name pattern is invalid
+	 */
+	public MediaSortEngine(MediaSortCmd msc, ProgressListener progress) {
+	    this.msc = msc;
+	    this.progress = progress;
+	    this.creationDateProviders = List.of(new FileNameCreationDateProvider(msc.getFileNamePatterns()),
+	            new ExifCreationDateProvider(), new FileModifiedCreationDateProvider());
+	    this.providerNames = creationDateProviders.stream()
+	            .map(cdp -> cdp.getClass().getSimpleName().replace("CreationDateProvider", ""))
+	            .toList();
+	    this.providerStats = providerNames.stream()
+	            .map(name -> metrics.stat("date." + name))
+	            .toArray(RunMetrics.Stat[]::new);
+	}
+
+	/**
+	 * Sets the EXIF {@code DateTimeOriginal} of a JPEG. The value is patched in place when the tag
+	 * already exists; otherwise the EXIF block is rebuilt with commons-imaging.
+	 *
+	 * @return {@code true} if the date was changed
+	 */
+	private static boolean changeDateTimeOrig(Path imageFile, String newDateTime) throws IOException {
+		if (ExifDateTimePatcher.patchDateTimeOriginal(imageFile, newDateTime))
+			return true;
+		
+		byte[] originalImageBytes = Files.readAllBytes(imageFile);
+
+		JpegImageMetadata jpegMetadata = MediaSortUtils.jpegImageMetadata(originalImageBytes);
+		if (jpegMetadata == null)
+			return false;
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			TiffImageMetadata exif = jpegMetadata.getExif();
+			TiffOutputSet outputSet = exif != null ? exif.getOutputSet() : new TiffOutputSet();
+			TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
+
+			exifDirectory.removeField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
+			exifDirectory.add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, newDateTime);
+
+			new ExifRewriter().updateExifMetadataLossless(originalImageBytes, baos, outputSet);
+
+			try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(imageFile))) {
+				os.write(baos.toByteArray());
+			}
+
+		return true;
+	}
+
+	private static boolean isEligibleMediaFile(Path file, BasicFileAttributes attrs) {
+		if (attrs.isDirectory() || attrs.isSymbolicLink())
+			return false;
+
+		return MediaSortUtils.mediaExtensions.contains(MediaSortUtils.getFileExtension(file).toLowerCase());
+	}
+
+	/**
+	 * Moves a file from the source path to the destination path, optionally using a symbolic link.
+	 * <p>
+	 * The destination has been chosen by the {@link DuplicateDetector} and is free, so this costs
+	 * a single rename. Should another program have created it in the meantime, a warning is
+	 * logged and the source path is returned unchanged. Depending on the configuration in
+	 * {@code msc}, this method either creates a symbolic link at the destination pointing to the
+	 * source, or physically moves the file from the source to the destination.
+	 * </p>
+	 *
+	 * @param from the source path of the file to move
+	 * @param to the free destination path where the file should be moved or linked
+	 * @return the path of the file after the operation: {@code from} if the destination appeared
+	 *         in the meantime, or {@code to} if the move or link creation succeeds
+	 * @throws IOException if an I/O error occurs during the move or symbolic link creation
+	 */
+	private Path moveFile(MediaFile from, Path to) throws IOException 
+	{
+		long start = System.nanoTime();
+		try {
+			return moveOrLink(from, to);
+		} finally {
+			moveStat.recordSince(start, from.size());
+		}
+	}
+	
+	private Path moveOrLink(MediaFile from, Path to) throws IOException 
+	{
+		try {
+			Path placed = msc.isUseSymbolicLinks() ? Files.createSymbolicLink(to, from.path()) : Files.move(from.path(), to);
+			destinations.markTaken(to);
+			duplicates.added(from.path(), to, from.size());
+			return placed;
+		} catch (FileAlreadyExistsException e) {
+			destinations.markTaken(to);
+			log.warn(to.getFileName() + " was created by another program while sorting. Source file unchanged.");
+			return from.path();
+		}
+	}
+	
+	/**
+	 * Disposes of a file whose content is already in its destination folder, as configured by
+	 * {@link MediaSortCmd#getDuplicateAction()}. The source is deleted; with
+	 * {@link DuplicateAction#link} its name is kept as a hard link to the existing copy, if the
+	 * name is free. Sources are never deleted when sorting with symbolic links.
+	 *
+	 * @param file      the file, with its matched checklist
+	 * @param duplicate the existing file with the same content
+	 * @param destFile  the file's own name in the destination folder
+	 */
+	private void placeDuplicate(MediaFile file, Path duplicate, Path destFile) throws IOException
+	{
+		numDuplicates.incrementAndGet();
+		if (msc.isUseSymbolicLinks()) {
+			log.info("{} is already in {}, not linked again", file.name(), duplicate.getParent().getFileName());
+			return;
+		}
+		
+		Path kept = duplicate;
+		if (msc.getDuplicateAction() == DuplicateAction.link && duplicates.isFree(destFile)) {
+			try {
+				Files.createLink(destFile, duplicate);
+				destinations.markTaken(destFile);
+				kept = destFile;
+			} catch (IOException | UnsupportedOperationException e) {
+				log.warn("Could not hard-link {} to {}: {}", destFile.getFileName(), duplicate.getFileName(), e.toString());
+			}
+		}
+		
+		journal.duplicate(file, duplicate, kept);
+		Files.delete(file.path());
+		dateCache.removed(file.path());
+		ledger.placed(kept, file.subId());
+		manifest.add(file, libraryPath(kept), SortManifest.Outcome.duplicate, kept.equals(destFile) ? "hardLink" : "");
+		log.info("{} is a duplicate of {}, source removed", file.name(), duplicate.getFileName());
+	}
+	
+	/**
+	 * Shuts down every FFmpeg {@link Process} started by this engine that is still running.
+	 * 
+	 * @see FfmpegScheduler#destroyAll()
+	 */
+	public void destroyRunningProcesses() {
+	    FfmpegScheduler scheduler = ffmpeg;
+	    if (scheduler != null)
+	        scheduler.destroyAll();
+	}
+
+	/** @return {@code true} if an FFmpeg process started by this engine is still running */
+	public boolean hasRunningProcesses() {
+	    FfmpegScheduler scheduler = ffmpeg;
+	    return scheduler != null && scheduler.hasLiveProcesses();
+	}
+		
+	private static LocalDateTime applyHrsOffset(CreationDateProvider cdp, LocalDateTime rawTime, long hrsOffset)
+	{
+		return hrsOffset == 0L || !cdp.appliesHrsOffset() ? rawTime : rawTime.plusHours(hrsOffset);
+	}
+	
+	/**
+	 * Resolves the creation date of a file, consulting the {@link CreationDateCache} before
+	 * running the provider chain. Providers are called without an offset so the raw timestamp can
+	 * be cached; the offset is then applied for providers that honour it.
+	 * 
+	 * @param file the walked file; its size and modification time key the cache
+	 * @param hrsOffset
+	 * @return the file with its creation date and the provider that found it; a cached date is
+	 *         reported as coming from the cache
+	 * @throws IOException
+	 */
+	private MediaFile findCreationDt(MediaFile file,long hrsOffset) throws IOException
+	{
+		long start = System.nanoTime();
+		CreationDateCache.Entry cached = dateCache.lookup(file.path(), file.size(), file.modifiedMillis());
+		dateCacheStat.recordSince(start, 0);
+		if (cached != null) {
+			int i = cached.providerIdx();
+			return file.withCreationDt(applyHrsOffset(creationDateProviders.get(i), cached.creationDt(), hrsOffset),
+			                           providerNames.get(i) + " (cached)");
+		}
+		
+		for (int i = 0; i < creationDateProviders.size(); i++) {
+			CreationDateProvider cdp = creationDateProviders.get(i);
+			start = System.nanoTime();
+			LocalDateTime rawTime = cdp.findCreationDate(file, 0L);
+			providerStats[i].recordSince(start, cdp.readsFileContent() ? file.size() : 0);
+			
+			if (rawTime != null) {
+				dateCache.put(file.path(), file.size(), file.modifiedMillis(), i, rawTime);
+				return file.withCreationDt(applyHrsOffset(cdp, rawTime, hrsOffset), providerNames.get(i));
+			}
+		}
+		
+		return file;
+	}
+	
+	/**
+	 * Calculates the destination directory path based on output directory, submission ID, media timestamp, and folder grouping strategy.
+	 * 
+	 * @param outputDir   the base output directory where the calculated path will be resolved, must not be {@code null}
+	 * @param subId       the submission ID, may be {@code null}; if {@code null}, the path excludes submission-specific details
+	 * @param ss          the stats of the checklist {@code subId}, ignored if {@code subId} is {@code null}
+	 * @param mediaTime   the timestamp of the media, used to generate a date string, must not be {@code null}
+	 * @param folderGroup the grouping strategy for organizing folders (e.g., by location or date), must not be {@code null}
+	 * @return the resolved {@link Path} representing the destination directory
+	 */
+	static Path calcDestDir(Path outputDir, String subId, SubStats ss, LocalDateTime mediaTime, FolderGroup folderGroup) {
+	    
+		String mediaDateStr = mediaTime.format(folderDtf);
+	    
+	    if (subId == null)
+	        return outputDir.resolve(mediaDateStr);
+
+	    String locNameAbbrev = StringUtils.abbreviate(ss.getLocName(), "", 40);
+	    locNameAbbrev = StringUtils.replaceEach(locNameAbbrev, invalidChars, validChars);
+
+	    Path destDir = switch (folderGroup) {
+	        case location -> outputDir
+	                .resolve(ss.getSubnational1Code())
+	                .resolve(ss.getCounty() != null ? ss.getCounty() : "")
+	                .resolve(locNameAbbrev)
+	                .resolve(mediaDateStr + "_" + subId);
+	        case date -> outputDir
+	                .resolve(mediaDateStr)
+	                .resolve(ss.getSubnational1Code() + "_" + ss.getCounty() + "_" + locNameAbbrev + "_" + subId);
+	        default -> outputDir.resolve(mediaDateStr + "_" + subId);
+	    };
+
+	    return destDir;
+	}
+
+	/**
+	 * Waits for the result of a pipeline stage or date lookup, unwrapping any
+	 * {@link IOException} or runtime exception it failed with.
+	 *
+	 * @param pending the future of the stage or lookup
+	 * @return the result
+	 * @throws IOException if the work failed with an I/O error
+	 * @throws InterruptedException if the run was cancelled while waiting
+	 */
+	private static <T> T awaitResult(Future<T> pending) throws IOException, InterruptedException
+	{
+		try {
+			return pending.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException ioe)
+				throw ioe;
+			if (e.getCause() instanceof RuntimeException re)
+				throw re;
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Puts an item on a bounded stage queue, blocking while the queue is full. Fails instead of
+	 * blocking forever if the consuming stage has already terminated.
+	 */
+	private static <T> void handOff(BlockingQueue<T> queue, T item, Future<?> consumer) throws IOException, InterruptedException
+	{
+		while (!queue.offer(item, HANDOFF_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+			if (consumer.isDone()) {
+				awaitResult(consumer);
+				throw new IllegalStateException("Pipeline stage ended before its input was complete");
+			}
+		}
+	}
+
+	/**
+	 * Matches a file against the checklists using its already resolved creation date and moves it
+	 * to the appropriate directory.
+	 *
+	 * @param file         The file to check and move, with its creation date resolved.
+	 * @param outputDir    The output directory containing the folder(s) where the file will be moved.
+	 * @param sepYearDir   Flag indicating whether to separate files into year directories.
+	 * @return completes with the file at its new location and the matched checklist; pending while
+	 *         the file is copied to another file system by the {@link TransferEngine}. Completes
+	 *         with {@code null} if the file was a duplicate, which needs no post-move work.
+	 * @throws IOException If an I/O error occurs while performing the operation.
+	 * @throws InterruptedException If interrupted while waiting for a free transfer slot.
+	 */
+	private CompletableFuture<MediaFile> checkMetadataAndMove(MediaFile file, Path outputDir, boolean sepYearDir) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		try {
+			return matchAndMove(file, outputDir, sepYearDir);
+		} finally {
+			matchAndMoveStat.recordSince(start, file.size());
+		}
+	}
+	
+	private CompletableFuture<MediaFile> matchAndMove(MediaFile file, Path outputDir, boolean sepYearDir) throws IOException, InterruptedException {
+		
+		registerSettledTransfers();
+		
+		LocalDateTime mediaTime = file.creationDt();
+		Path grandParentDir = outputDir;
+		if (sepYearDir)
+			grandParentDir = grandParentDir.resolve(Path.of(String.valueOf(mediaTime.getYear())));
+
+		String subId = checklists.find(mediaTime);
+		SubStats ss = null;
+		if (subId != null)
+			ss = checklists.get(subId);
+		
+		Path destDir = destinations.directoryFor(grandParentDir, subId, ss, mediaTime);
+		Path ownName = destDir.resolve(file.path().getFileName());
+		DuplicateDetector.Resolution resolution = duplicates.resolve(file, ownName);
+		if (resolution.isDuplicate()) {
+			placeDuplicate(file.withSubId(subId), resolution.target(), ownName);
+			return CompletableFuture.completedFuture(null);
+		}
+		
+		Path destFile = resolution.target();
+		journal.planned(file.withSubId(subId), destFile);
+		
+		if (!msc.isUseSymbolicLinks() && transfers.crossesDevice(file.path().getParent(), destDir)) {
+			// reserves the name while the copy is in flight; released again if the copy fails
+			destinations.markTaken(destFile);
+			String matchedSubId = subId;
+			return transfers.transfer(file, destFile).thenApply(placed -> {
+				journal.moved(file.path(), placed);
+				if (placed.equals(destFile)) {
+					dateCache.moved(file.path(), destFile);
+					ledger.placed(destFile, matchedSubId);
+				}
+				settledTransfers.add(new SettledTransfer(file, destFile, placed.equals(destFile)));
+				return file.movedTo(placed, matchedSubId);
+			});
+		}
+		
+		Path movedFile = moveFile(file, destFile);
+		journal.moved(file.path(), movedFile);
+		if (movedFile.equals(destFile))
+			ledger.placed(destFile, subId);
+		if (!msc.isUseSymbolicLinks() && movedFile.equals(destFile))
+			dateCache.moved(file.path(), destFile);
+		
+		return CompletableFuture.completedFuture(file.movedTo(movedFile, subId));
+	}
+	
+	/**
+	 * Registers the outcome of completed transfers with the destination and duplicate caches,
+	 * which belong to the move stage: a copied file becomes a duplicate candidate, the name of a
+	 * failed copy is free again.
+	 */
+	private void registerSettledTransfers() {
+		for (SettledTransfer t = settledTransfers.poll(); t != null; t = settledTransfers.poll()) {
+			if (t.placed())
+				duplicates.added(t.file().path(), t.destFile(), t.file().size());
+			else
+				destinations.release(t.destFile());
+		}
+	}
+	
+	/**
+	 * Recursively deletes empty directories below the given directory. The directory itself is
+	 * kept, as it is empty after all its media has been sorted into another folder.
+	 * Uses depth-first post-order traversal to ensure subdirectories are processed first.
+	 *
+	 * @param rootDir the starting directory to clean
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void cleanEmptyDirectories(Path rootDir) throws IOException {
+	    Files.walkFileTree(rootDir, new SimpleFileVisitor<Path>() {
+	        @Override
+	        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+	            if (exc == null && !dir.equals(rootDir)) {
+	                try (Stream<Path> stream = Files.list(dir)) {
+	                    if (stream.findAny().isEmpty()) {
+	                        Files.delete(dir);	                       
+	                    }
+	                }
+	            }
+	            return FileVisitResult.CONTINUE;
+	        }
+	    });
+	}
+	
+	private Path shouldConvertVideo(MediaFile file) {
+	    if (!msc.isTranscodeVideos() || file.name().endsWith(TRANSCODED_VIDEO_SUFFIX) ||
+	        !MediaSortUtils.videoExtensions.contains(file.ext())) {
+	        return null;
+	    }
+	    Path output = file.path().resolveSibling(file.baseName() + TRANSCODED_VIDEO_SUFFIX + ".mp4");
+	    if (Files.exists(output)) return null;
+	    long sizeMB = file.size() / (1024 * 1024);
+	    boolean isMovOrAvi = file.ext().equals("avi") || file.ext().equals("mov");
+	    boolean tooLarge = sizeMB > MAX_ML_UPLOAD_SIZE_VIDEO;
+	    return (isMovOrAvi || tooLarge) ? output : null;
+	}
+
+	private Path shouldExtractAudio(MediaFile file) {
+	    if (!msc.isExtractAudio() || !MediaSortUtils.videoExtensions.contains(file.ext())) {
+	        return null;
+	    }
+	    Path output = file.path().resolveSibling(file.baseName() + ".mp3");
+	    return Files.exists(output) ? null : output;
+	}
+	
+	private boolean handleVideoTranscoding(MediaFile file) {
+	    Path converted = shouldConvertVideo(file);
+	    if (converted == null) return false;
+
+	    log.info("{} queued for transcoding to MP4 with ffmpeg...", file.name());
+
+	    ffmpeg.submit("video transcoding", Integer.MAX_VALUE, threads -> new String[] {
+	        "ffmpeg", "-threads", "1", "-i", file.path().toString(),
+	        "-map_metadata", "0",
+	        "-c:v", "libx264",
+	        "-threads", Integer.toString(threads),
+	        "-crf", "22",
+	        "-preset", "medium",
+	        "-c:a", "copy",
+	        converted.toString()
+	    }, () -> {
+	        log.info("Saved converted video to {}", converted.getFileName());
+	        placedNextTo(file, converted);
+	    });
+	    return true;
+	}
+
+	private boolean handleAudioExtraction(MediaFile file) {
+	    Path extracted = shouldExtractAudio(file);
+	    if (extracted == null) return false;
+
+	    log.info("{} queued for audio extraction to MP3 with ffmpeg...", file.name());
+
+	    ffmpeg.submit("audio extraction", 1, threads -> new String[] {
+	        "ffmpeg", "-i", file.path().toString(),
+	        "-vn", "-c:a", "mp3", "-b:a", "192k",
+	        "-threads", Integer.toString(threads),
+	        "-map_metadata", "0",
+	        extracted.toString()
+	    }, () -> {
+	        log.info("Saved extracted audio to {}", extracted.getFileName());
+	        placedNextTo(file, extracted);
+	    });
+	    return true;
+	}
+
+	/**
+	 * Enters a file FFmpeg wrote next to a sorted file in the {@link SortLedger}, under the same
+	 * checklist, so later runs skip it like the original.
+	 */
+	private void placedNextTo(MediaFile file, Path output) {
+	    if (ledger.contains(file.path()))
+	        ledger.placed(output, file.subId());
+	}
+
+	/**
+	 * Writes the offset-adjusted creation date resolved before the move into the EXIF data of a
+	 * JPEG, so the file is not read for its date a second time.
+	 */
+	private boolean handleExifDateCorrection(MediaFile file) throws IOException {
+	    if (msc.getHrsOffset() == 0L) return false;
+	    if (!isJpeg(file)) return false;
+
+	    String newDt = file.creationDt().format(imageDtf);
+
+	    long start = System.nanoTime();
+	    boolean changed = changeDateTimeOrig(file.path(), newDt);
+	    exifDateStat.recordSince(start, changed ? file.size() : 0);
+	    
+	    if (changed) {
+	        log.info("Changed EXIF date of {} to {}", file.name(), newDt);
+	    }
+	    return changed;
+	}
+
+	private static boolean isJpeg(MediaFile file) {
+	    return "jpg".equals(file.ext()) || "jpeg".equals(file.ext());
+	}
+
+	/** @return the post-move work done or queued for the file, as listed in the {@link SortManifest} */
+	private String afterMove(MediaFile file) throws IOException {
+	    StringJoiner actions = new StringJoiner(";");
+	    if (handleVideoTranscoding(file))
+	        actions.add("transcode");
+	    if (handleAudioExtraction(file))
+	        actions.add("extractAudio");
+	    if (handleExifDateCorrection(file))
+	        actions.add("exifDate");
+	    return actions.toString();
+	}
+	
+	/**
+	 * Writes the checklist index of everything in the {@link SortLedger}, so it covers the media
+	 * of earlier runs as well. Checklists missing from the loaded eBird data are left out.
+	 */
+	@SuppressWarnings("resource")
+	private Path writeResults(Path mediaPath, long runId) {
+	    resetResults();
+	    ledger.countsBySubId().forEach((id, count) -> {
+	        SubStats ss = checklists.get(id);
+	        if (ss != null) {
+	            subIds.add(id);
+	            ss.addNumAssetsLocal(count);
+	        }
+	    });
+	    if (subIds.isEmpty()) return null;
+	    
+	    Path file = mediaPath.resolve("checklistIndex_" + runId + ".csv");
+	    
+	    try (var w = CsvWriter.builder().build(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+	        w.writeRecord("Checklist Link", "Date", "State", "County", "Num Uploaded Assets", "Num Local Assets");
+	        
+	        for (String id : subIds) {
+	            var s = checklists.get(id);
+	            w.writeRecord(
+	                "https://ebird.org/checklist/" + id + "/media",
+	                s.getDate(), s.getSubnational1Code(), s.getCounty(),
+	                Integer.toString(s.getNumAssetsUploaded()),
+	                Integer.toString(s.getNumAssetsLocal())
+	            );
+	        }
+	    } catch (IOException e) {
+	        log.error("Error writing CSV!", e);
+	    }
+	    
+	    return file;
+	}
+	
+	/** Forgets the local counts of the index, so a second run does not double them. */
+	private static void resetResults() {
+	    checklists.resetLocalCounts();
+	    subIds.clear();
+	}
+	
+	/**
+	 * Logs the run's timings and writes them to {@code runReport_<runId>.json} next to the
+	 * checklist index. Failures are logged, not thrown.
+	 */
+	private void writeRunReport(Path mediaPath, long runId) {
+	    metrics.logSummary();
+	    
+	    Path file = mediaPath.resolve("runReport_" + runId + ".json");
+	    try {
+	        Map<String, Long> totals = new LinkedHashMap<>();
+	        totals.put("filesFound", numFound.get());
+	        totals.put("filesSkipped", numSkipped.get());
+	        totals.put("datesResolved", numDated.get());
+	        totals.put("filesMoved", numMoved.get());
+	        totals.put("filesFinished", numFinished.get());
+	        totals.put("duplicatesRemoved", numDuplicates.get());
+	        metrics.writeReport(file, totals);
+	        log.info("Run report written to {}", file.getFileName());
+	    } catch (IOException e) {
+	        log.error("Error writing run report!", e);
+	    }
+	}
+	
+	/**
+	 * Loads the checklists of the selected eBird export, from its binary snapshot if the CSV is
+	 * unchanged since the snapshot was taken, otherwise by parsing the CSV and taking a new snapshot.
+	 */
+	private void parseCsvIfNeeded() throws IOException {
+	    Path csvFile = msc.getCsvFile();
+	    if (csvFile != null && msc.isReParseCsv()) {
+	        ChecklistTable table = EbirdDataSnapshot.load(EbirdDataSnapshot.DEFAULT_SNAPSHOT_FILE, csvFile);
+	        if (table == null) {
+	            log.info("Reading {}...", csvFile.getFileName());
+	            table = EbirdCsvIngest.parse(csvFile, msc.getCsvIngestThreads());
+	            EbirdDataSnapshot.save(EbirdDataSnapshot.DEFAULT_SNAPSHOT_FILE, csvFile, table);
+	        }
+	        checklists = table;
+	        msc.setReParseCsv(false);
+	    }
+	}
+
+	/**
+	 * Switches to a new eBird export while watching. The next index is built from the ledger with
+	 * the new checklists.
+	 */
+	private void reloadChecklists(Path csvFile) throws IOException {
+	    log.info("Loading new eBird data from {}", csvFile.getFileName());
+	    msc.setCsvFile(csvFile);
+	    msc.setReParseCsv(true);
+	    parseCsvIfNeeded();
+	}
+
+	private static Path setupOutputDirectory(Path outputRoot) {
+	    String outputDirName = MediaSortUtils.OUTPUT_FOLDER_NAME + "_" + Instant.now().toEpochMilli();
+	    return outputRoot.resolve(outputDirName);
+	}
+
+	/** Whether a resumed run's predecessor already sorted {@code file}. */
+	private boolean isHandledSource(Path file) {
+	    return !handledSources.isEmpty() && handledSources.contains(file.toAbsolutePath().normalize());
+	}
+
+	/**
+	 * Walks the media directory and hands every eligible file to the date extraction stage.
+	 * 
+	 * <p>Files are emitted one directory at a time, sorted by file name within each directory,
+	 * so sorting starts as soon as the first directory has been listed and only one directory's
+	 * worth of names is ever buffered, in a {@link PathArena}. A file's {@code Path} is created
+	 * when it is handed to the pipeline. The output directory of the current run is skipped, and so
+	 * is media the {@link SortLedger} knows was sorted by an earlier run. The attributes read by
+	 * the walk travel with each file, so no later stage queries them again. Every media file
+	 * found, skipped or not, is marked {@linkplain CreationDateCache#seen seen} in the date cache.
+	 */
+	private void walkEligibleFiles(Path mediaPath, Path outputDir, BlockingQueue<MediaFile> walkQueue) throws IOException, InterruptedException {
+	    log.info("Analyzing files...");
+	    long walkStart = System.nanoTime();
+	    Deque<DirListing> dirFiles = new ArrayDeque<>();
+
+	    try {
+	        Files.walkFileTree(mediaPath, new SimpleFileVisitor<Path>() {
+	            @Override
+	            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+	                if (dir.equals(outputDir))
+	                    return FileVisitResult.SKIP_SUBTREE;
+
+	                int sorted = ledger.skippableFiles(dir, attrs);
+	                if (sorted >= 0) {
+	                    numSkipped.addAndGet(sorted);
+	                    dateCache.seenFolder(dir);
+	                    return FileVisitResult.SKIP_SUBTREE;
+	                }
+
+	                if (!dirFiles.isEmpty())
+	                    dirFiles.peek().pause();
+	                dirFiles.push(new DirListing(dir, msc.isDiskOrder()));
+	                return FileVisitResult.CONTINUE;
+	            }
+
+	            @Override
+	            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+	                if (!isEligibleMediaFile(file, attrs))
+	                    return FileVisitResult.CONTINUE;
+	                dateCache.seen(file);
+	                if (isHandledSource(file))
+	                    return FileVisitResult.CONTINUE;
+
+	                if (ledger.contains(file)) {
+	                    numSkipped.incrementAndGet();
+	                } else {
+	                    dirFiles.peek().add(file, attrs);
+	                }
+	                return FileVisitResult.CONTINUE;
+	            }
+
+	            @Override
+	            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+	                if (exc != null)
+	                    throw exc;
+
+	                DirListing listing = dirFiles.pop();
+	                int[] order = listing.byName();
+	                listing.pause();
+	                walkDirStat.record(listing.listingNanos, listing.bytes);
+
+	                for (int entry : order) {
+	                    try {
+	                        walkQueue.put(listing.file(entry));
+	                    } catch (InterruptedException e) {
+	                        Thread.currentThread().interrupt();
+	                        return FileVisitResult.TERMINATE;
+	                    }
+
+	                    if (numFound.incrementAndGet() % LOGGING_WINDOW_SIZE == 0)
+	                        log.info("Added files to processing queue ({} total)...", numFound.get());
+	                }
+	                if (!dirFiles.isEmpty())
+	                    dirFiles.peek().resume();
+	                return FileVisitResult.CONTINUE;
+	            }
+	        });
+	    } finally {
+	        walkQueue.put(END_OF_FILES);
+	        metrics.phase("walk", walkStart);
+	    }
+
+	    log.info("Found {} files in {} and subdirectories", numFound.get(), mediaPath);
+	    if (numSkipped.get() > 0)
+	        log.info("Skipped {} files sorted by earlier runs", numSkipped.get());
+	}
+
+	/** Feeds a batch of settled files found by a {@link FolderWatcher}. */
+	private void feedBatch(List<MediaFile> files, BlockingQueue<MediaFile> walkQueue) throws InterruptedException {
+	    try {
+	        for (MediaFile f : files) {
+	            walkQueue.put(f);
+	            numFound.incrementAndGet();
+	        }
+	    } finally {
+	        walkQueue.put(END_OF_FILES);
+	    }
+	}
+
+	/**
+	 * Submits each walked file to the date extraction pool. The bounded {@code dateQueue} keeps
+	 * extraction at most a fixed number of files ahead of the mover and preserves walk order.
+	 * 
+	 * <p>With {@link MediaSortCmd#isDiskOrder()}, consecutive files of a folder are taken in
+	 * windows of up to {@link #DISK_ORDER_WINDOW} and submitted in inode order, which most file
+	 * systems keep close to the order of the files on disk, so a spinning disk reads them with few
+	 * seeks. They still reach the mover in walk order. A window is cut short when the walk has
+	 * nothing ready, so a slow walk does not hold dates back.
+	 * 
+	 * @param diskOrder whether to submit the files of a window in inode order
+	 * @param lookup    submits the date lookup of a file to the date extraction pool
+	 */
+	static void dispatchDateExtraction(BlockingQueue<MediaFile> walkQueue, BlockingQueue<PendingFile> dateQueue,
+	                                   boolean diskOrder, Function<MediaFile, Future<MediaFile>> lookup) throws InterruptedException {
+	    try {
+	        MediaFile f = walkQueue.take();
+	        while (f != END_OF_FILES) {
+	            if (!diskOrder) {
+	                dateQueue.put(new PendingFile(f, lookup.apply(f)));
+	                f = walkQueue.take();
+	                continue;
+	            }
+	            
+	            List<MediaFile> window = new ArrayList<>();
+	            Path dir = f.path().getParent();
+	            do {
+	                window.add(f);
+	                f = walkQueue.poll();
+	            } while (f != null && f != END_OF_FILES && window.size() < DISK_ORDER_WINDOW && dir.equals(f.path().getParent()));
+	            
+	            dispatchInDiskOrder(window, dateQueue, lookup);
+	            if (f == null)
+	                f = walkQueue.take();
+	        }
+	    } finally {
+	        dateQueue.put(END_OF_PENDING);
+	    }
+	}
+	
+	private static void dispatchInDiskOrder(List<MediaFile> window, BlockingQueue<PendingFile> dateQueue,
+	                                        Function<MediaFile, Future<MediaFile>> lookup) throws InterruptedException {
+	    List<MediaFile> byInode = new ArrayList<>(window);
+	    byInode.sort(Comparator.comparingLong(MediaFile::inode));
+	    
+	    Map<MediaFile, Future<MediaFile>> dated = new IdentityHashMap<>();
+	    for (MediaFile f : byInode)
+	        dated.put(f, lookup.apply(f));
+	    for (MediaFile f : window)
+	        dateQueue.put(new PendingFile(f, dated.get(f)));
+	}
+	
+	private Future<MediaFile> submitDateLookup(MediaFile file, ExecutorService dateExecutor, long hrsOffset) {
+	    return dateExecutor.submit(() -> {
+	        MediaFile withDate = findCreationDt(file, hrsOffset);
+	        numDated.incrementAndGet();
+	        return withDate;
+	    });
+	}
+
+	/**
+	 * Matches and moves files in walk order as their creation dates become available, handing
+	 * each moved file on to the post-move stage. Files copied to another file system are handed
+	 * on when their transfer completes, which may be out of order. Files a resumed run moved
+	 * but did not finish are handed on first.
+	 * 
+	 * @return the number of files processed
+	 */
+	private long processFiles(BlockingQueue<PendingFile> dateQueue, BlockingQueue<MediaFile> postMoveQueue, Future<?> postMoveStage,
+	                          Path outputDir, boolean sepYearDir) throws IOException, InterruptedException {
+	    for (MediaFile f : unfinishedFiles)
+	        handOff(postMoveQueue, f, postMoveStage);
+
+	    for (PendingFile pf = dateQueue.take(); pf != END_OF_PENDING; pf = dateQueue.take()) {
+	        MediaFile dated = awaitResult(pf.dated());
+	        CompletableFuture<MediaFile> placed = checkMetadataAndMove(dated, outputDir, sepYearDir);
+	        if (placed.isDone()) {
+	            MediaFile movedFile = placed.join();
+	            if (movedFile != null)
+	                handOff(postMoveQueue, movedFile, postMoveStage);
+	        } else
+	            placed.thenAccept(movedFile -> handOffTransferred(postMoveQueue, movedFile, postMoveStage));
+
+	        long moved = numMoved.incrementAndGet();
+	        progress.updateProgress(moved, numFound.get());
+	        if (moved % LOGGING_WINDOW_SIZE == 0)
+	            log.info("Sorted {} of {} files found so far ({} dates resolved, {} finished)...",
+	                     moved, numFound.get(), numDated.get(), numFinished.get());
+	    }
+
+	    transfers.awaitAll();
+	    registerSettledTransfers();
+	    handOff(postMoveQueue, END_OF_FILES, postMoveStage);
+	    return numMoved.get();
+	}
+	
+	/** Hands a file on from the transfer thread that completed its copy. */
+	private static void handOffTransferred(BlockingQueue<MediaFile> postMoveQueue, MediaFile movedFile, Future<?> postMoveStage) {
+	    try {
+	        handOff(postMoveQueue, movedFile, postMoveStage);
+	    } catch (InterruptedException e) {
+	        Thread.currentThread().interrupt();
+	    } catch (IOException | RuntimeException e) {
+	        log.error("Could not finish {}", movedFile.path(), e);
+	    }
+	}
+
+	/**
+	 * Runs the post-move work on each moved file and enters it in the {@link SortManifest}. EXIF
+	 * adjustment happens inline; transcoding and audio extraction are queued on the
+	 * {@link FfmpegScheduler} and awaited by {@link #runPipeline}.
+	 */
+	private void finalizeProcessing(BlockingQueue<MediaFile> movedFiles, long hrsOffset) throws IOException, InterruptedException {
+	    if (hrsOffset != 0L) {
+	        log.info("Adjusting EXIF data as files are sorted (may take a while)...");
+	    }
+
+	    for (MediaFile f = movedFiles.take(); f != END_OF_FILES; f = movedFiles.take()) {
+	        String actions = afterMove(f);
+	        journal.finished(f.path());
+	        manifest.add(f, libraryPath(f.path()), outcomeOf(f), actions);
+	        numFinished.incrementAndGet();
+	    }
+	}
+
+	/** @return the pool that resolves creation dates ahead of the mover */
+	static ExecutorService newDateExecutor(int numThreads) {
+	    return Executors.newFixedThreadPool(numThreads, Thread.ofPlatform().name("date-extractor-", 0).daemon().factory());
+	}
+
+	/**
+	 * Runs the walk, date extraction, match/move and post-move stages concurrently, connected by
+	 * bounded queues so each stage blocks when the next one falls behind. The match/move stage
+	 * runs on the calling thread. The walk stage runs {@code files}, which is the directory walk
+	 * of a full run or a batch of watched files.
+	 * 
+	 * @return the number of files processed
+	 */
+	private long runPipeline(FileFeed files, Path outputDir, long hrsOffset, boolean sepYearDir) throws IOException, InterruptedException {
+	    int numThreads = Math.max(1, msc.getDateExtractionThreads());
+
+	    BlockingQueue<MediaFile> walkQueue = new ArrayBlockingQueue<>(PIPELINE_QUEUE_CAPACITY);
+	    BlockingQueue<PendingFile> dateQueue = new ArrayBlockingQueue<>(numThreads * DATE_LOOKAHEAD_PER_THREAD);
+	    BlockingQueue<MediaFile> postMoveQueue = new ArrayBlockingQueue<>(PIPELINE_QUEUE_CAPACITY);
+
+	    ExecutorService dateExecutor = newDateExecutor(numThreads);
+	    ExecutorService stageExecutor = Executors.newFixedThreadPool(3,
+	            Thread.ofPlatform().name("sort-stage-", 0).daemon().factory());
+	    ffmpeg = new FfmpegScheduler(msc.getFfmpegCpuBudget(), metrics.stat("ffmpeg"));
+	    transfers = new TransferEngine(msc.getTransferThreads(), msc.isVerifyTransfers(), metrics);
+	    Path libraryDir = finalOutputDir();
+	    mergeTargetOf = dir -> !outputDir.equals(libraryDir) && dir.startsWith(outputDir) ? libraryDir.resolve(outputDir.relativize(dir)) : null;
+	    duplicates = new DuplicateDetector(destinations, mergeTargetOf, metrics);
+
+	    try {
+	        Future<?> postMoveStage = stageExecutor.submit(() -> {
+	            finalizeProcessing(postMoveQueue, hrsOffset);
+	            return null;
+	        });
+	        Future<?> dateStage = stageExecutor.submit(() -> {
+	            dispatchDateExtraction(walkQueue, dateQueue, msc.isDiskOrder(), f -> submitDateLookup(f, dateExecutor, hrsOffset));
+	            return null;
+	        });
+	        Future<?> walkStage = stageExecutor.submit(() -> {
+	            files.feed(walkQueue);
+	            return null;
+	        });
+
+	        long numProcessed = processFiles(dateQueue, postMoveQueue, postMoveStage, outputDir, sepYearDir);
+
+	        // the date stage is drained first: if it failed, the walker may be blocked on a full queue
+	        awaitResult(dateStage);
+	        awaitResult(walkStage);
+
+	        if (numProcessed > 0)
+	            log.info("Finishing up...");
+	        awaitResult(postMoveStage);
+	        long drainStart = System.nanoTime();
+	        ffmpeg.awaitAll();
+	        metrics.phase("ffmpegDrain", drainStart);
+
+	        return numProcessed;
+	    } finally {
+	        stageExecutor.shutdownNow();
+	        dateExecutor.shutdownNow();
+	        ffmpeg.close();
+	        transfers.close();
+	        duplicates.close();
+	    }
+	}
+
+	/** @return where a file placed in the run's output directory is once the directory has been merged */
+	private Path libraryPath(Path placed) {
+	    Path merged = mergeTargetOf.apply(placed);
+	    return merged != null ? merged : placed;
+	}
+
+	private SortManifest.Outcome outcomeOf(MediaFile f) {
+	    if (f.path().equals(f.source()))
+	        return SortManifest.Outcome.unchanged;
+	    return msc.isUseSymbolicLinks() ? SortManifest.Outcome.linked : SortManifest.Outcome.moved;
+	}
+
+	/** @return the library folder the output of a run ends up in: {@code ebird}, or the output root */
+	private Path finalOutputDir() {
+	    Path mediaPath = msc.getMediaPath();
+	    Path outputRoot = msc.getOutputPath() != null ? msc.getOutputPath() : mediaPath;
+	    return msc.isCreateSubDir() ? outputRoot.resolve(MediaSortUtils.OUTPUT_FOLDER_NAME) : outputRoot;
+	}
+
+	/** Merges the run's output directory into the library, see {@link #mergeInto}. */
+	private void handleOutputDirectoryStructure(Path outputDir) throws IOException {
+	    Path finalOutputDir = finalOutputDir();
+	    if (Files.notExists(outputDir))
+	        return;
+
+	    mergeInto(outputDir, finalOutputDir);
+	    dateCache.movedTree(outputDir, finalOutputDir);
+	    ledger.movedTree(outputDir, finalOutputDir);
+	}
+
+	/**
+	 * Moves a directory tree to another location, merging it into the folders that exist there.
+	 * Folders new to the target are moved as a whole. Files do not collide, as the
+	 * {@link DuplicateDetector} chose names that are free in both; one that does anyway, e.g.
+	 * because another program created it, is left behind with a warning.
+	 */
+	private static void mergeInto(Path from, Path to) throws IOException {
+	    if (Files.notExists(to, LinkOption.NOFOLLOW_LINKS)) {
+	        Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+	        return;
+	    }
+	    if (!Files.isDirectory(from, LinkOption.NOFOLLOW_LINKS) || !Files.isDirectory(to, LinkOption.NOFOLLOW_LINKS)) {
+	        log.warn("{} already exists, {} left in place", to, from);
+	        return;
+	    }
+
+	    List<Path> children;
+	    try (Stream<Path> stream = Files.list(from)) {
+	        children = stream.toList();
+	    }
+	    for (Path child : children)
+	        mergeInto(child, to.resolve(child.getFileName().toString()));
+
+	    try {
+	        Files.delete(from);
+	    } catch (DirectoryNotEmptyException e) {
+	        // holds files that could not be merged
+	    }
+	}
+
+	/**
+	 * Takes over what an interrupted run had done: the files it moved are entered in the ledger
+	 * and occupy their destinations, their sources are not walked again, and those
+	 * whose post-move work was not done are finished by this run.
+	 */
+	private void resumeFrom(MoveJournal.Recovery recovery) {
+	    List<MoveJournal.Entry> entries = recovery.reconcile();
+	    Set<Path> handled = new HashSet<>();
+	    List<MediaFile> unfinished = new ArrayList<>();
+
+	    for (MoveJournal.Entry e : entries) {
+	        MediaFile source = e.source();
+	        handled.add(source.path());
+	        if (e.isMoved()) {
+	            destinations.markTaken(e.placed());
+	            ledger.placed(e.placed(), source.subId());
+	        }
+	        if (!e.finished())
+	            unfinished.add(source.movedTo(e.placed(), source.subId()));
+	    }
+
+	    handledSources = handled;
+	    unfinishedFiles = unfinished;
+	    log.info("Resuming the interrupted run in {}: {} files already sorted, {} to finish",
+	             recovery.outputDir().getFileName(), entries.size(), unfinished.size());
+	}
+
+	/**
+	 * Sorts the media described by the command. Blocks until all work, including FFmpeg jobs,
+	 * has finished; interrupting the calling thread cancels the run.
+	 * 
+	 * <p>Moves are recorded in a {@link MoveJournal}. If an earlier run in the same output folder
+	 * was interrupted, it is resumed: its output directory is reused and only what it had not
+	 * done is done. With {@link MediaSortCmd#isRollBackUnfinished()} it is rolled back instead
+	 * and nothing is sorted. Every sorted file is listed in the run's {@link SortManifest}.
+	 * 
+	 * @return The path to the generated index file, or null if no eligible media
+	 *         files are found.
+	 * @throws IOException If an I/O error occurs while sorting.
+	 * @throws InterruptedException If the run was cancelled.
+	 */
+	public Path run() throws IOException, InterruptedException {
+	    long runStart = System.nanoTime();
+	    long runId = Instant.now().toEpochMilli();
+	    
+	    long phaseStart = System.nanoTime();
+	    parseCsvIfNeeded();
+	    dateCache = CreationDateCache.load(CreationDateCache.DEFAULT_CACHE_FILE, creationDateProviders);
+	    destinations = new DestinationCache(msc.getFolderGroup());
+	    metrics.phase("load", phaseStart);
+
+	    Path mediaPath = msc.getMediaPath();
+	    Path outputRoot = msc.getOutputPath() != null ? msc.getOutputPath() : mediaPath;
+	    ledger = SortLedger.load(outputRoot);
+
+	    MoveJournal.Recovery recovery = MoveJournal.findUnfinished(outputRoot);
+	    if (msc.isRollBackUnfinished()) {
+	        if (recovery == null) {
+	            log.info("No interrupted run to roll back in {}", outputRoot);
+	        } else {
+	            int restored = recovery.rollBack();
+	            log.info("Rolled back {} files of the interrupted run in {}", restored, recovery.outputDir().getFileName());
+	        }
+	        progress.updateProgress(1, 1);
+	        return null;
+	    }
+
+	    Path outputDir;
+	    if (recovery != null) {
+	        outputDir = outputRoot.resolve(recovery.outputDir().getFileName());
+	        resumeFrom(recovery);
+	        journal = MoveJournal.resume(recovery);
+	    } else {
+	        outputDir = setupOutputDirectory(outputRoot);
+	        journal = MoveJournal.create(outputDir);
+	    }
+	    manifest = SortManifest.create(mediaPath, runId);
+
+	    long hrsOffset = msc.getHrsOffset();
+	    boolean sepYearDir = msc.isSepYear();
+
+	    try {
+	        phaseStart = System.nanoTime();
+	        long numProcessed = runPipeline(walkQueue -> walkEligibleFiles(mediaPath, outputDir, walkQueue),
+	                                        outputDir, hrsOffset, sepYearDir);
+	        metrics.phase("pipeline", phaseStart);
+	        dateCache.prune(mediaPath, outputDir);
+	        if (numProcessed == 0 && recovery == null) {
+	            journal.delete();
+	            manifest.delete();
+	            dateCache.save();
+	            log.info(numSkipped.get() > 0 ? "No new media files found." : "No eligible media files found.");
+	            progress.updateProgress(1, 1);
+	            return null;
+	        }
+
+	        phaseStart = System.nanoTime();
+	        handleOutputDirectoryStructure(outputDir);
+	        ledger.save();
+	        journal.delete();
+	    } finally {
+	        journal.close();
+	        manifest.close();
+	    }
+	    log.info("Sort manifest written to {}", manifest.file().getFileName());
+
+	    Path resultsFile = writeResults(mediaPath, runId);
+	    resetResults();
+	    cleanEmptyDirectories(mediaPath);
+
+	    dateCache.logStats();
+	    dateCache.save();
+	    metrics.phase("finish", phaseStart);
+	    metrics.phase("total", runStart);
+	    
+	    writeRunReport(mediaPath, runId);
+
+	    progress.updateProgress(numMoved.get(), numMoved.get());
+	    log.info("ALL DONE! :-)");
+
+	    return resultsFile;
+	}	
+
+
+	/**
+	 * Sorts media as it arrives in the media folder, until the calling thread is interrupted.
+	 * 
+	 * <p>A {@link FolderWatcher} reports files once they have stopped growing, and each batch goes
+	 * through the same date, match and move pipeline as a full run. Files are sorted straight into
+	 * the final output folder, {@code ebird} or the output folder itself, so that folder must not
+	 * be the media folder. Caches, the checklists and the ledger stay in memory between batches,
+	 * and the checklist index is rewritten after every batch. A newly downloaded eBird CSV is
+	 * loaded before the next batch. All batches are listed in one {@link SortManifest}.
+	 * 
+	 * <p>Every batch is journaled; if a watch was stopped in the middle of a batch, the batch is
+	 * finished when watching starts again. Empty folders left in the media folder are removed when
+	 * watching stops, as a card may still be copied into them while watching.
+	 * 
+	 * @throws IOException If an I/O error occurs while sorting.
+	 * @throws InterruptedException When watching is stopped.
+	 * @throws IllegalArgumentException If the output would be the media folder itself.
+	 */
+	public void watch() throws IOException, InterruptedException {
+	    long runStart = System.nanoTime();
+	    long runId = Instant.now().toEpochMilli();
+
+	    Path mediaPath = msc.getMediaPath();
+	    Path outputRoot = msc.getOutputPath() != null ? msc.getOutputPath() : mediaPath;
+	    Path outputDir = finalOutputDir();
+	    if (outputDir.toAbsolutePath().normalize().equals(mediaPath.toAbsolutePath().normalize()))
+	        throw new IllegalArgumentException("Watching needs an output folder other than the media folder");
+
+	    long phaseStart = System.nanoTime();
+	    parseCsvIfNeeded();
+	    dateCache = CreationDateCache.load(CreationDateCache.DEFAULT_CACHE_FILE, creationDateProviders);
+	    destinations = new DestinationCache(msc.getFolderGroup());
+	    ledger = SortLedger.load(outputRoot);
+	    Files.createDirectories(outputDir);
+	    metrics.phase("load", phaseStart);
+
+	    manifest = SortManifest.create(mediaPath, runId);
+	    try {
+	        MoveJournal.Recovery recovery = MoveJournal.findUnfinishedIn(outputDir);
+	        if (recovery != null) {
+	            resumeFrom(recovery);
+	            journal = MoveJournal.resume(recovery);
+	            sortBatch(List.of(), outputDir, mediaPath, runId);
+	        }
+
+	        Duration settle = Duration.ofSeconds(msc.getWatchSettleSeconds());
+	        try (FolderWatcher watcher = new FolderWatcher(mediaPath, outputDir, msc.getCsvFile(), settle, msc.isDiskOrder())) {
+	            log.info("Watching {} for new media, sorting into {}", mediaPath, outputDir);
+	            while (true) {
+	                FolderWatcher.Batch batch = watcher.next(WATCH_BATCH_SIZE);
+	                if (batch.csvFile() != null)
+	                    reloadChecklists(batch.csvFile());
+
+	                List<MediaFile> files = batch.files().stream().filter(f -> !isHandledSource(f.path()) && !ledger.contains(f.path())).toList();
+	                if (!files.isEmpty())
+	                    sortBatch(files, outputDir, mediaPath, runId);
+	            }
+	        }
+	    } finally {
+	        log.info("Stopped watching {}", mediaPath);
+	        manifest.close();
+	        resetResults();
+	        cleanEmptyDirectories(mediaPath);
+	        dateCache.logStats();
+	        metrics.phase("total", runStart);
+	        writeRunReport(mediaPath, runId);
+	    }
+	}
+
+	/**
+	 * Sorts one batch of watched files into {@code outputDir} and rewrites the checklist index.
+	 * Continues the journal of a resumed batch, otherwise starts a new one.
+	 */
+	private void sortBatch(List<MediaFile> files, Path outputDir, Path mediaPath, long runId) throws IOException, InterruptedException {
+	    long phaseStart = System.nanoTime();
+	    long movedBefore = numMoved.get();
+	    if (journal == null)
+	        journal = MoveJournal.create(outputDir);
+
+	    try {
+	        runPipeline(walkQueue -> feedBatch(files, walkQueue), outputDir, msc.getHrsOffset(), msc.isSepYear());
+	        journal.delete();
+	    } finally {
+	        journal.close();
+	        journal = null;
+	        unfinishedFiles = List.of();
+	    }
+	    metrics.phase("pipeline", phaseStart);
+
+	    ledger.save();
+	    Path index = writeResults(mediaPath, runId);
+	    dateCache.save();
+	    log.info("Sorted {} new files, {} since watching started{}", numMoved.get() - movedBefore, numMoved.get(),
+	             index != null ? "; index updated in " + index.getFileName() : "");
+	}
+}
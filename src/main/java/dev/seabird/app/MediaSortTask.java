@@ -1,611 +1,43 @@
 package dev.seabird.app;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.SequencedMap;
-import java.util.SequencedSet;
-import java.util.TreeSet;
-import java.util.stream.Gatherers;
-import java.util.stream.Stream;
 
-import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
-import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
-import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
-import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
-import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
-import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
-import org.apache.commons.lang3.StringUtils;
-
-import com.google.common.collect.Range;
-import com.google.common.collect.RangeMap;
-import com.google.common.collect.TreeRangeMap;
-
-import de.siegmar.fastcsv.writer.CsvWriter;
-import fun.seabird.EbirdCsvParser;
-import fun.seabird.EbirdCsvParser.PreSort;
-import fun.seabird.EbirdCsvRow;
 import javafx.concurrent.Task;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
 
 /**
- * Background task responsible for sorting and organizing media files (photos and videos).
- * 
- * <p>This task performs the following operations:
- * <ul>
- *   <li>Analyzes media files and determines creation dates using multiple strategies (EXIF, filename, file modified time)</li>
- *   <li>Organizes files into folders using eBird CSV data based on date and/or eBird checklist location</li>
- *   <li>Optionally transcodes videos, extracts audio, and corrects EXIF timestamps</li>
- *   <li>Generates a checklist index CSV with statistics</li>
- * </ul>
- * 
- * <p>Runs off the JavaFX Application Thread and supports progress reporting.
+ * Background task that runs a {@link MediaSortEngine} off the JavaFX Application Thread and
+ * publishes its progress through {@link #progressProperty()}.
  */
-@Slf4j
-@RequiredArgsConstructor
 public class MediaSortTask extends Task<Path> {
-		
-	private static final DateTimeFormatter imageDtf = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
-	private static final DateTimeFormatter folderDtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");	
 
-	private static final int LOGGING_WINDOW_SIZE = 1000;
-	private static final long MAX_ML_UPLOAD_SIZE_VIDEO = 1000l;
-	private static final String TRANSCODED_VIDEO_SUFFIX = "_s";
-
-	private static final String[] invalidChars = new String[] { " ", ":", ",", ".", "/", "\\", ">", "<" };
-	private static final String[] validChars = new String[] { "-", "--", "-", "-", "-", "-", "-", "-" };
-
-	private static final List<CreationDateProvider> creationDateProviders = List.of(new FileNameCreationDateProvider(),new ExifCreationDateProvider(),new FileModifiedCreationDateProvider());	
-	
-	//eBird CSV fields
-	private static final RangeMap<LocalDateTime, String> rangeMap = TreeRangeMap.create();
-	private static final SequencedMap<String, SubStats> checklistStatsMap = new LinkedHashMap<>();
-	private static final SequencedSet<String> subIds = new TreeSet<>();
-	
-	private record FileInfo(String name, String base, String ext) {
-	    FileInfo(Path file) {
-	        this(file.getFileName().toString(),
-	             MediaSortUtils.getBaseName(file.getFileName().toString()),
-	             MediaSortUtils.getFileExtension(file.getFileName().toString()).toLowerCase());
-	    }
-	}
-	
-	private final MediaSortCmd msc;	
-	
-	private transient Process process;	
-	public Process currentProcess()
-	{
-		return process;
-	}
+	private final MediaSortEngine engine;
 
 	/**
-	 * Parses a CSV record and updates the checklist statistics map and range map
-	 * with relevant information.
-	 * 
-	 * @param row The CSV record to be parsed.
+	 * @param msc the sort configuration
 	 */
-	private void parseCsvLine(EbirdCsvRow row) 
-	{
-		int duration = row.getDuration();
-		if (duration <= 0 || row.getTime() == null)
-			return;
-
-		String subId = row.getSubId();
-		checklistStatsMap.computeIfAbsent(subId, _ ->
-		{
-			var subBeginTime = row.dateTime();
-			var subEndTime = subBeginTime.plusMinutes(duration);
-
-			rangeMap.put(Range.closed(subBeginTime, subEndTime), subId);
-			return new SubStats(subBeginTime,row.getSubnat1Code(),row.getSubnat2Name(),row.getLocName());
-		});
-
-		var assetIds = row.getAssetIds();
-		if (!assetIds.isEmpty())
-			checklistStatsMap.get(subId).incNumAssetsUploaded(assetIds.size());			
+	public MediaSortTask(MediaSortCmd msc) {
+		this.engine = new MediaSortEngine(msc, this::updateProgress);
 	}
-	
-	private static boolean changeDateTimeOrig(Path imageFile, String newDateTime) throws IOException {
-		byte[] originalImageBytes = Files.readAllBytes(imageFile);
-
-		JpegImageMetadata jpegMetadata = MediaSortUtils.jpegImageMetadata(originalImageBytes);
-		if (jpegMetadata == null)
-			return false;
-
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			TiffImageMetadata exif = jpegMetadata.getExif();
-			TiffOutputSet outputSet = exif != null ? exif.getOutputSet() : new TiffOutputSet();
-			TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
-
-			exifDirectory.removeField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
-			exifDirectory.add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, newDateTime);
-
-			new ExifRewriter().updateExifMetadataLossless(originalImageBytes, baos, outputSet);
-
-			try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(imageFile))) {
-				os.write(baos.toByteArray());
-			}
 
-		return true;
+	/** @see MediaSortEngine#destroyRunningProcesses() */
+	public void destroyRunningProcesses() {
+		engine.destroyRunningProcesses();
 	}
 
-	private static boolean isEligibleMediaFile(Path file) {
-		if (Files.isDirectory(file) || Files.isSymbolicLink(file))
-			return false;
-
-		return MediaSortUtils.mediaExtensions.contains(MediaSortUtils.getFileExtension(file).toLowerCase());
+	/** @see MediaSortEngine#hasRunningProcesses() */
+	public boolean hasRunningProcesses() {
+		return engine.hasRunningProcesses();
 	}
 
 	/**
-	 * Moves a file from the source path to the destination path, optionally using a symbolic link.
-	 * <p>
-	 * If the destination file already exists, the operation is aborted, an error is logged, and the
-	 * source path is returned unchanged. Depending on the configuration in {@code msc}, this method
-	 * either creates a symbolic link at the destination pointing to the source, or physically moves
-	 * the file from the source to the destination.
-	 * </p>
+	 * Runs the engine.
 	 *
-	 * @param from the source path of the file to move
-	 * @param to the destination path where the file should be moved or linked
-	 * @return the path of the file after the operation: {@code from} if the move fails due to an
-	 *         existing destination, or {@code to} if the move or link creation succeeds
-	 * @throws IOException if an I/O error occurs during the move or symbolic link creation
-	 */
-	private Path moveFile(Path from, Path to) throws IOException 
-	{
-		if (Files.exists(to)) 
-		{			
-			if (Files.size(from) != Files.size(to))
-			{
-				log.warn(to.getFileName() + " exists and likely differs. Source file unchanged.");
-				return from;
-			}
-			
-			Files.delete(from);
-			return to;
-		}
-		
-		if (msc.isUseSymbolicLinks())
-			return Files.createSymbolicLink(to, from);
-		
-		return Files.move(from, to);
-	}	
-	
-	/**
-	 * Gracefully shuts down the current FFmpeg {@link Process} if it is running.
-	 * 
-	 * <p>Sends a quit command to FFmpeg, then forcefully terminates the process
-	 * tree using {@link ProcessHandle} as a fallback.
-	 */
-	public void destroyCurrentProcess() {
-	    if (process == null || !process.isAlive()) {
-	        return;
-	    }
-
-	    ProcessHandle handle = process.toHandle();
-
-	    // Try graceful quit first (ffmpeg understands 'q')
-	    try {
-	        OutputStream os = process.getOutputStream();
-	        os.write("q\n".getBytes(StandardCharsets.UTF_8));
-	        os.flush();
-	        Thread.sleep(400);
-	    } catch (Exception ignored) {}
-
-	    // Kill all child processes + main process
-	    handle.descendants().forEach(ph -> ph.destroyForcibly());
-	    handle.destroyForcibly();
-	}
-
-	/**
-	 * Executes an FFmpeg command and waits for its completion.
-	 * 
-	 * <p>This method starts the FFmpeg process using the provided command,
-	 * captures its combined output (stdout + stderr), and waits for it to finish.
-	 * It logs warnings for non-zero exit codes and errors for execution failures.
-	 * The {@code process} field is updated with the newly started process.</p>
-	 * 
-	 * @param command   the FFmpeg command and its arguments as a string array
-	 * @param operation a descriptive name of the operation (used in log messages)
-	 * @return {@code true} if the process completed successfully (exit code 0),
-	 *         {@code false} otherwise (failure, interruption, or IOException)
-	 * 
-	 * @throws nothing explicitly (all exceptions are caught and logged)
-	 */
-	private boolean runFfmpeg(String[] command, String operation) {
-	    try {
-	        ProcessBuilder pb = new ProcessBuilder(command);
-	        pb.redirectErrorStream(true);
-	        pb.redirectOutput(ProcessBuilder.Redirect.PIPE);
-
-	        process = pb.start();
-
-	        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-	        int exitCode = process.waitFor();
-
-	        if (exitCode != 0) {
-	            log.warn("FFmpeg {} failed with exit code {}\nOutput: {}",
-	                     operation, exitCode, output.trim());
-	            return false;
-	        }
-
-	        return true;
-
-	    } catch (InterruptedException e) {
-	        Thread.currentThread().interrupt();
-	        log.info("FFmpeg {} interrupted", operation);
-	        return false;
-	    } catch (IOException e) {
-	        log.error("Failed to execute FFmpeg {}", operation, e);
-	        return false;
-	    } 
-	}
-		
-	/**
-	 * @param file
-	 * @param hrsOffset
-	 * @return a LocalDateTime for the media file, never null
-	 * @throws IOException
-	 */
-	private static LocalDateTime findCreationDt(Path file,long hrsOffset) throws IOException
-	{
-		LocalDateTime mediaTime = null;
-		for (CreationDateProvider cdp : creationDateProviders) {
-			mediaTime = cdp.findCreationDate(file, hrsOffset);
-			if (mediaTime != null)
-				break;
-		}
-		
-		return mediaTime;
-	}
-	
-	/**
-	 * Calculates the destination directory path based on output directory, submission ID, media timestamp, and folder grouping strategy.
-	 * 
-	 * @param outputDir   the base output directory where the calculated path will be resolved, must not be {@code null}
-	 * @param subId       the submission ID, may be {@code null}; if {@code null}, the path excludes submission-specific details
-	 * @param mediaTime   the timestamp of the media, used to generate a date string, must not be {@code null}
-	 * @param folderGroup the grouping strategy for organizing folders (e.g., by location or date), must not be {@code null}
-	 * @return the resolved {@link Path} representing the destination directory
-	 */
-	private static Path calcDestDir(Path outputDir, String subId, LocalDateTime mediaTime, FolderGroup folderGroup) {
-	    
-		String mediaDateStr = mediaTime.format(folderDtf);
-	    
-	    if (subId == null)
-	        return outputDir.resolve(mediaDateStr);
-
-	    SubStats ss = checklistStatsMap.get(subId);
-	    String locNameAbbrev = StringUtils.abbreviate(ss.getLocName(), "", 40);
-	    locNameAbbrev = StringUtils.replaceEach(locNameAbbrev, invalidChars, validChars);
-
-	    Path destDir = switch (folderGroup) {
-	        case location -> outputDir
-	                .resolve(ss.getSubnational1Code())
-	                .resolve(ss.getCounty() != null ? ss.getCounty() : "")
-	                .resolve(locNameAbbrev)
-	                .resolve(mediaDateStr + "_" + subId);
-	        case date -> outputDir
-	                .resolve(mediaDateStr)
-	                .resolve(ss.getSubnational1Code() + "_" + ss.getCounty() + "_" + locNameAbbrev + "_" + subId);
-	        default -> outputDir.resolve(mediaDateStr + "_" + subId);
-	    };
-
-	    subIds.add(subId);
-	    ss.incNumAssetsLocal();
-
-	    return destDir;
-	}
-
-	/**
-	 * Checks the metadata of a file and moves it to the appropriate directory based on the metadata information.
-	 *
-	 * @param file         The file to check and move.
-	 * @param outputDir    The output directory containing the folder(s) where the file will be moved.
-	 * @param hrsOffset    The hour offset for adjusting creation date.
-	 * @param sepYearDir   Flag indicating whether to separate files into year directories.
-	 * @param folderGroup  The folder grouping mode.
-	 * @throws IOException If an I/O error occurs while performing the operation.
-	 */
-	private Path checkMetadataAndMove(Path file, Path outputDir, long hrsOffset,boolean sepYearDir,FolderGroup folderGroup) throws IOException {
-		
-		final LocalDateTime mediaTime = findCreationDt(file,hrsOffset);
-
-		Path grandParentDir = outputDir;
-		if (sepYearDir)
-			grandParentDir = grandParentDir.resolve(Path.of(String.valueOf(mediaTime.getYear())));
-
-		String subId = rangeMap.get(mediaTime);
-		
-		Path destDir = calcDestDir(grandParentDir, subId, mediaTime, folderGroup);
-
-		Files.createDirectories(destDir);
-
-		String fileName = file.getFileName().toString();
-		Path destFile = destDir.resolve(fileName);
-		
-		return moveFile(file, destFile);
-	}
-	
-	/**
-	 * Recursively deletes empty directories starting from the given directory,
-	 * including the directory itself if empty after cleaning subdirectories.
-	 * Uses depth-first post-order traversal to ensure subdirectories are processed first.
-	 *
-	 * @param rootDir the starting directory to clean
-	 * @throws IOException if an I/O error occurs
-	 */
-	private static void cleanEmptyDirectories(Path rootDir) throws IOException {
-	    Files.walkFileTree(rootDir, new SimpleFileVisitor<Path>() {
-	        @Override
-	        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-	            if (exc == null) {
-	                try (Stream<Path> stream = Files.list(dir)) {
-	                    if (stream.findAny().isEmpty()) {
-	                        Files.delete(dir);	                       
-	                    }
-	                }
-	            }
-	            return FileVisitResult.CONTINUE;
-	        }
-	    });
-	}
-	
-	private Path shouldConvertVideo(Path file, FileInfo info) throws IOException {
-	    if (!msc.isTranscodeVideos() || info.name().endsWith(TRANSCODED_VIDEO_SUFFIX) ||
-	        !MediaSortUtils.videoExtensions.contains(info.ext())) {
-	        return null;
-	    }
-	    Path output = file.getParent().resolve(info.base() + TRANSCODED_VIDEO_SUFFIX + ".mp4");
-	    if (Files.exists(output)) return null;
-	    long sizeMB = Files.size(file) / (1024 * 1024);
-	    boolean isMovOrAvi = info.ext().equals("avi") || info.ext().equals("mov");
-	    boolean tooLarge = sizeMB > MAX_ML_UPLOAD_SIZE_VIDEO;
-	    return (isMovOrAvi || tooLarge) ? output : null;
-	}
-
-	private Path shouldExtractAudio(Path file, FileInfo info) {
-	    if (!msc.isExtractAudio() || !MediaSortUtils.videoExtensions.contains(info.ext())) {
-	        return null;
-	    }
-	    Path output = file.getParent().resolve(info.base() + ".mp3");
-	    return Files.exists(output) ? null : output;
-	}
-	
-	private void handleVideoTranscoding(Path file, FileInfo info) throws IOException {
-	    Path converted = shouldConvertVideo(file, info);
-	    if (converted == null) return;
-
-	    log.info("{} transcoding to MP4 with ffmpeg...", info.name());
-
-	    String[] cmd = {
-	        "ffmpeg", "-threads", "1", "-i", file.toString(),
-	        "-map_metadata", "0",
-	        "-c:v", "libx264",
-	        "-threads", "2",
-	        "-crf", "22",
-	        "-preset", "medium",
-	        "-c:a", "copy",
-	        converted.toString()
-	    };
-
-	    if (runFfmpeg(cmd, "video transcoding")) {
-	        log.info("Saved converted video to {}", converted.getFileName());
-	    }
-	}
-
-	private void handleAudioExtraction(Path file, FileInfo info) {
-	    Path extracted = shouldExtractAudio(file, info);
-	    if (extracted == null) return;
-
-	    log.info("Extracting audio from {} to MP3 with ffmpeg...", info.name());
-
-	    String[] cmd = {
-	        "ffmpeg", "-i", file.toString(),
-	        "-vn", "-c:a", "mp3", "-b:a", "192k",
-	        "-map_metadata", "0",
-	        extracted.toString()
-	    };
-
-	    if (runFfmpeg(cmd, "audio extraction")) {
-	        log.info("Saved extracted audio to {}", extracted.getFileName());
-	    }
-	}
-
-	private void handleExifDateCorrection(Path file, FileInfo info) throws IOException {
-	    if (msc.getHrsOffset() == 0L) return;
-	    if (!isJpeg(info)) return;
-
-	    String newDt = findCreationDt(file, msc.getHrsOffset()).format(imageDtf);
-
-	    if (changeDateTimeOrig(file, newDt)) {
-	        log.info("Changed EXIF date of {} to {}", file.getFileName(), newDt);
-	    }
-	}
-
-	private static boolean isJpeg(FileInfo info) {
-	    String ext = info.ext().toLowerCase();
-	    return "jpg".equals(ext) || "jpeg".equals(ext);
-	}
-
-	private void afterMove(Path file) throws IOException {
-	    FileInfo info = new FileInfo(file);
-
-	    handleVideoTranscoding(file, info);
-	    handleAudioExtraction(file, info);
-	    handleExifDateCorrection(file, info);
-	}
-	
-	@SuppressWarnings("resource")
-	private static Path writeResults(Path mediaPath) {
-	    if (subIds.isEmpty()) return null;
-	    
-	    Path file = mediaPath.resolve("checklistIndex_" + Instant.now().toEpochMilli() + ".csv");
-	    
-	    try (var w = CsvWriter.builder().build(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE)) {
-	        w.writeRecord("Checklist Link", "Date", "State", "County", "Num Uploaded Assets", "Num Local Assets");
-	        
-	        for (String id : subIds) {
-	            var s = checklistStatsMap.get(id);
-	            w.writeRecord(
-	                "https://ebird.org/checklist/" + id + "/media",
-	                s.getDate(), s.getSubnational1Code(), s.getCounty(),
-	                Integer.toString(s.getNumAssetsUploaded()),
-	                Integer.toString(s.getNumAssetsLocal())
-	            );
-	        }
-	    } catch (IOException e) {
-	        log.error("Error writing CSV!", e);
-	    }
-	    
-	    //So we don't double the counts on a second run
-	    checklistStatsMap.values().forEach(SubStats::reset);	 
-	    subIds.clear();
-	    
-	    return file;
-	}
-	
-	private void parseCsvIfNeeded() throws IOException {
-	    if (msc.getCsvFile() != null && msc.isReParseCsv()) {
-	        rangeMap.clear();
-	        EbirdCsvParser.parseCsv(msc.getCsvFile(), this::parseCsvLine, PreSort.NONE);
-	        msc.setReParseCsv(false);
-	    }
-	}
-
-	private static Path setupOutputDirectory(Path mediaPath) {
-	    String outputDirName = MediaSortUtils.OUTPUT_FOLDER_NAME + "_" + Instant.now().toEpochMilli();
-	    return mediaPath.resolve(outputDirName);
-	}
-
-	private static List<Path> collectEligibleFiles(Path mediaPath) throws IOException {
-	    log.info("Analyzing files...");
-	    List<Path> eligibleFiles = new ArrayList<>();
-
-	    try (Stream<Path> stream = Files.walk(mediaPath)) {
-	        stream.filter(MediaSortTask::isEligibleMediaFile)
-	              .sorted(Comparator.comparing(Path::getFileName))
-	              .gather(Gatherers.windowFixed(LOGGING_WINDOW_SIZE))
-	              .peek(window -> log.info("Added files to processing queue ({} total)...", 
-	                                       eligibleFiles.size() + window.size()))
-	              .forEach(eligibleFiles::addAll);
-	    }
-	    return eligibleFiles;
-	}
-
-	private List<Path> processFiles(List<Path> eligibleFiles, Path outputDir, 
-	                                long hrsOffset, boolean sepYearDir) throws IOException {
-	    int numFiles = eligibleFiles.size();
-	    log.info("Processing {} files in {} and subdirectories...", numFiles, msc.getMediaPath()); // note: mediaPath needs to be in scope or passed
-
-	    List<Path> movedFiles = new ArrayList<>(numFiles);
-	    int j = 1;
-
-	    for (Path f : eligibleFiles) {
-	        Path movedFile = checkMetadataAndMove(f, outputDir, hrsOffset, sepYearDir, msc.getFolderGroup());
-	        movedFiles.add(movedFile);
-
-	        final double progPer = j++ / ((double) numFiles);
-	        updateProgress(progPer, 1.0);
-	    }
-	    return movedFiles;
-	}
-
-	private void finalizeProcessing(List<Path> movedFiles, long hrsOffset) throws IOException {
-	    if (hrsOffset != 0L) {
-	        log.info("Adjusting EXIF data (may take a while)...");
-	    } else {
-	        log.info("Finishing up...");
-	    }
-
-	    for (Path f : movedFiles) {
-	        afterMove(f);
-	    }
-	}
-
-	private void handleOutputDirectoryStructure(Path mediaPath, Path outputDir) throws IOException {
-	    if (msc.isCreateSubDir()) {
-	        Path finalOutputDir = mediaPath.resolve(MediaSortUtils.OUTPUT_FOLDER_NAME);
-	        if (Files.exists(finalOutputDir)) {
-	            log.error("Directory {} already exists! Check {} for results.", finalOutputDir, outputDir);
-	        } else {
-	            Files.move(outputDir, finalOutputDir, StandardCopyOption.ATOMIC_MOVE);
-	        }
-	    } else {
-	        moveContentsAndDelete(outputDir, mediaPath);
-	    }
-	}
-
-	private static void moveContentsAndDelete(Path outputDir, Path mediaPath) throws IOException {
-	    List<Path> dirToMove = new ArrayList<>();
-	    try (Stream<Path> stream = Files.walk(outputDir, 1)) {
-	        stream.filter(path -> !path.equals(outputDir))
-	              .forEach(dirToMove::add);
-	    }
-
-	    for (Path directory : dirToMove) {
-	        if (!Files.exists(directory)) continue;
-	        Path newPath = mediaPath.resolve(outputDir.relativize(directory));
-	        Files.move(directory, newPath, StandardCopyOption.ATOMIC_MOVE);
-	    }
-
-	    Files.delete(outputDir);
-	}
-
-	/**
-	 * Executes the main logic of the media processing task. This method is called
-	 * when the task is executed.
-	 * 
 	 * @return The path to the generated index file, or null if no eligible media
 	 *         files are found.
 	 * @throws Exception If an error occurs during the execution of the task.
 	 */
 	@Override
 	protected Path call() throws Exception {
-	    parseCsvIfNeeded();
-
-	    Path mediaPath = msc.getMediaPath();
-	    Path outputDir = setupOutputDirectory(mediaPath);
-
-	    long hrsOffset = msc.getHrsOffset();
-	    boolean sepYearDir = msc.isSepYear();
-
-	    List<Path> eligibleFiles = collectEligibleFiles(mediaPath);
-	    if (eligibleFiles.isEmpty()) {
-	        log.info("No eligible media files found.");
-	        updateProgress(1.0, 1.0);
-	        return null;
-	    }
-
-	    List<Path> movedFiles = processFiles(eligibleFiles, outputDir, hrsOffset, sepYearDir);
-
-	    finalizeProcessing(movedFiles, hrsOffset);
-
-	    handleOutputDirectoryStructure(mediaPath, outputDir);
-
-	    Path resultsFile = writeResults(mediaPath);
-	    cleanEmptyDirectories(mediaPath);
-
-	    updateProgress(1.0, 1.0);
-	    log.info("ALL DONE! :-)");
-
-	    return resultsFile;
-	}	
-
-}
\ No newline at end of file
+		return engine.run();
+	}
+}
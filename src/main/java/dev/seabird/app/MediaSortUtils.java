@@ -2,7 +2,10 @@ package dev.seabird.app;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -24,11 +27,16 @@ public final class MediaSortUtils
 	
 	public static final String OUTPUT_FOLDER_NAME = "ebird";
 	
+	/** Per-user directory holding caches and other state that survives between runs. */
+	public static final Path APP_DATA_DIR = Path.of(System.getProperty("user.home"), ".ebird-media-sorter");
+	
 	public static final Set<String> audioExtensions = Set.of("wav", "mp3", "m4a");
 	public static final Set<String> videoExtensions = Set.of("mov", "m4v", "mp4", "avi");
 	public static final Set<String> imageExtensions = Set.of("jpg", "jpeg", "png", "crx", "crw", "cr2", "cr3", "crm", "arw", "nef", "orf", "raf");
 	public static final Set<String> mediaExtensions = Stream.of(imageExtensions,audioExtensions,videoExtensions).flatMap(Set::stream).map(String::toLowerCase).collect(Collectors.toUnmodifiableSet());
 	
+	private static final Pattern INODE_IN_FILE_KEY = Pattern.compile("ino=(\\d+)");
+	
 	/**
 	 * Returns the filename without its extension.
 	 * 
@@ -61,6 +69,21 @@ public final class MediaSortUtils
 	    return getFileExtension(file.getFileName().toString());
 	}
 	
+	/**
+	 * Returns the inode number of a file from attributes already read, without another system
+	 * call. The JDK exposes it only in the text of the file key, e.g. {@code (dev=803,ino=1234)}
+	 * on Linux and macOS.
+	 * 
+	 * @param attrs the file's attributes
+	 * @return the inode number, or 0 if the file system does not report one
+	 */
+	public static long inodeOf(BasicFileAttributes attrs) {
+	    Object key = attrs.fileKey();
+	    if (key == null) return 0;
+	    Matcher m = INODE_IN_FILE_KEY.matcher(key.toString());
+	    return m.find() ? Long.parseLong(m.group(1)) : 0;
+	}
+	
 	/**
 	 * Extracts JPEG image metadata from raw bytes.
 	 * 
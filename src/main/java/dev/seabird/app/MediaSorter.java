@@ -5,18 +5,22 @@ import javafx.application.Application;
 /**
  * Main entry point for the Media Sorter application.
  * 
- * <p>This class contains only the {@code main} method that launches
- * the JavaFX application.
+ * <p>Without arguments this launches the JavaFX application; with arguments
+ * it sorts headless through {@link MediaSorterCli}, without starting JavaFX.
  */
 public abstract class MediaSorter 
 {
 	/**
-     * Launches the JavaFX MediaSorterApplication.
+     * Launches the JavaFX MediaSorterApplication, or the command line runner
+     * if any arguments are given.
      * 
      * @param args command line arguments passed to the application
      */
 	public static void main(String[] args)
 	{
-		Application.launch(MediaSorterApplication.class, args);			
+		if (args.length > 0)
+			MediaSorterCli.main(args);
+		else
+			Application.launch(MediaSorterApplication.class, args);			
 	} 
-}
\ No newline at end of file
+}
@@ -54,8 +54,8 @@ import javafx.stage.Stage;
  * clicking it opens the generated index file using the platform's default
  * application via {@link Desktop#open(File)}.
  *
- * <p>A JVM shutdown hook is registered to cleanly terminate any ffmpeg
- * process spawned by the {@link MediaSortTask} if the application is closed
+ * <p>A JVM shutdown hook is registered to cleanly terminate all ffmpeg
+ * processes spawned by the {@link MediaSortTask} if the application is closed
  * while sorting is in progress.
  */
 public class MediaSorterApplication extends Application
@@ -99,10 +99,9 @@ public class MediaSorterApplication extends Application
      *       made visible.</li>
      * </ul>
      *
-     * <p>A JVM shutdown hook is registered to {@link Process#waitFor() wait}
-     * for and then {@link Process#destroy() destroy} any external process
-     * associated with the task, preventing orphaned child processes when the
-     * application exits mid-sort.
+     * <p>A JVM shutdown hook is registered to {@link Process#destroy() destroy}
+     * every external process associated with the task, preventing orphaned
+     * child processes when the application exits mid-sort.
      *
      * @param runBut the button that triggers the sort; disabled for the
      *               duration of the task and re-enabled on completion
@@ -147,8 +146,8 @@ public class MediaSorterApplication extends Application
         });    
         
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            if (task.currentProcess() != null) {
-                task.destroyCurrentProcess();
+            if (task.hasRunningProcesses()) {
+                task.destroyRunningProcesses();
             }
         }));
     }
@@ -206,6 +205,7 @@ public class MediaSorterApplication extends Application
 
         OUTPUT_LOG.setWrapText(true);
         OUTPUT_LOG.setEditable(false);
+        TextAreaAppender.attach(OUTPUT_LOG);
         ScrollPane scroll = new ScrollPane(OUTPUT_LOG);
         scroll.setVisible(false);
 
@@ -349,7 +349,7 @@ public class MediaSorterApplication extends Application
     @Override
     public void stop() throws Exception {
         if (task != null) {
-            task.destroyCurrentProcess();
+            task.destroyRunningProcesses();
         }
         super.stop();
     }
@@ -0,0 +1,255 @@
+package dev.seabird.app;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Headless entry point that runs a {@link MediaSortEngine} without starting JavaFX.
+ *
+ * <p>Arguments fill a {@link MediaSortCmd}; log messages go to the console through the Logback
+ * configuration and, when attached to a terminal, a progress counter is written to stderr.
+ *
+ * <p>Invalid arguments print the list of options ({@link #USAGE}).
+ *
+ * <p>Exits with 0 on success, 1 if sorting failed and 2 on invalid arguments.
+ */
+@Slf4j
+public final class MediaSorterCli
+{
+	private static final int EXIT_FAILURE = 1;
+	private static final int EXIT_USAGE = 2;
+	private static final int PROGRESS_INTERVAL = 50;
+	private static final int WATCH_STOP_SECONDS = 10;
+
+	private static final String USAGE = """
+			Usage: MediaSorter [options] <media folder>
+			  --csv <file>            eBird CSV export (MyEBirdData.csv)
+			  --output <folder>       sort into this folder instead of the media folder
+			  --copy-threads <n>      files copied at once when the output is on
+			                          another drive
+			  --verify                checksum copies before deleting their source
+			  --roll-back             undo an interrupted run instead of sorting
+			  --watch                 keep running and sort new media as it arrives
+			  --settle <seconds>      wait until watched files are unchanged this long
+			  --offset <hours>        shift EXIF times by this many hours
+			  --sep-year              separate output by year
+			  --location              group by location instead of date
+			  --no-subdir             sort in place instead of into an "ebird" sub-folder
+			  --symlinks              create symbolic links instead of moving files
+			  --link-duplicates       keep the names of duplicates as hard links
+			  --transcode             transcode large or MOV/AVI videos to MP4
+			  --extract-audio         extract MP3 audio from videos
+			  --date-threads <n>      threads resolving creation dates
+			  --disk-order            read dates in on-disk order, for spinning disks
+			  --name-pattern <pattern>
+			                          also read times from file names like this,
+			                          e.g. IMG_yyyyMMdd_HHmmss (repeatable)
+			  --csv-threads <n>       threads parsing a large eBird CSV (default 1)
+			  --ffmpeg-cpus <n>       cores shared by FFmpeg jobs
+			""";
+
+	private MediaSorterCli() {}
+
+	/**
+	 * Parses the arguments, sorts and exits the JVM with the resulting status.
+	 *
+	 * @param args command line arguments
+	 */
+	public static void main(String[] args)
+	{
+		MediaSortCmd msc;
+		try
+		{
+			msc = parseArgs(args);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.print(USAGE);
+			System.exit(EXIT_USAGE);
+			return;
+		}
+
+		System.exit(run(msc));
+	}
+
+	/**
+	 * Builds a sort command from command line arguments.
+	 *
+	 * @param args command line arguments
+	 * @return the command
+	 * @throws IllegalArgumentException if the arguments are invalid
+	 */
+	static MediaSortCmd parseArgs(String[] args)
+	{
+		MediaSortCmd msc = new MediaSortCmd();
+		List<String> namePatterns = new ArrayList<>();
+
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			switch (arg)
+			{
+				case "--csv" -> {
+					msc.setCsvFile(Path.of(value(args, ++i, arg)));
+					msc.setReParseCsv(true);
+				}
+				case "--output" -> msc.setOutputPath(Path.of(value(args, ++i, arg)));
+				case "--copy-threads" -> msc.setTransferThreads(positive(intValue(args, ++i, arg), arg));
+				case "--verify" -> msc.setVerifyTransfers(true);
+				case "--roll-back" -> msc.setRollBackUnfinished(true);
+				case "--watch" -> msc.setWatch(true);
+				case "--settle" -> msc.setWatchSettleSeconds(positive(intValue(args, ++i, arg), arg));
+				case "--offset" -> msc.setHrsOffset(intValue(args, ++i, arg));
+				case "--sep-year" -> msc.setSepYear(true);
+				case "--location" -> msc.setFolderGroup(FolderGroup.location);
+				case "--no-subdir" -> msc.setCreateSubDir(false);
+				case "--symlinks" -> msc.setUseSymbolicLinks(true);
+				case "--link-duplicates" -> msc.setDuplicateAction(DuplicateAction.link);
+				case "--transcode" -> msc.setTranscodeVideos(true);
+				case "--extract-audio" -> msc.setExtractAudio(true);
+				case "--date-threads" -> msc.setDateExtractionThreads(positive(intValue(args, ++i, arg), arg));
+				case "--disk-order" -> msc.setDiskOrder(true);
+				case "--name-pattern" -> namePatterns.add(namePattern(value(args, ++i, arg)));
+				case "--csv-threads" -> msc.setCsvIngestThreads(positive(intValue(args, ++i, arg), arg));
+				case "--ffmpeg-cpus" -> msc.setFfmpegCpuBudget(positive(intValue(args, ++i, arg), arg));
+				default -> {
+					if (arg.startsWith("--"))
+						throw new IllegalArgumentException("Unknown option " + arg);
+					if (msc.getMediaPath() != null)
+						throw new IllegalArgumentException("Only one media folder may be given");
+					msc.setMediaPath(Path.of(arg));
+				}
+			}
+		}
+
+		msc.setFileNamePatterns(List.copyOf(namePatterns));
+
+		if (msc.getMediaPath() == null)
+			throw new IllegalArgumentException("No media folder given");
+		if (!Files.isDirectory(msc.getMediaPath()))
+			throw new IllegalArgumentException(msc.getMediaPath() + " is not a directory");
+		if (msc.getOutputPath() != null && !Files.isDirectory(msc.getOutputPath()))
+			throw new IllegalArgumentException(msc.getOutputPath() + " is not a directory");
+		if (msc.getCsvFile() != null && !Files.isRegularFile(msc.getCsvFile()))
+			throw new IllegalArgumentException(msc.getCsvFile() + " is not a file");
+		if (msc.isWatch() && msc.isRollBackUnfinished())
+			throw new IllegalArgumentException("--watch and --roll-back can't be combined");
+		if (msc.isWatch() && !msc.isCreateSubDir() && msc.getOutputPath() == null)
+			throw new IllegalArgumentException("--watch with --no-subdir needs an --output folder");
+
+		return msc;
+	}
+
+	/**
+	 * Runs the engine on the calling thread. FFmpeg processes are destroyed if the JVM is shut
+	 * down while sorting, e.g. by Ctrl+C. A watch is stopped by Ctrl+C too; it is given
+	 * {@value #WATCH_STOP_SECONDS} seconds to write its index before the JVM exits.
+	 *
+	 * @param msc the sort command
+	 * @return the exit status
+	 */
+	static int run(MediaSortCmd msc)
+	{
+		boolean interactive = System.console() != null;
+		MediaSortEngine engine = new MediaSortEngine(msc, interactive ? MediaSorterCli::printProgress : MediaSortEngine.ProgressListener.NONE);
+
+		Thread sortThread = Thread.currentThread();
+		CountDownLatch stopped = new CountDownLatch(1);
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			if (msc.isWatch())
+			{
+				sortThread.interrupt();
+				try
+				{
+					stopped.await(WATCH_STOP_SECONDS, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException _)
+				{
+					// exit anyway
+				}
+			}
+			if (engine.hasRunningProcesses())
+				engine.destroyRunningProcesses();
+		}));
+
+		try
+		{
+			if (msc.isWatch())
+			{
+				engine.watch();
+				return 0;
+			}
+
+			Path index = engine.run();
+			if (index != null)
+				log.info("Checklist index written to {}", index);
+			return 0;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			if (msc.isWatch())
+				return 0;
+			log.error("Sorting interrupted");
+			return EXIT_FAILURE;
+		}
+		catch (Exception e)
+		{
+			log.error("Sorting failed", e);
+			return EXIT_FAILURE;
+		}
+		finally
+		{
+			stopped.countDown();
+			if (interactive)
+				System.err.println();
+		}
+	}
+
+	private static void printProgress(long workDone, long totalWork)
+	{
+		if (workDone % PROGRESS_INTERVAL == 0 || workDone == totalWork)
+			System.err.print("\r" + workDone + " / " + totalWork + " files sorted");
+	}
+
+	private static String value(String[] args, int i, String option)
+	{
+		if (i >= args.length)
+			throw new IllegalArgumentException(option + " needs a value");
+		return args[i];
+	}
+
+	private static int intValue(String[] args, int i, String option)
+	{
+		String v = value(args, i, option);
+		try
+		{
+			return Integer.parseInt(v);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException(option + " expects a number, got " + v);
+		}
+	}
+
+	private static int positive(int v, String option)
+	{
+		if (v < 1)
+			throw new IllegalArgumentException(option + " must be at least 1");
+		return v;
+	}
+
+	private static String namePattern(String pattern)
+	{
+		FileNameTimestampMatcher.compile(List.of(pattern));
+		return pattern;
+	}
+}
@@ -0,0 +1,578 @@
+package dev.seabird.app;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only record of the moves of a sort run, so a run that was cut short can be resumed or
+ * rolled back.
+ *
+ * <p>The journal lives next to the run's {@code ebird_<millis>} output directory as
+ * {@code ebird_<millis>.journal}. For every file it records, in order:
+ * <ol>
+ *   <li>the planned move, with everything needed to finish the file later: its source and
+ *       target, size, modification time, creation date and checklist;</li>
+ *   <li>where the file ended up, which is its source if it was left in place;</li>
+ *   <li>that its post-move work is done.</li>
+ * </ol>
+ * A duplicate, whose source is deleted because its content is already in the library, gets a
+ * record of its own instead, naming the copy that was kept. The journal is deleted once the run
+ * has finished.
+ *
+ * <p>A planned move is written through to the operating system before the file is moved, so a
+ * killed process loses nothing. Records are synced to disk in batches, every
+ * {@link #SYNC_INTERVAL_RECORDS} records or {@link #SYNC_INTERVAL_MILLIS} ms, so a system crash
+ * loses at most the last batch; {@link Recovery#reconcile()} checks the file system for the moves
+ * whose outcome was not recorded. A source is only ever deleted there if its target has the same
+ * content. A partly written last record is ignored.
+ *
+ * <p>Paths are recorded in absolute form. Writes are thread-safe. A journal that cannot be written
+ * is logged once and then ignored, so a full disk does not stop the sort.
+ */
+@Slf4j
+final class MoveJournal implements Closeable
+{
+	static final String SUFFIX = ".journal";
+	static final int SYNC_INTERVAL_RECORDS = 256;
+	static final long SYNC_INTERVAL_MILLIS = 1000;
+
+	private static final int MAGIC = 0x45424d4a; // "EBMJ"
+	private static final int VERSION = 1;
+
+	private static final byte PLANNED = 1;
+	private static final byte MOVED = 2;
+	private static final byte FINISHED = 3;
+	private static final byte DUPLICATE = 4;
+
+	/**
+	 * A file of an unfinished run.
+	 *
+	 * @param source    the file as it was walked, with creation date and checklist
+	 * @param target    the destination the file was planned to move to; for a duplicate, the
+	 *                  existing file with the same content
+	 * @param placed    where the file ended up, {@code null} if that is unknown; for a duplicate,
+	 *                  the copy that was kept, which is {@code target} or a hard link to it
+	 * @param finished  whether the post-move work is done
+	 * @param duplicate whether the source was deleted as a duplicate rather than moved
+	 */
+	record Entry(MediaFile source, Path target, Path placed, boolean finished, boolean duplicate)
+	{
+		/** @return {@code true} if the file went to its target, as opposed to being left in place */
+		boolean isMoved()
+		{
+			return placed != null && !placed.equals(source.path());
+		}
+	}
+
+	private final Path file;
+	private final FileChannel channel;
+	private final DataOutputStream out;
+
+	private int unsynced;
+	private long lastSyncMillis = System.currentTimeMillis();
+	private boolean failed;
+	private boolean closed;
+
+	private MoveJournal(Path file, FileChannel channel)
+	{
+		this.file = file;
+		this.channel = channel;
+		this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+	}
+
+	/** @return the journal file of an output directory */
+	static Path journalFile(Path outputDir)
+	{
+		return outputDir.resolveSibling(outputDir.getFileName() + SUFFIX);
+	}
+
+	/**
+	 * Starts the journal of a new run.
+	 *
+	 * @param outputDir the run's output directory
+	 * @return the open journal
+	 * @throws IOException if the journal cannot be created
+	 */
+	static MoveJournal create(Path outputDir) throws IOException
+	{
+		Path file = journalFile(outputDir);
+		MoveJournal journal = new MoveJournal(file, FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+		journal.out.writeInt(MAGIC);
+		journal.out.writeInt(VERSION);
+		journal.out.writeUTF(outputDir.toAbsolutePath().toString());
+		journal.sync();
+		return journal;
+	}
+
+	/**
+	 * Reopens the journal of an unfinished run to continue it.
+	 *
+	 * @param recovery the recovered run
+	 * @return the open journal, positioned after the last complete record
+	 * @throws IOException if the journal cannot be opened
+	 */
+	static MoveJournal resume(Recovery recovery) throws IOException
+	{
+		FileChannel channel = FileChannel.open(recovery.journalFile(), StandardOpenOption.WRITE);
+		channel.truncate(recovery.validLength);
+		channel.position(recovery.validLength);
+		return new MoveJournal(recovery.journalFile(), channel);
+	}
+
+	/**
+	 * Records that a file is about to be moved.
+	 *
+	 * @param source the file, with its creation date and matched checklist
+	 * @param target the destination
+	 */
+	synchronized void planned(MediaFile source, Path target)
+	{
+		append(() -> {
+			out.writeByte(PLANNED);
+			writeSource(source, target);
+			// handed to the OS before the move, so only a system crash can lose it
+			out.flush();
+		});
+	}
+
+	/**
+	 * Records that a file is about to be deleted as a duplicate. Its post-move work counts as done.
+	 *
+	 * @param source    the file, with its creation date and matched checklist
+	 * @param duplicate the existing file with the same content
+	 * @param kept      {@code duplicate}, or a hard link to it under the file's own name
+	 */
+	synchronized void duplicate(MediaFile source, Path duplicate, Path kept)
+	{
+		append(() -> {
+			out.writeByte(DUPLICATE);
+			writeSource(source, duplicate);
+			out.writeUTF(key(kept));
+			// handed to the OS before the delete, so only a system crash can lose it
+			out.flush();
+		});
+	}
+
+	private void writeSource(MediaFile source, Path target) throws IOException
+	{
+		out.writeUTF(key(source.path()));
+		out.writeUTF(key(target));
+		out.writeLong(source.size());
+		out.writeLong(source.modifiedMillis());
+		out.writeUTF(source.ext());
+		out.writeLong(source.creationDt().toEpochSecond(ZoneOffset.UTC));
+		out.writeUTF(source.subId() != null ? source.subId() : "");
+	}
+
+	/**
+	 * Records where a file ended up.
+	 *
+	 * @param source the file's original location
+	 * @param placed its new location, or {@code source} if it was left in place
+	 */
+	synchronized void moved(Path source, Path placed)
+	{
+		append(() -> {
+			out.writeByte(MOVED);
+			out.writeUTF(key(source));
+			out.writeUTF(key(placed));
+		});
+	}
+
+	/**
+	 * Records that the post-move work of a file is done.
+	 *
+	 * @param placed the file's location after the move
+	 */
+	synchronized void finished(Path placed)
+	{
+		append(() -> {
+			out.writeByte(FINISHED);
+			out.writeUTF(key(placed));
+		});
+	}
+
+	private static String key(Path file)
+	{
+		return file.toAbsolutePath().normalize().toString();
+	}
+
+	private interface Record
+	{
+		void write() throws IOException;
+	}
+
+	private void append(Record r)
+	{
+		if (failed || closed)
+			return;
+
+		try {
+			r.write();
+			if (++unsynced >= SYNC_INTERVAL_RECORDS || System.currentTimeMillis() - lastSyncMillis >= SYNC_INTERVAL_MILLIS)
+				sync();
+		} catch (IOException e) {
+			failed = true;
+			log.error("Could not write move journal {}, an interrupted run can't be resumed", file, e);
+		}
+	}
+
+	private void sync() throws IOException
+	{
+		out.flush();
+		channel.force(false);
+		unsynced = 0;
+		lastSyncMillis = System.currentTimeMillis();
+	}
+
+	/** Syncs and closes the journal. */
+	@Override
+	public synchronized void close()
+	{
+		if (closed)
+			return;
+		closed = true;
+		try {
+			if (!failed)
+				sync();
+			out.close();
+		} catch (IOException e) {
+			log.warn("Could not close move journal {}", file, e);
+		}
+	}
+
+	/** Closes and deletes the journal of a run that has finished. */
+	synchronized void delete()
+	{
+		close();
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			log.warn("Could not delete move journal {}", file, e);
+		}
+	}
+
+	/**
+	 * Looks for the journal of an unfinished run among the output folders of a root. If there are
+	 * several, the most recent one is returned.
+	 *
+	 * @param outputRoot the folder that receives the output directories
+	 * @return the unfinished run, or {@code null} if there is none
+	 * @throws IOException if the root cannot be listed
+	 */
+	static Recovery findUnfinished(Path outputRoot) throws IOException
+	{
+		List<Path> journals = new ArrayList<>();
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(outputRoot, MediaSortUtils.OUTPUT_FOLDER_NAME + "_*" + SUFFIX)) {
+			ds.forEach(journals::add);
+		}
+		journals.sort(Comparator.comparing(Path::getFileName).reversed());
+
+		for (Path journalFile : journals)
+		{
+			Recovery recovery = read(journalFile);
+			if (recovery != null && Files.isDirectory(recovery.outputDir()))
+				return recovery;
+
+			// the run finished but was stopped before deleting its journal, or the journal is unreadable
+			log.info("Removing stale move journal {}", journalFile.getFileName());
+			Files.deleteIfExists(journalFile);
+		}
+		return null;
+	}
+
+	/**
+	 * Looks for the journal of an output directory that is sorted into by several runs, such as
+	 * the folder a watch sorts into.
+	 *
+	 * @param outputDir the output directory
+	 * @return the unfinished run, or {@code null} if there is none
+	 * @throws IOException if a stale journal cannot be deleted
+	 */
+	static Recovery findUnfinishedIn(Path outputDir) throws IOException
+	{
+		Path journalFile = journalFile(outputDir);
+		if (!Files.exists(journalFile))
+			return null;
+
+		Recovery recovery = read(journalFile);
+		if (recovery != null && Files.isDirectory(recovery.outputDir()))
+			return recovery;
+
+		log.info("Removing stale move journal {}", journalFile.getFileName());
+		Files.deleteIfExists(journalFile);
+		return null;
+	}
+
+	private static Recovery read(Path journalFile)
+	{
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(journalFile);
+		} catch (IOException e) {
+			log.warn("Could not read move journal {}", journalFile, e);
+			return null;
+		}
+
+		ByteArrayInputStream bin = new ByteArrayInputStream(bytes);
+		DataInputStream in = new DataInputStream(bin);
+		Map<Path, Recovery.Pending> bySource = new LinkedHashMap<>();
+		Map<Path, Recovery.Pending> byPlaced = new LinkedHashMap<>();
+		Path outputDir;
+		long validLength;
+
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return null;
+			outputDir = Path.of(in.readUTF());
+			validLength = bytes.length - bin.available();
+		} catch (IOException e) {
+			return null;
+		}
+
+		try {
+			while (bin.available() > 0)
+			{
+				switch (in.readByte())
+				{
+					case PLANNED -> {
+						Recovery.Pending p = readSource(in);
+						bySource.put(p.source.path(), p);
+					}
+					case DUPLICATE -> {
+						Recovery.Pending p = readSource(in);
+						p.placed = Path.of(in.readUTF());
+						p.finished = true;
+						p.duplicate = true;
+						bySource.put(p.source.path(), p);
+					}
+					case MOVED -> {
+						Recovery.Pending p = bySource.get(Path.of(in.readUTF()));
+						Path placed = Path.of(in.readUTF());
+						if (p != null) {
+							p.placed = placed;
+							byPlaced.put(placed, p);
+						}
+					}
+					case FINISHED -> {
+						Recovery.Pending p = byPlaced.get(Path.of(in.readUTF()));
+						if (p != null)
+							p.finished = true;
+					}
+					default -> throw new IOException("Unknown record type");
+				}
+				validLength = bytes.length - bin.available();
+			}
+		} catch (EOFException e) {
+			// the last record was only partly written
+		} catch (IOException | RuntimeException e) {
+			log.warn("Move journal {} is damaged after {} bytes, ignoring the rest", journalFile, validLength, e);
+		}
+
+		List<Entry> entries = bySource.values().stream().map(p -> new Entry(p.source, p.target, p.placed, p.finished, p.duplicate)).toList();
+		return new Recovery(journalFile, outputDir, entries, validLength);
+	}
+
+	private static Recovery.Pending readSource(DataInputStream in) throws IOException
+	{
+		Path source = Path.of(in.readUTF());
+		Path target = Path.of(in.readUTF());
+		long size = in.readLong();
+		Instant modified = Instant.ofEpochMilli(in.readLong());
+		String ext = in.readUTF();
+		LocalDateTime creationDt = LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC);
+		String subId = in.readUTF();
+		MediaFile mf = new MediaFile(source, source, size, modified, 0, ext, creationDt, null, subId.isEmpty() ? null : subId);
+		return new Recovery.Pending(mf, target);
+	}
+
+	/**
+	 * The state of an unfinished run as far as its journal knows it.
+	 */
+	static final class Recovery
+	{
+		/** An entry while the journal is being read. */
+		private static final class Pending
+		{
+			final MediaFile source;
+			final Path target;
+			Path placed;
+			boolean finished;
+			boolean duplicate;
+
+			Pending(MediaFile source, Path target)
+			{
+				this.source = source;
+				this.target = target;
+			}
+		}
+
+		private final Path journalFile;
+		private final Path outputDir;
+		private final List<Entry> entries;
+		private final long validLength;
+
+		private Recovery(Path journalFile, Path outputDir, List<Entry> entries, long validLength)
+		{
+			this.journalFile = journalFile;
+			this.outputDir = outputDir;
+			this.entries = entries;
+			this.validLength = validLength;
+		}
+
+		Path journalFile()
+		{
+			return journalFile;
+		}
+
+		/** @return the output directory of the unfinished run */
+		Path outputDir()
+		{
+			return outputDir;
+		}
+
+		/**
+		 * Determines where each file of the run is. For moves whose outcome was not recorded, the
+		 * file system decides: a file whose target exists and whose source is gone counts as
+		 * moved. If both exist, the move was a copy to another file system that did not finish.
+		 * The source is then only deleted, as the completed move would have done, if the target
+		 * has the same content; otherwise the target is deleted and the source kept. A duplicate
+		 * whose source still exists was not deleted and is left to the walk. Leftover partial
+		 * copies are removed.
+		 *
+		 * @return the entries whose location is known, in journal order
+		 */
+		List<Entry> reconcile()
+		{
+			List<Entry> known = new ArrayList<>(entries.size());
+			for (Entry e : entries)
+			{
+				Path source = e.source().path();
+				if (e.duplicate()) {
+					if (!Files.exists(source))
+						known.add(e);
+					continue;
+				}
+				if (e.placed() != null) {
+					known.add(e);
+					continue;
+				}
+
+				Path target = e.target();
+				try {
+					Files.deleteIfExists(target.resolveSibling(target.getFileName() + ".part"));
+
+					if (!Files.exists(target, LinkOption.NOFOLLOW_LINKS))
+						continue; // not moved, the walk finds it again
+
+					if (Files.exists(source)) {
+						if (Files.isSymbolicLink(target) || Files.mismatch(source, target) != -1) {
+							log.warn("Removing {}, an unverified copy of {}", target, source);
+							Files.delete(target);
+							continue;
+						}
+						Files.delete(source);
+					}
+					known.add(new Entry(e.source(), target, target, false, false));
+				} catch (IOException ex) {
+					log.warn("Could not determine whether {} was moved", source, ex);
+				}
+			}
+			return known;
+		}
+
+		/**
+		 * Moves the files of the run back to where they came from and removes what is left of the
+		 * output directory and the journal. Links are deleted. Duplicates are restored from the
+		 * copy that was kept: a hard link the run created is moved back, an existing library file
+		 * is copied and stays where it is. Files the journal does not know of stay in the output
+		 * directory.
+		 *
+		 * @return the number of files restored
+		 * @throws IOException if the output directory cannot be cleaned up
+		 */
+		int rollBack() throws IOException
+		{
+			List<Entry> known = reconcile();
+			int restored = 0;
+			for (Entry e : known.reversed())
+			{
+				if (!e.isMoved())
+					continue;
+
+				Path source = e.source().path();
+				Path placed = e.placed();
+				try {
+					if (e.duplicate()) {
+						if (Files.exists(source) || !Files.exists(placed)) {
+							log.warn("Could not restore {} from {}", source, placed);
+							continue;
+						}
+						Files.createDirectories(source.getParent());
+						if (placed.equals(e.target()))
+							Files.copy(placed, source, StandardCopyOption.COPY_ATTRIBUTES);
+						else
+							Files.move(placed, source);
+					} else if (Files.isSymbolicLink(placed)) {
+						Files.delete(placed);
+					} else if (Files.exists(placed) && !Files.exists(source)) {
+						Files.createDirectories(source.getParent());
+						Files.move(placed, source);
+					} else {
+						log.warn("Could not restore {} from {}", source, placed);
+						continue;
+					}
+					restored++;
+				} catch (IOException ex) {
+					log.warn("Could not restore {} from {}", source, placed, ex);
+				}
+			}
+
+			deleteEmptyDirectories(outputDir);
+			if (Files.exists(outputDir))
+				log.warn("{} still contains files the journal does not know of", outputDir);
+			Files.deleteIfExists(journalFile);
+			return restored;
+		}
+
+		/** Deletes a directory tree bottom-up, as far as it contains no files. */
+		private static void deleteEmptyDirectories(Path dir) throws IOException
+		{
+			if (!Files.isDirectory(dir))
+				return;
+
+			try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+				for (Path p : ds)
+					if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS))
+						deleteEmptyDirectories(p);
+			}
+			try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+				if (!ds.iterator().hasNext())
+					Files.delete(dir);
+			}
+		}
+	}
+}
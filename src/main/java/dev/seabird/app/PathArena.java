@@ -0,0 +1,375 @@
+package dev.seabird.app;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact store for the paths of many files.
+ *
+ * <p>A {@link Path} per file costs a byte array, a cached string and a few object headers, which
+ * for a library of millions of files adds up to gigabytes of heap. The arena interns the parent
+ * folders instead and refers to them by an int ID, and packs the UTF-8 file names into one shared
+ * byte array. A file is an int entry index into primitive arrays and can carry one int value, e.g.
+ * an index into a table of the caller's. A {@code Path} is only created by {@link #path(int)}.
+ *
+ * <p>Entries are looked up by folder and name through an open-addressing hash table, built when
+ * the first lookup needs it. Removed entries keep their space until {@link #compact()}. Entries are
+ * put in file name order by {@link #sortByName(int[])} without creating any objects; names are
+ * compared by code point.
+ *
+ * <p>Not thread-safe.
+ */
+final class PathArena
+{
+	private static final int REMOVED = -1;
+	private static final int INITIAL_ENTRIES = 16;
+	private static final int AVERAGE_NAME_LENGTH = 24;
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private final List<Path> dirs = new ArrayList<>();
+	private final Map<Path, Integer> dirIds = new HashMap<>();
+
+	private byte[] names = new byte[INITIAL_ENTRIES * AVERAGE_NAME_LENGTH];
+	private int namesLength;
+	/** Folder ID of each entry, {@link #REMOVED} for removed entries. */
+	private int[] dirOf = new int[INITIAL_ENTRIES];
+	/** Offset of each entry's name in {@link #names}; the name ends where the next one starts. */
+	private int[] nameStart = new int[INITIAL_ENTRIES];
+	private int[] values = new int[INITIAL_ENTRIES];
+	private int size;
+	private int removed;
+
+	/** Entry index + 1 per slot, 0 for free slots; {@code null} until the first lookup. */
+	private int[] table;
+
+	/**
+	 * @param dir a folder
+	 * @return the folder's ID, assigned on first use
+	 */
+	int dirId(Path dir)
+	{
+		Integer id = dirIds.get(dir);
+		if (id != null)
+			return id;
+		dirs.add(dir);
+		dirIds.put(dir, dirs.size() - 1);
+		return dirs.size() - 1;
+	}
+
+	/**
+	 * @param dir a folder
+	 * @return the folder's ID, or -1 if it has none
+	 */
+	int findDir(Path dir)
+	{
+		Integer id = dirIds.get(dir);
+		return id != null ? id : -1;
+	}
+
+	/** @return the folder with the given ID */
+	Path dir(int dirId)
+	{
+		return dirs.get(dirId);
+	}
+
+	/** @return the number of folder IDs assigned; IDs run from 0 */
+	int numDirs()
+	{
+		return dirs.size();
+	}
+
+	/**
+	 * Gives a folder a new path, keeping its ID and entries.
+	 *
+	 * @param dirId the folder
+	 * @param to    its new path, which must not have an ID yet
+	 */
+	void moveDir(int dirId, Path to)
+	{
+		dirIds.remove(dirs.get(dirId));
+		dirs.set(dirId, to);
+		dirIds.put(to, dirId);
+	}
+
+	/**
+	 * Adds a file unless it is already there.
+	 *
+	 * @param dirId the file's folder
+	 * @param name  the file name
+	 * @return the file's entry
+	 */
+	int add(int dirId, String name)
+	{
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		int hash = hash(dirId, bytes, 0, bytes.length);
+		int entry = find(dirId, bytes, hash);
+		return entry >= 0 ? entry : append(dirId, bytes, hash);
+	}
+
+	/**
+	 * Adds a file without checking whether it is already there, e.g. one of a folder listing.
+	 *
+	 * @param dirId the file's folder
+	 * @param name  the file name
+	 * @return the file's new entry
+	 */
+	int append(int dirId, String name)
+	{
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		return append(dirId, bytes, table != null ? hash(dirId, bytes, 0, bytes.length) : 0);
+	}
+
+	private int append(int dirId, byte[] bytes, int hash)
+	{
+		if (size == dirOf.length)
+		{
+			int capacity = size * 2;
+			dirOf = Arrays.copyOf(dirOf, capacity);
+			nameStart = Arrays.copyOf(nameStart, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		if (namesLength + bytes.length > names.length)
+			names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + bytes.length));
+
+		int entry = size++;
+		dirOf[entry] = dirId;
+		nameStart[entry] = namesLength;
+		values[entry] = 0;
+		System.arraycopy(bytes, 0, names, namesLength, bytes.length);
+		namesLength += bytes.length;
+
+		if (table != null)
+		{
+			if (size * 2 > table.length)
+				rehash();
+			else
+				insert(entry, hash);
+		}
+		return entry;
+	}
+
+	/**
+	 * @param dirId the file's folder
+	 * @param name  the file name
+	 * @return the file's entry, or -1 if it is not in the arena
+	 */
+	int find(int dirId, String name)
+	{
+		if (size == removed)
+			return -1;
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		return find(dirId, bytes, hash(dirId, bytes, 0, bytes.length));
+	}
+
+	private int find(int dirId, byte[] bytes, int hash)
+	{
+		if (table == null)
+			rehash();
+
+		int mask = table.length - 1;
+		for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask)
+		{
+			int entry = table[slot] - 1;
+			if (dirOf[entry] == dirId
+					&& Arrays.equals(names, nameStart[entry], nameEnd(entry), bytes, 0, bytes.length))
+				return entry;
+		}
+		return -1;
+	}
+
+	private void insert(int entry, int hash)
+	{
+		int mask = table.length - 1;
+		int slot = hash & mask;
+		while (table[slot] != 0)
+			slot = (slot + 1) & mask;
+		table[slot] = entry + 1;
+	}
+
+	private void rehash()
+	{
+		table = new int[Math.max(INITIAL_ENTRIES, Integer.highestOneBit(Math.max(1, size) * 4 - 1))];
+		for (int entry = 0; entry < size; entry++)
+		{
+			if (dirOf[entry] != REMOVED)
+				insert(entry, hash(dirOf[entry], names, nameStart[entry], nameEnd(entry)));
+		}
+	}
+
+	private static int hash(int dirId, byte[] bytes, int from, int to)
+	{
+		int h = dirId;
+		for (int i = from; i < to; i++)
+			h = 31 * h + bytes[i];
+		return h ^ (h >>> 16);
+	}
+
+	private int nameEnd(int entry)
+	{
+		return entry + 1 < size ? nameStart[entry + 1] : namesLength;
+	}
+
+	/**
+	 * Removes a file. Its entry stays allocated until {@link #compact()}.
+	 *
+	 * @param entry a live entry
+	 */
+	void remove(int entry)
+	{
+		dirOf[entry] = REMOVED;
+		removed++;
+	}
+
+	/** @return whether the entry has not been removed */
+	boolean isLive(int entry)
+	{
+		return dirOf[entry] != REMOVED;
+	}
+
+	/** @return the number of entries allocated, live or removed; entries run from 0 */
+	int entryCount()
+	{
+		return size;
+	}
+
+	/** @return the number of live entries */
+	int liveCount()
+	{
+		return size - removed;
+	}
+
+	/** @return the number of removed entries {@link #compact()} would free */
+	int removedCount()
+	{
+		return removed;
+	}
+
+	/** @return the folder ID of a live entry */
+	int dirOf(int entry)
+	{
+		return dirOf[entry];
+	}
+
+	/** @return the file name of an entry */
+	String name(int entry)
+	{
+		return new String(names, nameStart[entry], nameEnd(entry) - nameStart[entry], StandardCharsets.UTF_8);
+	}
+
+	/** @return the path of a live entry */
+	Path path(int entry)
+	{
+		return dirs.get(dirOf[entry]).resolve(name(entry));
+	}
+
+	/** @return the value of an entry, 0 unless set */
+	int value(int entry)
+	{
+		return values[entry];
+	}
+
+	/** Sets the value of an entry. */
+	void setValue(int entry, int value)
+	{
+		values[entry] = value;
+	}
+
+	/** @return the live entries in the order they were added */
+	int[] liveEntries()
+	{
+		int[] live = new int[size - removed];
+		int n = 0;
+		for (int entry = 0; entry < size; entry++)
+		{
+			if (dirOf[entry] != REMOVED)
+				live[n++] = entry;
+		}
+		return live;
+	}
+
+	/**
+	 * Frees the space of removed entries. Entries are renumbered, keeping their order, so entry
+	 * indexes held from before are invalid. Folder IDs are unchanged.
+	 */
+	void compact()
+	{
+		if (removed == 0)
+			return;
+
+		int[] live = liveEntries();
+		byte[] newNames = new byte[Math.max(INITIAL_ENTRIES * AVERAGE_NAME_LENGTH, namesLength)];
+		int newLength = 0;
+		int capacity = Math.max(INITIAL_ENTRIES, live.length);
+		int[] newDirOf = new int[capacity];
+		int[] newStart = new int[capacity];
+		int[] newValues = new int[capacity];
+
+		for (int i = 0; i < live.length; i++)
+		{
+			int entry = live[i];
+			int start = nameStart[entry];
+			int length = nameEnd(entry) - start;
+			System.arraycopy(names, start, newNames, newLength, length);
+			newDirOf[i] = dirOf[entry];
+			newStart[i] = newLength;
+			newValues[i] = values[entry];
+			newLength += length;
+		}
+
+		names = newNames;
+		namesLength = newLength;
+		dirOf = newDirOf;
+		nameStart = newStart;
+		values = newValues;
+		size = live.length;
+		removed = 0;
+		table = null;
+	}
+
+	/** Sorts entries by file name, stably. */
+	void sortByName(int[] entries)
+	{
+		if (entries.length > 1)
+			mergeSort(entries.clone(), entries, 0, entries.length);
+	}
+
+	/** Sorts {@code dst[from, to)}, using {@code src} as scratch space holding the same entries. */
+	private void mergeSort(int[] src, int[] dst, int from, int to)
+	{
+		if (to - from <= INSERTION_SORT_THRESHOLD)
+		{
+			for (int i = from + 1; i < to; i++)
+			{
+				int entry = dst[i];
+				int j = i;
+				for (; j > from && compareNames(dst[j - 1], entry) > 0; j--)
+					dst[j] = dst[j - 1];
+				dst[j] = entry;
+			}
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		mergeSort(dst, src, from, mid);
+		mergeSort(dst, src, mid, to);
+
+		for (int i = from, a = from, b = mid; i < to; i++)
+		{
+			if (b >= to || (a < mid && compareNames(src[a], src[b]) <= 0))
+				dst[i] = src[a++];
+			else
+				dst[i] = src[b++];
+		}
+	}
+
+	/** Compares the names of two entries by code point, which is their UTF-8 byte order. */
+	int compareNames(int a, int b)
+	{
+		return Arrays.compareUnsigned(names, nameStart[a], nameEnd(a), names, nameStart[b], nameEnd(b));
+	}
+}
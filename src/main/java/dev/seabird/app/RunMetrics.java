@@ -0,0 +1,271 @@
+package dev.seabird.app;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Timings of a single sort run.
+ *
+ * <p>Two kinds of measurements are kept:
+ * <ul>
+ *   <li><b>Phases</b> – wall-clock time of the run's sequential steps (CSV loading, the
+ *       pipeline, finishing up).</li>
+ *   <li><b>Operations</b> – one {@link Stat} per kind of per-file work (a directory listing, a
+ *       creation date provider call, a move, ...), with a count, total time, bytes of the files
+ *       worked on and a latency histogram for percentiles. Recording is thread-safe and does
+ *       not allocate.</li>
+ * </ul>
+ *
+ * <p>At the end of a run the metrics are logged as a summary and written as a JSON report.
+ */
+@Slf4j
+final class RunMetrics
+{
+	private final Instant startedAt = Instant.now();
+	private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+	private final Map<String, Stat> stats = new LinkedHashMap<>();
+
+	/**
+	 * Returns the statistics of an operation, creating them on first use. Operations are
+	 * reported in the order they were first requested.
+	 *
+	 * @param name the operation name
+	 * @return the operation's statistics
+	 */
+	synchronized Stat stat(String name)
+	{
+		return stats.computeIfAbsent(name, _ -> new Stat());
+	}
+
+	/**
+	 * Records the duration of a run phase.
+	 *
+	 * @param name      the phase name
+	 * @param startNanos the {@link System#nanoTime()} at which the phase started
+	 */
+	synchronized void phase(String name, long startNanos)
+	{
+		phaseNanos.merge(name, System.nanoTime() - startNanos, Long::sum);
+	}
+
+	/** Logs one line per phase and per operation. */
+	synchronized void logSummary()
+	{
+		phaseNanos.forEach((name, nanos) -> log.info("Phase {}: {}", name, formatNanos(nanos)));
+
+		stats.forEach((name, s) -> {
+			long count = s.count();
+			if (count == 0)
+				return;
+			log.info("{}: {} ops, {} total, p50 {}, p99 {}, max {}{}", name, count, formatNanos(s.totalNanos()),
+					formatNanos(s.percentile(0.5)), formatNanos(s.percentile(0.99)), formatNanos(s.maxNanos()),
+					s.bytes() > 0 ? ", " + formatBytes(s.bytes()) : "");
+		});
+	}
+
+	/**
+	 * Writes the metrics as JSON.
+	 *
+	 * @param file   the report file
+	 * @param totals run-level counters to include, e.g. the number of files found
+	 * @throws IOException if the report cannot be written
+	 */
+	synchronized void writeReport(Path file, Map<String, Long> totals) throws IOException
+	{
+		try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+		{
+			w.write("{\n");
+			w.write("  \"startedAt\": \"" + startedAt + "\",\n");
+
+			for (var e : totals.entrySet())
+				w.write("  " + quote(e.getKey()) + ": " + e.getValue() + ",\n");
+
+			w.write("  \"phasesMillis\": {");
+			String sep = "\n";
+			for (var e : phaseNanos.entrySet())
+			{
+				w.write(sep + "    " + quote(e.getKey()) + ": " + millis(e.getValue()));
+				sep = ",\n";
+			}
+			w.write("\n  },\n");
+
+			w.write("  \"operations\": {");
+			sep = "\n";
+			for (var e : stats.entrySet())
+			{
+				Stat s = e.getValue();
+				w.write(sep + "    " + quote(e.getKey()) + ": {"
+						+ "\"count\": " + s.count()
+						+ ", \"totalMillis\": " + millis(s.totalNanos())
+						+ ", \"meanMicros\": " + micros(s.count() == 0 ? 0 : s.totalNanos() / s.count())
+						+ ", \"p50Micros\": " + micros(s.percentile(0.5))
+						+ ", \"p90Micros\": " + micros(s.percentile(0.9))
+						+ ", \"p99Micros\": " + micros(s.percentile(0.99))
+						+ ", \"maxMicros\": " + micros(s.maxNanos())
+						+ ", \"bytes\": " + s.bytes() + "}");
+				sep = ",\n";
+			}
+			w.write("\n  }\n");
+			w.write("}\n");
+		}
+	}
+
+	private static String quote(String s)
+	{
+		return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+	}
+
+	private static String millis(long nanos)
+	{
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+	private static String micros(long nanos)
+	{
+		return String.format(Locale.ROOT, "%.1f", nanos / 1e3);
+	}
+
+	private static String formatNanos(long nanos)
+	{
+		if (nanos >= 60_000_000_000L)
+			return String.format(Locale.ROOT, "%.1f min", nanos / 6e10);
+		if (nanos >= 1_000_000_000L)
+			return String.format(Locale.ROOT, "%.2f s", nanos / 1e9);
+		if (nanos >= 1_000_000L)
+			return String.format(Locale.ROOT, "%.2f ms", nanos / 1e6);
+		return String.format(Locale.ROOT, "%.1f µs", nanos / 1e3);
+	}
+
+	private static String formatBytes(long bytes)
+	{
+		if (bytes >= 1L << 30)
+			return String.format(Locale.ROOT, "%.2f GB", bytes / (double) (1L << 30));
+		if (bytes >= 1L << 20)
+			return String.format(Locale.ROOT, "%.1f MB", bytes / (double) (1L << 20));
+		return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+	}
+
+	/**
+	 * Count, total time, bytes and latency distribution of one kind of operation.
+	 *
+	 * <p>Latencies go into a log-linear histogram with 8 buckets per power of two, so
+	 * percentiles are accurate to within about 6%.
+	 */
+	static final class Stat
+	{
+		private static final int SUB_BUCKET_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+		private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		private final AtomicLongArray histogram = new AtomicLongArray(NUM_BUCKETS);
+
+		private Stat() {}
+
+		/**
+		 * Records an operation that started at {@code startNanos} and ends now.
+		 *
+		 * @param startNanos the {@link System#nanoTime()} at which the operation started
+		 * @param numBytes   the size of the data the operation worked on, 0 if not applicable
+		 */
+		void recordSince(long startNanos, long numBytes)
+		{
+			record(System.nanoTime() - startNanos, numBytes);
+		}
+
+		/**
+		 * Records an operation.
+		 *
+		 * @param nanos    the operation's duration
+		 * @param numBytes the size of the data the operation worked on, 0 if not applicable
+		 */
+		void record(long nanos, long numBytes)
+		{
+			long n = Math.max(0, nanos);
+			count.increment();
+			totalNanos.add(n);
+			if (numBytes > 0)
+				bytes.add(numBytes);
+			maxNanos.accumulate(n);
+			histogram.incrementAndGet(bucketOf(n));
+		}
+
+		long count()
+		{
+			return count.sum();
+		}
+
+		long totalNanos()
+		{
+			return totalNanos.sum();
+		}
+
+		long bytes()
+		{
+			return bytes.sum();
+		}
+
+		long maxNanos()
+		{
+			return maxNanos.get();
+		}
+
+		/**
+		 * @param q the quantile, between 0 and 1
+		 * @return the approximate latency at the quantile, 0 if nothing was recorded
+		 */
+		long percentile(double q)
+		{
+			long total = 0;
+			for (int i = 0; i < NUM_BUCKETS; i++)
+				total += histogram.get(i);
+			if (total == 0)
+				return 0;
+
+			long rank = Math.max(1, (long) Math.ceil(q * total));
+			long seen = 0;
+			for (int i = 0; i < NUM_BUCKETS; i++)
+			{
+				seen += histogram.get(i);
+				if (seen >= rank)
+					return Math.min(bucketMidpoint(i), maxNanos());
+			}
+			return maxNanos();
+		}
+
+		private static int bucketOf(long v)
+		{
+			if (v < SUB_BUCKETS)
+				return (int) v;
+			int exp = 63 - Long.numberOfLeadingZeros(v);
+			int sub = (int) (v >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return ((exp - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+		}
+
+		private static long bucketMidpoint(int bucket)
+		{
+			if (bucket < SUB_BUCKETS)
+				return bucket;
+			int exp = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+			int sub = bucket & (SUB_BUCKETS - 1);
+			long lower = (long) (SUB_BUCKETS + sub) << (exp - SUB_BUCKET_BITS);
+			long width = 1L << (exp - SUB_BUCKET_BITS);
+			return lower + width / 2;
+		}
+	}
+}
@@ -0,0 +1,446 @@
+package dev.seabird.app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persistent record of the media the sorter has placed in an output folder, and the checklist
+ * each file was matched to.
+ *
+ * <p>The ledger lets a run skip its earlier output instead of sorting it again. It is grouped by
+ * folder: each folder keeps the names of its sorted files and, as of the last save, its
+ * modification time and whether it had sub-folders. A folder without sub-folders whose
+ * modification time is unchanged cannot have gained files, so the walk skips it without listing
+ * it; in other folders a sorted file is recognized by a single hash lookup. The checklist index
+ * is rebuilt from the ledger, so it covers the whole library rather than the last run.
+ *
+ * <p>{@link #save()} brings each folder up to date before writing. Files that were deleted or
+ * moved away are dropped. Only files recorded with {@link #placed} are ever entered, including
+ * the videos and audio FFmpeg writes next to sorted files; other media that appeared in a folder
+ * of the ledger are left to the walk, and the folder is not skipped while it holds any.
+ *
+ * <p>The ledger is stored in the output folder as {@code ebird.ledger}, with paths relative to
+ * that folder, so it stays valid if the library is moved. Folder and checklist names are written
+ * once each. In memory the files are held in a {@link PathArena}, so a library of millions of
+ * files costs tens of bytes per file. Methods are thread-safe.
+ */
+@Slf4j
+final class SortLedger
+{
+	static final String FILE_NAME = MediaSortUtils.OUTPUT_FOLDER_NAME + ".ledger";
+
+	private static final int MAGIC = 0x4542534c; // "EBSL"
+	private static final int VERSION = 1;
+	private static final long NOT_RECONCILED = Long.MIN_VALUE;
+	private static final int NO_SUB_ID = -1;
+
+	/**
+	 * Live entries grouped by folder: those of folder {@code d} are
+	 * {@code entries[starts[d]..starts[d + 1])}.
+	 */
+	private record Grouping(int[] entries, int[] starts) {}
+
+	private final Path root;
+	private final Path ledgerFile;
+
+	/** The sorted files; an entry's value is the index of its checklist in {@link #subIds}, or {@link #NO_SUB_ID}. */
+	private final PathArena files = new PathArena();
+	private final List<String> subIds = new ArrayList<>();
+	private final Map<String, Integer> subIdIdx = new HashMap<>();
+
+	/** Per folder ID: the number of sorted files; folders without any are not part of the ledger. */
+	private int[] folderFiles = new int[16];
+	/** Per folder ID: the modification time as of the last reconcile, or {@link #NOT_RECONCILED}. */
+	private long[] folderModified = new long[16];
+	/** Per folder ID: whether the folder had no sub-folders as of the last reconcile. */
+	private boolean[] folderLeaf = new boolean[16];
+
+	private boolean dirty;
+
+	private SortLedger(Path root)
+	{
+		this.root = root;
+		this.ledgerFile = root.resolve(FILE_NAME);
+	}
+
+	/**
+	 * Loads the ledger of an output folder. A missing or unreadable ledger yields an empty one.
+	 *
+	 * @param outputRoot the folder receiving the sorted media, as the walk sees it
+	 * @return the ledger, never {@code null}
+	 */
+	static SortLedger load(Path outputRoot)
+	{
+		SortLedger ledger = new SortLedger(outputRoot);
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(ledger.ledgerFile))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				log.warn("Ignoring ledger {} with unknown format", ledger.ledgerFile);
+				return ledger;
+			}
+
+			int numSubIds = in.readInt();
+			for (int i = 0; i < numSubIds; i++)
+				ledger.subIdIndex(in.readUTF());
+
+			int numFolders = in.readInt();
+			for (int i = 0; i < numFolders; i++)
+			{
+				int dirId = ledger.folder(outputRoot.resolve(in.readUTF()));
+				ledger.folderModified[dirId] = in.readLong();
+				ledger.folderLeaf[dirId] = in.readBoolean();
+
+				int numEntries = in.readInt();
+				for (int j = 0; j < numEntries; j++)
+				{
+					String name = in.readUTF();
+					int subIdIdx = in.readInt();
+					if (subIdIdx >= numSubIds)
+						throw new IOException("Unknown checklist " + subIdIdx);
+					ledger.put(dirId, name, subIdIdx);
+				}
+			}
+			log.info("Ledger knows {} sorted files in {} folders", ledger.files.liveCount(), numFolders);
+		}
+		catch (NoSuchFileException e)
+		{
+			// nothing sorted into this folder yet
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.warn("Could not read ledger {}, sorted files will be walked again", ledger.ledgerFile, e);
+			return new SortLedger(outputRoot);
+		}
+
+		return ledger;
+	}
+
+	/** @return the ID of a folder, with room for its state */
+	private int folder(Path dir)
+	{
+		int dirId = files.dirId(dir);
+		if (dirId == folderFiles.length)
+		{
+			int capacity = folderFiles.length * 2;
+			folderFiles = Arrays.copyOf(folderFiles, capacity);
+			folderModified = Arrays.copyOf(folderModified, capacity);
+			folderLeaf = Arrays.copyOf(folderLeaf, capacity);
+		}
+		if (folderFiles[dirId] == 0)
+			folderModified[dirId] = NOT_RECONCILED;
+		return dirId;
+	}
+
+	private int subIdIndex(String subId)
+	{
+		if (subId == null)
+			return NO_SUB_ID;
+		return subIdIdx.computeIfAbsent(subId, id -> {
+			subIds.add(id);
+			return subIds.size() - 1;
+		});
+	}
+
+	/** Enters a file, or updates its checklist if it is already entered. */
+	private void put(int dirId, String name, int subIdIdx)
+	{
+		int before = files.entryCount();
+		int entry = files.add(dirId, name);
+		if (files.entryCount() > before)
+			folderFiles[dirId]++;
+		files.setValue(entry, subIdIdx);
+	}
+
+	private void remove(int entry)
+	{
+		folderFiles[files.dirOf(entry)]--;
+		files.remove(entry);
+	}
+
+	/**
+	 * @param dir   a folder being walked
+	 * @param attrs its attributes
+	 * @return the number of sorted files in the folder if it can be skipped as a whole, otherwise -1
+	 */
+	synchronized int skippableFiles(Path dir, BasicFileAttributes attrs)
+	{
+		int dirId = files.findDir(dir);
+		if (dirId < 0 || folderFiles[dirId] == 0 || !folderLeaf[dirId]
+				|| folderModified[dirId] != attrs.lastModifiedTime().toMillis())
+			return -1;
+		return folderFiles[dirId];
+	}
+
+	/**
+	 * @param file a walked file
+	 * @return {@code true} if the sorter placed the file where it is
+	 */
+	synchronized boolean contains(Path file)
+	{
+		int dirId = files.findDir(file.getParent());
+		return dirId >= 0 && folderFiles[dirId] > 0 && files.find(dirId, file.getFileName().toString()) >= 0;
+	}
+
+	/**
+	 * Records a file the sorter placed.
+	 *
+	 * @param file  the file's new location
+	 * @param subId the matched checklist, {@code null} if none matched
+	 */
+	synchronized void placed(Path file, String subId)
+	{
+		int dirId = folder(file.getParent());
+		put(dirId, file.getFileName().toString(), subIdIndex(subId));
+		folderModified[dirId] = NOT_RECONCILED;
+		dirty = true;
+	}
+
+	/**
+	 * Updates the ledger after a whole directory tree was moved. Folders moved into folders the
+	 * ledger already knows are merged with them.
+	 *
+	 * @param from the old location of the tree
+	 * @param to   the new location of the tree
+	 */
+	synchronized void movedTree(Path from, Path to)
+	{
+		int numDirs = files.numDirs();
+		int[] mergedInto = new int[numDirs];
+		Arrays.fill(mergedInto, -1);
+		boolean merged = false;
+
+		for (int dirId = 0; dirId < numDirs; dirId++)
+		{
+			Path dir = files.dir(dirId);
+			if (folderFiles[dirId] == 0 || !dir.startsWith(from))
+				continue;
+
+			Path newDir = to.resolve(from.relativize(dir));
+			int existing = files.findDir(newDir);
+			if (existing < 0)
+			{
+				files.moveDir(dirId, newDir);
+				folderModified[dirId] = NOT_RECONCILED;
+			}
+			else
+			{
+				mergedInto[dirId] = existing;
+				folderModified[existing] = NOT_RECONCILED;
+				merged = true;
+			}
+			dirty = true;
+		}
+
+		if (!merged)
+			return;
+
+		int numEntries = files.entryCount();
+		for (int entry = 0; entry < numEntries; entry++)
+		{
+			if (!files.isLive(entry) || mergedInto[files.dirOf(entry)] < 0)
+				continue;
+			put(mergedInto[files.dirOf(entry)], files.name(entry), files.value(entry));
+			remove(entry);
+		}
+	}
+
+	/** @return the number of sorted files per checklist, by checklist ID */
+	synchronized SortedMap<String, Integer> countsBySubId()
+	{
+		int[] counts = new int[subIds.size()];
+		int numEntries = files.entryCount();
+		for (int entry = 0; entry < numEntries; entry++)
+		{
+			if (files.isLive(entry) && files.value(entry) != NO_SUB_ID)
+				counts[files.value(entry)]++;
+		}
+
+		SortedMap<String, Integer> bySubId = new TreeMap<>();
+		for (int i = 0; i < counts.length; i++)
+		{
+			if (counts[i] > 0)
+				bySubId.put(subIds.get(i), counts[i]);
+		}
+		return bySubId;
+	}
+
+	/**
+	 * Brings every folder up to date with the file system and writes the ledger if it changed.
+	 * The file is replaced atomically; failures are logged.
+	 */
+	synchronized void save()
+	{
+		Grouping grouping = groupByFolder();
+		for (int dirId = 0; dirId < grouping.starts().length - 1; dirId++)
+		{
+			if (folderFiles[dirId] == 0)
+				continue;
+			try {
+				if (!reconcile(dirId, grouping))
+				{
+					for (int i = grouping.starts()[dirId]; i < grouping.starts()[dirId + 1]; i++)
+					{
+						if (files.isLive(grouping.entries()[i]))
+							remove(grouping.entries()[i]);
+					}
+					dirty = true;
+				}
+			} catch (IOException ex) {
+				log.warn("Could not check sorted folder {}", files.dir(dirId), ex);
+			}
+		}
+
+		if (!dirty)
+			return;
+
+		if (files.removedCount() > files.liveCount())
+			files.compact();
+
+		try
+		{
+			Path tmp = ledgerFile.resolveSibling(FILE_NAME + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))
+			{
+				write(out, groupByFolder());
+			}
+			Files.move(tmp, ledgerFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			dirty = false;
+		}
+		catch (IOException e)
+		{
+			log.warn("Could not save ledger {}", ledgerFile, e);
+		}
+	}
+
+	/** Groups the live entries by folder with a counting sort. */
+	private Grouping groupByFolder()
+	{
+		int numDirs = files.numDirs();
+		int[] starts = new int[numDirs + 1];
+		int numEntries = files.entryCount();
+		for (int entry = 0; entry < numEntries; entry++)
+		{
+			if (files.isLive(entry))
+				starts[files.dirOf(entry) + 1]++;
+		}
+		for (int dirId = 0; dirId < numDirs; dirId++)
+			starts[dirId + 1] += starts[dirId];
+
+		int[] entries = new int[starts[numDirs]];
+		int[] next = Arrays.copyOf(starts, numDirs);
+		for (int entry = 0; entry < numEntries; entry++)
+		{
+			if (files.isLive(entry))
+				entries[next[files.dirOf(entry)]++] = entry;
+		}
+		return new Grouping(entries, starts);
+	}
+
+	/**
+	 * Lists a folder whose modification time changed since it was last reconciled.
+	 *
+	 * @return {@code false} if the folder no longer holds sorted files
+	 */
+	private boolean reconcile(int dirId, Grouping grouping) throws IOException
+	{
+		Path dir = files.dir(dirId);
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (NoSuchFileException _) {
+			return false;
+		}
+		if (!attrs.isDirectory())
+			return false;
+
+		long modifiedMillis = attrs.lastModifiedTime().toMillis();
+		if (modifiedMillis == folderModified[dirId])
+			return true;
+
+		Set<String> media = new HashSet<>();
+		boolean leaf = true;
+		try (Stream<Path> entries = Files.list(dir))
+		{
+			for (Path p : (Iterable<Path>) entries::iterator)
+			{
+				if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS))
+					leaf = false;
+				else if (MediaSortUtils.mediaExtensions.contains(MediaSortUtils.getFileExtension(p).toLowerCase()))
+					media.add(p.getFileName().toString());
+			}
+		}
+
+		int before = folderFiles[dirId];
+		for (int i = grouping.starts()[dirId]; i < grouping.starts()[dirId + 1]; i++)
+		{
+			int entry = grouping.entries()[i];
+			if (!media.remove(files.name(entry)))
+				remove(entry);
+		}
+		// media the sorter did not place must still be walked, so such a folder is never skipped
+		long reconciled = media.isEmpty() ? modifiedMillis : NOT_RECONCILED;
+		if (folderFiles[dirId] != before || folderModified[dirId] != reconciled || folderLeaf[dirId] != leaf)
+			dirty = true;
+		folderModified[dirId] = reconciled;
+		folderLeaf[dirId] = leaf;
+
+		return folderFiles[dirId] > 0;
+	}
+
+	private void write(DataOutputStream out, Grouping grouping) throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(subIds.size());
+		for (String subId : subIds)
+			out.writeUTF(subId);
+
+		int numDirs = grouping.starts().length - 1;
+		int numFolders = 0;
+		for (int dirId = 0; dirId < numDirs; dirId++)
+		{
+			if (folderFiles[dirId] > 0)
+				numFolders++;
+		}
+
+		out.writeInt(numFolders);
+		for (int dirId = 0; dirId < numDirs; dirId++)
+		{
+			if (folderFiles[dirId] == 0)
+				continue;
+			out.writeUTF(root.relativize(files.dir(dirId)).toString());
+			out.writeLong(folderModified[dirId]);
+			out.writeBoolean(folderLeaf[dirId]);
+			out.writeInt(folderFiles[dirId]);
+			for (int i = grouping.starts()[dirId]; i < grouping.starts()[dirId + 1]; i++)
+			{
+				int entry = grouping.entries()[i];
+				out.writeUTF(files.name(entry));
+				out.writeInt(files.value(entry));
+			}
+		}
+	}
+}
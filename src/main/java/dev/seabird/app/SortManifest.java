@@ -0,0 +1,151 @@
+package dev.seabird.app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.format.DateTimeFormatter;
+
+import de.siegmar.fastcsv.writer.CsvWriter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-file record of a sort run, written as {@code sortManifest_<runId>.csv} next to the checklist
+ * index.
+ *
+ * <p>Each file gets one row once the sorter is done with it: where it came from, where it ended
+ * up, its creation date and the provider that found it, the matched checklist, what happened to
+ * it and the post-move work it received. Rows are appended as files finish and flushed every
+ * {@link #FLUSH_INTERVAL_RECORDS} rows or {@link #FLUSH_INTERVAL_MILLIS} ms, so other tools can
+ * follow the manifest while the run is going and nothing about a file is kept in memory.
+ *
+ * <p>Writes are thread-safe. A manifest that cannot be written is logged once and then ignored,
+ * so a full disk does not stop the sort.
+ */
+@Slf4j
+final class SortManifest implements Closeable
+{
+	static final int FLUSH_INTERVAL_RECORDS = 256;
+	static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+	/** What happened to a file. */
+	enum Outcome
+	{
+		/** Moved to its destination. */
+		moved,
+		/** A symbolic link to it was created at its destination. */
+		linked,
+		/** Left in place because its destination could not be taken. */
+		unchanged,
+		/** Removed, as its destination folder already held the same content. */
+		duplicate
+	}
+
+	private static final DateTimeFormatter dateDtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	private final Path file;
+	private final CsvWriter writer;
+	private int unflushed;
+	private long lastFlushMillis = System.currentTimeMillis();
+	private boolean failed;
+	private boolean closed;
+
+	private SortManifest(Path file, CsvWriter writer)
+	{
+		this.file = file;
+		this.writer = writer;
+	}
+
+	/**
+	 * Creates the manifest of a run and writes its header.
+	 *
+	 * @param dir   the folder receiving the run's reports
+	 * @param runId the run ID shared with the index and the run report
+	 * @return the open manifest
+	 * @throws IOException if the manifest cannot be created
+	 */
+	static SortManifest create(Path dir, long runId) throws IOException
+	{
+		Path file = dir.resolve("sortManifest_" + runId + ".csv");
+		CsvWriter writer = CsvWriter.builder().build(file, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		SortManifest manifest = new SortManifest(file, writer);
+		manifest.append("Source", "Destination", "Creation Date", "Date Source", "Checklist", "Outcome", "Post-Move Actions");
+		return manifest;
+	}
+
+	/** @return the manifest file */
+	Path file()
+	{
+		return file;
+	}
+
+	/**
+	 * Records a file the sorter is done with.
+	 *
+	 * @param source      the file as it was walked, with creation date and checklist
+	 * @param destination where the file is now, or the existing copy of a duplicate
+	 * @param outcome     what happened to the file
+	 * @param actions     the post-move work done or queued, separated by {@code ;}, empty if none
+	 */
+	synchronized void add(MediaFile source, Path destination, Outcome outcome, String actions)
+	{
+		append(source.source().toAbsolutePath().toString(),
+				destination.toAbsolutePath().toString(),
+				source.creationDt() != null ? source.creationDt().format(dateDtf) : "",
+				source.dateSource() != null ? source.dateSource() : "",
+				source.subId() != null ? source.subId() : "",
+				outcome.name(),
+				actions);
+	}
+
+	private void append(String... values)
+	{
+		if (failed || closed)
+			return;
+
+		try {
+			writer.writeRecord(values);
+			if (++unflushed >= FLUSH_INTERVAL_RECORDS || System.currentTimeMillis() - lastFlushMillis >= FLUSH_INTERVAL_MILLIS)
+				flush();
+		} catch (IOException | UncheckedIOException e) {
+			failed = true;
+			log.error("Could not write sort manifest {}, it is incomplete", file, e);
+		}
+	}
+
+	private void flush() throws IOException
+	{
+		writer.flush();
+		unflushed = 0;
+		lastFlushMillis = System.currentTimeMillis();
+	}
+
+	/** Flushes and closes the manifest. */
+	@Override
+	public synchronized void close()
+	{
+		if (closed)
+			return;
+		closed = true;
+		try {
+			writer.close();
+		} catch (IOException | UncheckedIOException e) {
+			log.warn("Could not close sort manifest {}", file, e);
+		}
+	}
+
+	/** Closes and deletes the manifest of a run that sorted nothing. */
+	synchronized void delete()
+	{
+		close();
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			log.warn("Could not delete sort manifest {}", file, e);
+		}
+	}
+}
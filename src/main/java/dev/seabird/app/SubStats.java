@@ -46,6 +46,15 @@ class SubStats
         return numAssetsLocal.incrementAndGet();
     }
     
+    /**
+     * Adds to the local asset count, e.g. the count carried over from an older export.
+     * 
+     * @param amount number of assets to add
+     */
+    public void addNumAssetsLocal(int amount) {
+        numAssetsLocal.addAndGet(amount);
+    }
+    
     /**
      * Increments the uploaded asset count.
      * 
@@ -64,6 +73,14 @@ class SubStats
         return date.format(indexDtf);
     }
 
+    /**
+     * Returns the checklist start time.
+     * @return start time
+     */
+    public LocalDateTime getStartTime() {
+        return date;
+    }
+
     /**
      * Returns the number of assets uploaded to eBird.
      * @return number of uploaded assets
@@ -1,28 +1,172 @@
 package dev.seabird.app;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.AppenderBase;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.scene.control.TextArea;
+import javafx.util.Duration;
 
 /**
  * Custom Logback appender that outputs log messages to a JavaFX {@link TextArea}.
- * Updates are performed on the JavaFX Application Thread for thread safety.
+ *
+ * <p>Logging threads never wait for the UI: each message is put into a lock-free ring buffer of
+ * the last {@link #MAX_LINES} lines. The JavaFX Application Thread drains the buffer
+ * {@link #FRAMES_PER_SECOND} times a second and appends everything new in one update. The text
+ * area keeps at most {@link #MAX_LINES} lines; older ones are dropped, from the buffer if the UI
+ * falls behind and from the text area as new lines arrive. The complete log is in the rolling
+ * log file configured in {@code logback.xml}.
+ *
+ * <p>The appender is not declared in {@code logback.xml}; the GUI attaches it with
+ * {@link #attach(TextArea)} once the toolkit is running, so headless runs never load JavaFX.
  */
-public class TextAreaAppender extends AppenderBase<ILoggingEvent> 
+public class TextAreaAppender extends AppenderBase<ILoggingEvent>
 {
-    private TextArea textArea;
-   
+    static final int MAX_LINES = 1 << 12;
+    static final int FRAMES_PER_SECOND = 10;
+
+    /** A buffered line, stamped with its sequence number so the reader can tell it is current. */
+    private record Line(long seq, String text) {}
+
+    private final TextArea textArea;
+    private final AtomicReferenceArray<Line> ring = new AtomicReferenceArray<>(MAX_LINES);
+    private final AtomicLong written = new AtomicLong();
+    private final Timeline drainer;
+
+    // owned by the JavaFX Application Thread
+    private long read;
+    private final int[] batchLengths = new int[MAX_LINES];
+    /** Lengths of the lines in the text area, oldest first, in a ring starting at {@code shownFirst}. */
+    private final int[] shownLengths = new int[MAX_LINES];
+    private int shownFirst;
+    private int shownCount;
+    private int shownChars;
+
+    /**
+     * @param textArea the text area to append to
+     */
+    public TextAreaAppender(TextArea textArea) {
+        this.textArea = textArea;
+        this.drainer = new Timeline(new KeyFrame(Duration.millis(1000.0 / FRAMES_PER_SECOND), _ -> drain()));
+        this.drainer.setCycleCount(Animation.INDEFINITE);
+    }
+
+    /**
+     * Creates an appender for the given text area and adds it to the root logger.
+     *
+     * @param textArea the text area to append to
+     * @return the started appender
+     */
+    public static TextAreaAppender attach(TextArea textArea) {
+        LoggerContext ctx = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+        TextAreaAppender appender = new TextAreaAppender(textArea);
+        appender.setContext(ctx);
+        appender.setName("textAreaAppender");
+        appender.start();
+
+        ctx.getLogger(Logger.ROOT_LOGGER_NAME).addAppender(appender);
+        return appender;
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        Platform.runLater(drainer::play);
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        Platform.runLater(drainer::stop);
+    }
+
     @Override
     protected void append(ILoggingEvent event) {
-        final String message = event.getFormattedMessage();
-        Platform.runLater(() -> textArea.appendText(message + System.lineSeparator()));
-    }
-   
-	@Override
-	public void start() 
-	{
-		this.textArea = MediaSorterApplication.OUTPUT_LOG;
-		super.start();
-	}	
+        long seq = written.getAndIncrement();
+        // only text the text area keeps as it is, so the tracked line lengths match its text
+        ring.set((int) (seq & (MAX_LINES - 1)), new Line(seq, displayable(event.getFormattedMessage()) + "\n"));
+    }
+
+    /**
+     * Removes the characters a {@link TextArea} drops when text is inserted: control characters
+     * other than {@code \n} and {@code \t}, and DEL. A carriage return becomes a line break
+     * unless it is followed by one, e.g. in FFmpeg progress output.
+     */
+    static String displayable(String message) {
+        int i = 0;
+        while (i < message.length() && !isDropped(message.charAt(i)))
+            i++;
+        if (i == message.length())
+            return message;
+
+        StringBuilder sb = new StringBuilder(message.length()).append(message, 0, i);
+        for (; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c == '\r') {
+                if (i + 1 == message.length() || message.charAt(i + 1) != '\n')
+                    sb.append('\n');
+            } else if (!isDropped(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isDropped(char c) {
+        return c == 0x7F || (c < 0x20 && c != '\n' && c != '\t');
+    }
+
+    /** Appends the lines logged since the last frame and drops the oldest beyond {@link #MAX_LINES}. */
+    private void drain() {
+        long end = written.get();
+        if (end - read > MAX_LINES)
+            read = end - MAX_LINES;
+
+        StringBuilder batch = new StringBuilder();
+        int batchLines = 0;
+        for (; read < end; read++) {
+            Line line = ring.get((int) (read & (MAX_LINES - 1)));
+            if (line == null || line.seq() < read)
+                break; // still being written, taken up in the next frame
+            if (line.seq() > read)
+                continue; // overwritten by a newer line
+            batch.append(line.text());
+            batchLengths[batchLines++] = line.text().length();
+        }
+        if (batchLines == 0)
+            return;
+
+        if (textArea.getLength() < shownChars) {
+            // cleared for a new run
+            shownFirst = 0;
+            shownCount = 0;
+            shownChars = 0;
+        }
+
+        int dropChars = 0;
+        while (shownCount + batchLines > MAX_LINES) {
+            dropChars += shownLengths[shownFirst];
+            shownFirst = (shownFirst + 1) % MAX_LINES;
+            shownCount--;
+        }
+        for (int i = 0; i < batchLines; i++) {
+            shownLengths[(shownFirst + shownCount) % MAX_LINES] = batchLengths[i];
+            shownCount++;
+        }
+        shownChars += batch.length() - dropChars;
+
+        textArea.appendText(batch.toString());
+        if (dropChars > 0)
+            textArea.deleteText(0, dropChars);
+    }
 }
@@ -0,0 +1,371 @@
+package dev.seabird.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves files to another file system, e.g. from an SD card to a NAS, where a move is really a
+ * copy followed by a delete.
+ *
+ * <p>Several files are copied at once. Each copy is written to a {@code .part} file next to the
+ * destination with {@link FileChannel#transferTo}, which the kernel can carry out without
+ * copying through user space. The copy is then verified. The size is always verified. With checksums enabled, the copy is made through a buffer while computing a
+ * CRC32C of the source, and the written file is read back and compared against it.
+ *
+ * <p>Sources are not deleted right away. Verified copies are collected into batches; a batch is
+ * flushed to disk with one {@code fsync} per file, each copy is renamed to its final name, and the
+ * directories are synced. Only then are the batch's sources deleted and its transfers completed,
+ * so a file under its final name is always on disk, even after a crash. A copy that fails is
+ * removed again and its source left in place.
+ *
+ * <p>Throughput is tracked per pair of source and destination file systems and logged by
+ * {@link #awaitAll()}.
+ */
+@Slf4j
+class TransferEngine implements AutoCloseable
+{
+	private static final int COPY_BUFFER_SIZE = 1 << 20;
+	private static final int SYNC_BATCH_FILES = 64;
+	private static final long SYNC_BATCH_BYTES = 256L << 20;
+	private static final int IN_FLIGHT_PER_THREAD = 2;
+	private static final String PART_SUFFIX = ".part";
+
+	/** A verified copy, still under its {@code .part} name, waiting for its batch to be synced. */
+	private record Copied(MediaFile source, Path part, Path target, CompletableFuture<Path> result) {}
+
+	/** Files and bytes copied between two file systems, and when. */
+	private static final class DeviceStats
+	{
+		final LongAdder files = new LongAdder();
+		final LongAdder bytes = new LongAdder();
+		final LongAccumulator firstStart = new LongAccumulator(Math::min, Long.MAX_VALUE);
+		final LongAccumulator lastEnd = new LongAccumulator(Math::max, Long.MIN_VALUE);
+	}
+
+	private static final ThreadLocal<ByteBuffer> copyBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(COPY_BUFFER_SIZE));
+
+	private final boolean verifyChecksum;
+	private final ExecutorService workers;
+	private final Semaphore inFlight;
+	private final RunMetrics.Stat copyStat;
+	private final RunMetrics.Stat syncStat;
+
+	private final Map<Path, FileStore> stores = new ConcurrentHashMap<>();
+	private final Map<String, DeviceStats> devices = new ConcurrentHashMap<>();
+	private final Queue<Future<?>> pendingCopies = new ConcurrentLinkedQueue<>();
+	private final LongAdder failures = new LongAdder();
+
+	private List<Copied> batch = new ArrayList<>();
+	private long batchBytes;
+
+	/**
+	 * @param threads        the number of files copied at once
+	 * @param verifyChecksum whether copies are verified with a checksum in addition to their size
+	 * @param metrics        receives the copy and sync timings
+	 */
+	TransferEngine(int threads, boolean verifyChecksum, RunMetrics metrics)
+	{
+		int numThreads = Math.max(1, threads);
+		this.verifyChecksum = verifyChecksum;
+		this.workers = Executors.newFixedThreadPool(numThreads, Thread.ofPlatform().name("transfer-", 0).daemon().factory());
+		this.inFlight = new Semaphore(numThreads * IN_FLIGHT_PER_THREAD);
+		this.copyStat = metrics.stat("transfer.copy");
+		this.syncStat = metrics.stat("transfer.sync");
+	}
+
+	private FileStore store(Path dir) throws IOException
+	{
+		FileStore store = stores.get(dir);
+		if (store == null)
+		{
+			store = Files.getFileStore(dir);
+			stores.put(dir, store);
+		}
+		return store;
+	}
+
+	/**
+	 * @param sourceDir an existing source directory
+	 * @param targetDir an existing destination directory
+	 * @return {@code true} if the directories are on different file systems
+	 * @throws IOException if a file system cannot be determined
+	 */
+	boolean crossesDevice(Path sourceDir, Path targetDir) throws IOException
+	{
+		return !store(sourceDir).equals(store(targetDir));
+	}
+
+	/**
+	 * Starts moving a file to another file system. Blocks while the maximum number of copies is
+	 * in progress.
+	 *
+	 * @param from the file to move
+	 * @param to   the destination, which must not exist
+	 * @return completes with {@code to} once the copy is synced and the source deleted, or with the
+	 *         source path if the copy failed
+	 * @throws IOException          if the file systems cannot be determined
+	 * @throws InterruptedException if interrupted while waiting for a free copy slot
+	 */
+	CompletableFuture<Path> transfer(MediaFile from, Path to) throws IOException, InterruptedException
+	{
+		FileStore sourceStore = store(from.path().getParent());
+		FileStore targetStore = store(to.getParent());
+		DeviceStats device = devices.computeIfAbsent(sourceStore.name() + " -> " + targetStore.name(), _ -> new DeviceStats());
+
+		CompletableFuture<Path> result = new CompletableFuture<>();
+		inFlight.acquire();
+		pendingCopies.add(workers.submit(() -> {
+			Path part = to.resolveSibling(to.getFileName() + PART_SUFFIX);
+			try {
+				copyAndVerify(from, part, device);
+			} catch (IOException | RuntimeException e) {
+				failures.increment();
+				log.error("Could not copy {} to {}. Source file unchanged.", from.path(), to.getParent(), e);
+				result.complete(from.path());
+				return;
+			} finally {
+				inFlight.release();
+			}
+			addToBatch(new Copied(from, part, to, result));
+		}));
+		return result;
+	}
+
+	private void copyAndVerify(MediaFile from, Path part, DeviceStats device) throws IOException
+	{
+		long start = System.nanoTime();
+		device.firstStart.accumulate(start);
+		try {
+			if (verifyChecksum)
+				copyWithChecksum(from, part);
+			else
+				copyZeroCopy(from, part);
+
+			Files.setLastModifiedTime(part, FileTime.from(from.modified()));
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(part);
+			throw e;
+		}
+
+		long end = System.nanoTime();
+		copyStat.record(end - start, from.size());
+		device.files.increment();
+		device.bytes.add(from.size());
+		device.lastEnd.accumulate(end);
+	}
+
+	private static void copyZeroCopy(MediaFile from, Path part) throws IOException
+	{
+		try (FileChannel in = FileChannel.open(from.path(), StandardOpenOption.READ);
+		     FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+		{
+			long size = in.size();
+			for (long pos = 0; pos < size; )
+			{
+				long n = in.transferTo(pos, size - pos, out);
+				if (n <= 0)
+					throw new IOException(from.path() + " shrank while being copied");
+				pos += n;
+			}
+			verifySize(from, in.size(), out.size());
+		}
+	}
+
+	private static void copyWithChecksum(MediaFile from, Path part) throws IOException
+	{
+		ByteBuffer buf = copyBuffer.get();
+		CRC32C sourceCrc = new CRC32C();
+		try (FileChannel in = FileChannel.open(from.path(), StandardOpenOption.READ);
+		     FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ))
+		{
+			for (buf.clear(); in.read(buf) >= 0; buf.clear())
+			{
+				buf.flip();
+				sourceCrc.update(buf.duplicate());
+				while (buf.hasRemaining())
+					out.write(buf);
+			}
+			verifySize(from, in.size(), out.size());
+
+			CRC32C copyCrc = new CRC32C();
+			out.position(0);
+			for (buf.clear(); out.read(buf) >= 0; buf.clear())
+			{
+				buf.flip();
+				copyCrc.update(buf);
+			}
+			if (copyCrc.getValue() != sourceCrc.getValue())
+				throw new IOException("Checksum of the copy of " + from.path() + " does not match");
+		}
+	}
+
+	private static void verifySize(MediaFile from, long sourceSize, long copySize) throws IOException
+	{
+		if (sourceSize != from.size() || copySize != from.size())
+			throw new IOException(String.format(Locale.ROOT, "Size of %s changed while copying: expected %d, source %d, copy %d",
+					from.path(), from.size(), sourceSize, copySize));
+	}
+
+	private void addToBatch(Copied copied)
+	{
+		List<Copied> full = null;
+		synchronized (this)
+		{
+			batch.add(copied);
+			batchBytes += copied.source().size();
+			if (batch.size() >= SYNC_BATCH_FILES || batchBytes >= SYNC_BATCH_BYTES)
+				full = takeBatch();
+		}
+
+		if (full != null)
+			sync(full);
+	}
+
+	private synchronized List<Copied> takeBatch()
+	{
+		List<Copied> taken = batch;
+		batch = new ArrayList<>();
+		batchBytes = 0;
+		return taken;
+	}
+
+	/**
+	 * Flushes a batch of copies to disk and renames them to their final names, then deletes their
+	 * sources and completes their transfers.
+	 */
+	private void sync(List<Copied> copies)
+	{
+		long start = System.nanoTime();
+		long bytes = 0;
+		List<Copied> synced = new ArrayList<>(copies.size());
+		Set<Path> dirs = new HashSet<>();
+
+		for (Copied c : copies)
+		{
+			try {
+				try (FileChannel ch = FileChannel.open(c.part(), StandardOpenOption.WRITE)) {
+					ch.force(true);
+				}
+				// only data already on disk gets the final name
+				Files.move(c.part(), c.target());
+				synced.add(c);
+				dirs.add(c.target().getParent());
+				bytes += c.source().size();
+			} catch (IOException e) {
+				failures.increment();
+				log.error("Could not sync {}. Source file unchanged.", c.target(), e);
+				deleteQuietly(c.part());
+				c.result().complete(c.source().path());
+			}
+		}
+
+		for (Path dir : dirs)
+			syncDirectory(dir);
+		syncStat.recordSince(start, bytes);
+
+		for (Copied c : synced)
+		{
+			try {
+				Files.delete(c.source().path());
+			} catch (IOException e) {
+				log.warn("Copied {} but could not delete the source", c.source().path(), e);
+			}
+			c.result().complete(c.target());
+		}
+	}
+
+	/** Persists the directory entries of new files; not supported by every platform. */
+	private static void syncDirectory(Path dir)
+	{
+		try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+			ch.force(true);
+		} catch (IOException e) {
+			log.debug("Could not sync directory {}", dir, e);
+		}
+	}
+
+	private static void deleteQuietly(Path file)
+	{
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			log.warn("Could not delete {}", file, e);
+		}
+	}
+
+	/**
+	 * Waits until every transfer started so far has completed, syncing the last partial batch,
+	 * then logs the throughput per pair of file systems.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	void awaitAll() throws InterruptedException
+	{
+		for (Future<?> copy = pendingCopies.poll(); copy != null; copy = pendingCopies.poll())
+		{
+			try {
+				copy.get();
+			} catch (ExecutionException e) {
+				log.error("File transfer failed", e.getCause());
+			}
+		}
+
+		List<Copied> rest = takeBatch();
+		if (!rest.isEmpty())
+			sync(rest);
+
+		logThroughput();
+	}
+
+	private void logThroughput()
+	{
+		devices.forEach((label, d) -> {
+			long files = d.files.sum();
+			if (files == 0)
+				return;
+			long bytes = d.bytes.sum();
+			double seconds = Math.max(1, d.lastEnd.get() - d.firstStart.get()) / 1e9;
+			double mb = bytes / (double) (1L << 20);
+			log.info("Copied {} files ({} MB) from {} in {} s, {} MB/s", files,
+					String.format(Locale.ROOT, "%.1f", mb), label,
+					String.format(Locale.ROOT, "%.1f", seconds),
+					String.format(Locale.ROOT, "%.1f", mb / seconds));
+		});
+
+		if (failures.sum() > 0)
+			log.error("{} file transfer(s) failed, their source files were left in place", failures.sum());
+	}
+
+	/** Stops copying. Copies that were not synced keep their source files. */
+	@Override
+	public void close()
+	{
+		workers.shutdownNow();
+	}
+}
@@ -0,0 +1,320 @@
+package dev.seabird.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.ZoneId;
+
+/**
+ * Reads the creation time of a video by walking its container structure with positional
+ * {@link FileChannel} reads.
+ *
+ * <p>Only box and chunk headers are read while walking, and payload-heavy sections such as the
+ * ISO-BMFF {@code mdat} box or the AVI {@code movi} list are skipped by seeking past them. The
+ * amount of data read is therefore a few kilobytes regardless of file size, even when the
+ * {@code moov} box sits at the end of the file.
+ *
+ * <ul>
+ *   <li><b>MP4/M4V/MOV</b> – {@code moov/mvhd} creation time, stored as seconds since
+ *       1904-01-01 UTC and converted to the local time zone, matching what metadata-extractor
+ *       reports for the same tag.</li>
+ *   <li><b>AVI</b> – the {@code IDIT} chunk if present, otherwise the first
+ *       {@code yyyy:MM:dd HH:mm:ss} timestamp found in a {@code strd} chunk.</li>
+ * </ul>
+ */
+final class VideoCreationDateReader
+{
+	private VideoCreationDateReader() {}
+
+	/** Seconds between the ISO-BMFF epoch (1904-01-01) and the Unix epoch. */
+	private static final long ISO_BMFF_EPOCH_OFFSET = 2_082_844_800L;
+
+	/** Upper bound on boxes or chunks visited per file, to stop on corrupt headers. */
+	private static final int MAX_HEADERS = 4096;
+	private static final int MAX_AVI_DEPTH = 4;
+	private static final int MAX_IDIT_SIZE = 64;
+	private static final int MAX_STRD_SIZE = 64 * 1024;
+
+	private static final int MOOV = fourCc("moov");
+	private static final int MVHD = fourCc("mvhd");
+
+	private static final int RIFF = fourCc("RIFF");
+	private static final int LIST = fourCc("LIST");
+	private static final int MOVI = fourCc("movi");
+	private static final int IDIT = fourCc("IDIT");
+	private static final int STRD = fourCc("strd");
+
+	private static final String[] MONTHS = { "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" };
+
+	private static int fourCc(String s)
+	{
+		byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+		return (b[0] & 0xff) << 24 | (b[1] & 0xff) << 16 | (b[2] & 0xff) << 8 | (b[3] & 0xff);
+	}
+
+	/**
+	 * Reads the creation time of a video file.
+	 *
+	 * @param f   the video file
+	 * @param ext the lowercase file extension
+	 * @return the creation time in the local time zone, or {@code null} if the container is not
+	 *         recognised or holds no usable creation time
+	 * @throws IOException if the file cannot be read
+	 */
+	static LocalDateTime findCreationDate(Path f, String ext) throws IOException
+	{
+		try (FileChannel ch = FileChannel.open(f, StandardOpenOption.READ))
+		{
+			return switch (ext) {
+				case "mp4", "m4v", "mov" -> readIsoBmff(ch);
+				case "avi" -> readAvi(ch);
+				default -> null;
+			};
+		}
+	}
+
+	private static ByteBuffer read(FileChannel ch, long pos, int len, ByteOrder order) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(len).order(order);
+		while (buf.hasRemaining())
+		{
+			if (ch.read(buf, pos + buf.position()) < 0)
+				break;
+		}
+		return buf.flip();
+	}
+
+	/**
+	 * Locates a child box of the given type between {@code start} and {@code end}.
+	 *
+	 * @return the payload start and box end offsets, or {@code null} if not found
+	 */
+	private static long[] findBox(FileChannel ch, long start, long end, int type) throws IOException
+	{
+		long pos = start;
+		for (int i = 0; i < MAX_HEADERS && pos + 8 <= end; i++)
+		{
+			ByteBuffer hdr = read(ch, pos, 16, ByteOrder.BIG_ENDIAN);
+			if (hdr.remaining() < 8)
+				return null;
+
+			long size = Integer.toUnsignedLong(hdr.getInt());
+			int boxType = hdr.getInt();
+			int headerLen = 8;
+
+			if (size == 1)
+			{
+				if (hdr.remaining() < 8)
+					return null;
+				size = hdr.getLong();
+				headerLen = 16;
+			}
+			else if (size == 0)
+				size = end - pos;
+
+			if (size < headerLen || pos + size > end)
+				return null;
+
+			if (boxType == type)
+				return new long[] { pos + headerLen, pos + size };
+
+			pos += size;
+		}
+		return null;
+	}
+
+	private static LocalDateTime readIsoBmff(FileChannel ch) throws IOException
+	{
+		long[] moov = findBox(ch, 0, ch.size(), MOOV);
+		if (moov == null)
+			return null;
+
+		long[] mvhd = findBox(ch, moov[0], moov[1], MVHD);
+		if (mvhd == null)
+			return null;
+
+		ByteBuffer buf = read(ch, mvhd[0], 12, ByteOrder.BIG_ENDIAN);
+		if (buf.remaining() < 8)
+			return null;
+
+		int version = buf.get() & 0xff;
+		buf.position(4); // skip flags
+
+		long creationTime;
+		if (version == 1)
+		{
+			if (buf.remaining() < 8)
+				return null;
+			creationTime = buf.getLong();
+		}
+		else
+			creationTime = Integer.toUnsignedLong(buf.getInt());
+
+		if (creationTime <= 0)
+			return null;
+
+		return LocalDateTime.ofInstant(Instant.ofEpochSecond(creationTime - ISO_BMFF_EPOCH_OFFSET), ZoneId.systemDefault());
+	}
+
+	private static LocalDateTime readAvi(FileChannel ch) throws IOException
+	{
+		ByteBuffer hdr = read(ch, 0, 12, ByteOrder.BIG_ENDIAN);
+		if (hdr.remaining() < 12 || hdr.getInt() != RIFF)
+			return null;
+
+		long riffEnd = Math.min(ch.size(), 8 + Integer.toUnsignedLong(Integer.reverseBytes(hdr.getInt())));
+		LocalDateTime[] strdTime = new LocalDateTime[1];
+
+		LocalDateTime iditTime = readAviChunks(ch, 12, riffEnd, 0, strdTime);
+		return iditTime != null ? iditTime : strdTime[0];
+	}
+
+	/**
+	 * Walks the RIFF chunks between {@code start} and {@code end}, descending into lists other
+	 * than {@code movi}. Returns the {@code IDIT} time as soon as one is found and remembers the
+	 * first {@code strd} time in {@code strdTime}.
+	 */
+	private static LocalDateTime readAviChunks(FileChannel ch, long start, long end, int depth, LocalDateTime[] strdTime) throws IOException
+	{
+		long pos = start;
+		for (int i = 0; i < MAX_HEADERS && pos + 8 <= end; i++)
+		{
+			ByteBuffer hdr = read(ch, pos, 12, ByteOrder.BIG_ENDIAN);
+			if (hdr.remaining() < 8)
+				return null;
+
+			int chunkId = hdr.getInt();
+			long size = Integer.toUnsignedLong(Integer.reverseBytes(hdr.getInt()));
+			long payload = pos + 8;
+
+			if (chunkId == LIST)
+			{
+				if (hdr.remaining() < 4)
+					return null;
+				int listType = hdr.getInt();
+				if (listType != MOVI && depth < MAX_AVI_DEPTH)
+				{
+					LocalDateTime t = readAviChunks(ch, payload + 4, Math.min(end, payload + size), depth + 1, strdTime);
+					if (t != null)
+						return t;
+				}
+			}
+			else if (chunkId == IDIT)
+			{
+				ByteBuffer data = read(ch, payload, (int) Math.min(size, MAX_IDIT_SIZE), ByteOrder.BIG_ENDIAN);
+				LocalDateTime t = parseIdit(StandardCharsets.US_ASCII.decode(data).toString());
+				if (t != null)
+					return t;
+			}
+			else if (chunkId == STRD && strdTime[0] == null)
+			{
+				ByteBuffer data = read(ch, payload, (int) Math.min(size, MAX_STRD_SIZE), ByteOrder.BIG_ENDIAN);
+				strdTime[0] = scanExifTimestamp(data);
+			}
+
+			pos = payload + size + (size & 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Parses an {@code IDIT} value, either in C {@code ctime} form ({@code THU OCT 21 12:34:56 2010})
+	 * or in EXIF form ({@code 2010:10:21 12:34:56}).
+	 */
+	private static LocalDateTime parseIdit(String s)
+	{
+		String value = s.replace('\0', ' ').trim();
+
+		LocalDateTime exifTime = scanExifTimestamp(ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII)));
+		if (exifTime != null)
+			return exifTime;
+
+		String[] parts = value.split("\\s+");
+		if (parts.length != 5)
+			return null;
+
+		int month = -1;
+		for (int m = 0; m < MONTHS.length; m++)
+		{
+			if (MONTHS[m].equalsIgnoreCase(parts[1]))
+				month = m + 1;
+		}
+
+		String[] hms = parts[3].split(":");
+		if (month < 0 || hms.length != 3)
+			return null;
+
+		return of(parseInt(parts[4]), month, parseInt(parts[2]), parseInt(hms[0]), parseInt(hms[1]), parseInt(hms[2]));
+	}
+
+	private static int parseInt(String s)
+	{
+		if (s.isEmpty() || s.length() > 4)
+			return -1;
+
+		int v = 0;
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			v = v * 10 + (c - '0');
+		}
+		return v;
+	}
+
+	/** Finds the first {@code yyyy:MM:dd HH:mm:ss} timestamp in the buffer. */
+	private static LocalDateTime scanExifTimestamp(ByteBuffer data)
+	{
+		final String template = "dddd:dd:dd dd:dd:dd";
+		int limit = data.limit() - template.length();
+
+		for (int start = data.position(); start <= limit; start++)
+		{
+			int k = 0;
+			while (k < template.length())
+			{
+				byte b = data.get(start + k);
+				boolean ok = template.charAt(k) == 'd' ? b >= '0' && b <= '9' : b == template.charAt(k);
+				if (!ok)
+					break;
+				k++;
+			}
+
+			if (k == template.length())
+			{
+				LocalDateTime t = of(digits(data, start, 4), digits(data, start + 5, 2), digits(data, start + 8, 2),
+						digits(data, start + 11, 2), digits(data, start + 14, 2), digits(data, start + 17, 2));
+				if (t != null)
+					return t;
+			}
+		}
+		return null;
+	}
+
+	private static int digits(ByteBuffer data, int pos, int len)
+	{
+		int v = 0;
+		for (int i = 0; i < len; i++)
+			v = v * 10 + (data.get(pos + i) - '0');
+		return v;
+	}
+
+	private static LocalDateTime of(int year, int month, int day, int hour, int minute, int second)
+	{
+		if (year < 1900 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59)
+			return null;
+
+		if (day > Year.of(year).atMonth(month).lengthOfMonth())
+			return null;
+
+		return LocalDateTime.of(year, month, day, hour, minute, second);
+	}
+}
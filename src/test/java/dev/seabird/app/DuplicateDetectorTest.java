@@ -0,0 +1,225 @@
+package dev.seabird.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * {@link DuplicateDetector} decides when a source file is deleted as a duplicate, so a file must
+ * only be reported as one if its whole content matches. The stage counts show which of the size,
+ * partial and full comparisons were needed.
+ */
+class DuplicateDetectorTest
+{
+	/** Larger than the head and tail blocks the partial hash covers together. */
+	private static final int SIZE = 3 * 64 * 1024 + 100;
+
+	@TempDir
+	Path tmp;
+
+	private Path cards;
+	private Path runDir;
+	private Path libraryDir;
+	private DestinationCache destinations;
+	private RunMetrics metrics;
+	private DuplicateDetector detector;
+
+	@BeforeEach
+	void createFolders() throws IOException
+	{
+		cards = Files.createDirectories(tmp.resolve("cards"));
+		runDir = Files.createDirectories(tmp.resolve("ebird_1/S1"));
+		libraryDir = tmp.resolve("ebird/S1");
+		destinations = new DestinationCache(FolderGroup.date);
+		metrics = new RunMetrics();
+		detector = detector(_ -> null);
+	}
+
+	@AfterEach
+	void close()
+	{
+		detector.close();
+	}
+
+	private DuplicateDetector detector(Function<Path, Path> mergeTargetOf)
+	{
+		if (detector != null)
+			detector.close();
+		return new DuplicateDetector(destinations, mergeTargetOf, metrics);
+	}
+
+	private static byte[] content(long seed)
+	{
+		byte[] bytes = new byte[SIZE];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static MediaFile walked(Path file) throws IOException
+	{
+		return MediaFile.of(file, Files.readAttributes(file, BasicFileAttributes.class), false);
+	}
+
+	/** Writes a file into a destination folder and records its name as taken, as the move stage does. */
+	private Path placed(Path dir, String name, byte[] content) throws IOException
+	{
+		Files.createDirectories(dir);
+		Path file = Files.write(dir.resolve(name), content);
+		destinations.markTaken(file);
+		return file;
+	}
+
+	private long partialHashes()
+	{
+		return metrics.stat("duplicates.partialHash").count();
+	}
+
+	private long fullHashes()
+	{
+		return metrics.stat("duplicates.fullHash").count();
+	}
+
+	@Test
+	void identicalContentIsDuplicate() throws Exception
+	{
+		Path kept = placed(runDir, "IMG_0001.JPG", content(1));
+		MediaFile file = walked(Files.write(cards.resolve("IMG_0001 copy.JPG"), content(1)));
+
+		DuplicateDetector.Resolution r = detector.resolve(file, runDir.resolve("IMG_0001 copy.JPG"));
+		assertTrue(r.isDuplicate());
+		assertEquals(kept, r.target());
+		assertEquals(2, fullHashes());
+	}
+
+	@Test
+	void otherSizeIsNotHashed() throws Exception
+	{
+		placed(runDir, "IMG_0001.JPG", Arrays.copyOf(content(1), SIZE - 1));
+		MediaFile file = walked(Files.write(cards.resolve("IMG_0002.JPG"), content(1)));
+
+		DuplicateDetector.Resolution r = detector.resolve(file, runDir.resolve("IMG_0002.JPG"));
+		assertFalse(r.isDuplicate());
+		assertEquals(runDir.resolve("IMG_0002.JPG"), r.target());
+		assertEquals(0, partialHashes());
+		assertEquals(0, fullHashes());
+	}
+
+	@Test
+	void otherHeadIsRuledOutByPartialHash() throws Exception
+	{
+		byte[] other = content(1);
+		other[10] ^= 1;
+		placed(runDir, "IMG_0001.JPG", other);
+		MediaFile file = walked(Files.write(cards.resolve("IMG_0002.JPG"), content(1)));
+
+		assertFalse(detector.resolve(file, runDir.resolve("IMG_0002.JPG")).isDuplicate());
+		assertEquals(2, partialHashes());
+		assertEquals(0, fullHashes());
+	}
+
+	@Test
+	void sameHeadAndTailButOtherMiddleIsNotDuplicate() throws Exception
+	{
+		byte[] other = content(1);
+		other[SIZE / 2] ^= 1;
+		placed(runDir, "IMG_0001.JPG", other);
+		MediaFile file = walked(Files.write(cards.resolve("IMG_0002.JPG"), content(1)));
+
+		DuplicateDetector.Resolution r = detector.resolve(file, runDir.resolve("IMG_0002.JPG"));
+		assertFalse(r.isDuplicate());
+		assertEquals(runDir.resolve("IMG_0002.JPG"), r.target());
+		assertEquals(2, fullHashes());
+	}
+
+	@Test
+	void nameTakenByOtherContentGetsNextFreeNumber() throws Exception
+	{
+		placed(runDir, "IMG_0001.JPG", content(1));
+		placed(runDir, "IMG_0001_1.JPG", content(2));
+		MediaFile file = walked(Files.write(cards.resolve("IMG_0001.JPG"), content(3)));
+
+		DuplicateDetector.Resolution r = detector.resolve(file, runDir.resolve("IMG_0001.JPG"));
+		assertFalse(r.isDuplicate());
+		assertEquals(runDir.resolve("IMG_0001_2.JPG"), r.target());
+	}
+
+	@Test
+	void placedFileIsComparedWithLaterFiles() throws Exception
+	{
+		Path first = Files.write(Files.createDirectories(cards.resolve("day1")).resolve("IMG_0001.JPG"), content(1));
+		Path placedAt = runDir.resolve("IMG_0001.JPG");
+		assertFalse(detector.resolve(walked(first), placedAt).isDuplicate());
+		Files.move(first, placedAt);
+		destinations.markTaken(placedAt);
+		detector.added(first, placedAt, SIZE);
+
+		MediaFile second = walked(Files.write(cards.resolve("IMG_0001.JPG"), content(1)));
+		DuplicateDetector.Resolution r = detector.resolve(second, placedAt);
+		assertTrue(r.isDuplicate());
+		assertEquals(placedAt, r.target());
+	}
+
+	@Test
+	void fileIsNotDuplicateOfItself() throws Exception
+	{
+		Path own = placed(runDir, "IMG_0001.JPG", content(1));
+		Path link = Files.createLink(runDir.resolve("IMG_0001 link.JPG"), own);
+		destinations.markTaken(link);
+
+		DuplicateDetector.Resolution r = detector.resolve(walked(own), own);
+		assertFalse(r.isDuplicate());
+		assertEquals(0, fullHashes());
+	}
+
+	@Test
+	void duplicateInMergeTargetIsFound() throws Exception
+	{
+		detector = detector(dir -> dir.equals(runDir) ? libraryDir : null);
+		Files.createDirectories(libraryDir);
+		Path kept = Files.write(libraryDir.resolve("IMG_0001.JPG"), content(1));
+		MediaFile file = walked(Files.write(cards.resolve("IMG_0009.JPG"), content(1)));
+
+		DuplicateDetector.Resolution r = detector.resolve(file, runDir.resolve("IMG_0009.JPG"));
+		assertTrue(r.isDuplicate());
+		assertEquals(kept, r.target());
+	}
+
+	@Test
+	void nameTakenInMergeTargetIsNotChosen() throws Exception
+	{
+		detector = detector(dir -> dir.equals(runDir) ? libraryDir : null);
+		Files.createDirectories(libraryDir);
+		Files.write(libraryDir.resolve("IMG_0001.JPG"), content(1));
+		MediaFile file = walked(Files.write(cards.resolve("IMG_0001.JPG"), content(2)));
+
+		assertFalse(detector.isFree(runDir.resolve("IMG_0001.JPG")));
+		DuplicateDetector.Resolution r = detector.resolve(file, runDir.resolve("IMG_0001.JPG"));
+		assertFalse(r.isDuplicate());
+		assertEquals(runDir.resolve("IMG_0001_1.JPG"), r.target());
+	}
+
+	@Test
+	void fileInMergeTargetKeepsItsName() throws Exception
+	{
+		detector = detector(dir -> dir.equals(runDir) ? libraryDir : null);
+		Files.createDirectories(libraryDir);
+		Path own = Files.write(libraryDir.resolve("IMG_0001.JPG"), content(1));
+
+		DuplicateDetector.Resolution r = detector.resolve(walked(own), runDir.resolve("IMG_0001.JPG"));
+		assertFalse(r.isDuplicate());
+		assertEquals(runDir.resolve("IMG_0001.JPG"), r.target());
+	}
+}
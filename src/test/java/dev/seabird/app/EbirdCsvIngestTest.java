@@ -0,0 +1,98 @@
+package dev.seabird.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The parallel path of {@link EbirdCsvIngest} must give the same table as a serial parse with
+ * the library, whatever the number of chunks the export is cut into.
+ */
+class EbirdCsvIngestTest
+{
+	private static final String HEADER = "Submission ID,Common Name,Scientific Name,Taxonomic Order,Count,State/Province,County,"
+			+ "Location ID,Location,Latitude,Longitude,Date,Time,Protocol,Duration (Min),All Obs Reported,Distance Traveled (km),"
+			+ "Area Covered (ha),Number of Observers,Breeding Code,Observation Details,Checklist Comments,ML Catalog Numbers\n";
+
+	@TempDir
+	Path tmp;
+
+	/**
+	 * Writes an export whose rows exercise the cases a record split can get wrong: quoted fields
+	 * with newlines, commas and escaped quotes, rows of one checklist far apart, 12 and 24 hour
+	 * times, rows without a duration, and asset lists.
+	 */
+	private Path export(int checklists, int rows, boolean bom) throws IOException
+	{
+		Random rnd = new Random(checklists * 31L + rows);
+		StringBuilder csv = new StringBuilder(bom ? "\uFEFF" : "").append(HEADER);
+		for (int r = 0; r < rows; r++)
+		{
+			int sub = rnd.nextInt(checklists);
+			String time = sub % 3 == 0 ? (1 + sub % 12) + ":" + String.format("%02d", sub % 60) + (sub % 2 == 0 ? " AM" : " PM")
+					: (sub % 24) + ":" + String.format("%02d", sub % 60);
+			String duration = sub % 7 == 0 ? "" : String.valueOf(5 + sub % 180);
+			String comments = switch (r % 5)
+			{
+				case 0 -> "\"Heard, not seen\"";
+				case 1 -> "\"First line\nsecond line with \"\"quotes\"\"\r\nthird\"";
+				case 2 -> "\"\"\"\"";
+				default -> "";
+			};
+			String assets = r % 4 == 0 ? "ML" + r + " ML" + (r + 1) : r % 4 == 1 ? "ML" + r : "";
+			csv.append('S').append(sub).append(",Robin,Turdus migratorius,1,").append(1 + r % 9)
+					.append(",US-CA,Marin,L").append(sub).append(",\"Park ").append(sub).append(", north\",38.1,-122.9,")
+					.append(String.format("2024-%02d-%02d", 1 + sub % 12, 1 + sub % 28)).append(',').append(time)
+					.append(",Traveling,").append(duration).append(",1,1.2,,2,,")
+					.append(comments).append(',').append(comments).append(',').append(assets).append('\n');
+		}
+		Path file = tmp.resolve("MyEBirdData.csv");
+		Files.writeString(file, csv, StandardCharsets.UTF_8);
+		return file;
+	}
+
+	private static List<String> describe(ChecklistTable table)
+	{
+		return table.checklists().stream()
+				.map(c -> String.join("|", c.subId(), c.stats().getStartTime().toString(), c.end().toString(),
+						c.stats().getSubnational1Code(), c.stats().getCounty(), c.stats().getLocName(),
+						String.valueOf(c.stats().getNumAssetsUploaded())))
+				.toList();
+	}
+
+	@Test
+	void parallelParseMatchesSerialParse() throws IOException
+	{
+		Path csv = export(300, 5000, false);
+		List<String> serial = describe(EbirdCsvIngest.parse(csv, 1));
+		assertFalse(serial.isEmpty());
+
+		for (int threads : new int[] { 2, 3, 4, 7, 16 })
+			assertEquals(serial, describe(EbirdCsvIngest.parse(csv, threads, 0)), threads + " threads");
+	}
+
+	@Test
+	void parallelParseKeepsByteOrderMarkOfHeader() throws IOException
+	{
+		Path csv = export(50, 800, true);
+		List<String> serial = describe(EbirdCsvIngest.parse(csv, 1));
+		assertFalse(serial.isEmpty());
+		assertEquals(serial, describe(EbirdCsvIngest.parse(csv, 4, 0)));
+	}
+
+	@Test
+	void moreChunksThanRecords() throws IOException
+	{
+		Path csv = export(3, 3, false);
+		assertEquals(describe(EbirdCsvIngest.parse(csv, 1)), describe(EbirdCsvIngest.parse(csv, 16, 0)));
+	}
+}
@@ -0,0 +1,145 @@
+package dev.seabird.app;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.imaging.ImagingException;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * {@link ExifDateTimePatcher} writes into users' photos, so these tests check that exactly the 19
+ * bytes of the {@code DateTimeOriginal} value change, and that links are written through.
+ */
+class ExifDateTimePatcherTest
+{
+	private static final String OLD_DATE = "2024:05:01 07:30:00";
+	private static final String NEW_DATE = "2023:12:31 23:59:58";
+
+	@TempDir
+	Path tmp;
+
+	private static byte[] plainJpeg() throws IOException
+	{
+		Random rnd = new Random(6);
+		BufferedImage img = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < img.getHeight(); y++)
+		{
+			for (int x = 0; x < img.getWidth(); x++)
+				img.setRGB(x, y, rnd.nextInt());
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(img, "jpg", out);
+		return out.toByteArray();
+	}
+
+	private Path jpegWithDate(String name) throws IOException, ImagingException
+	{
+		TiffOutputSet outputSet = new TiffOutputSet();
+		outputSet.getOrCreateExifDirectory().add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, OLD_DATE);
+
+		Path file = tmp.resolve(name);
+		try (OutputStream out = Files.newOutputStream(file))
+		{
+			new ExifRewriter().updateExifMetadataLossless(plainJpeg(), out, outputSet);
+		}
+		return file;
+	}
+
+	/** @return the position of the only occurrence of {@code value} in {@code bytes} */
+	private static int indexOf(byte[] bytes, String value)
+	{
+		byte[] v = value.getBytes(StandardCharsets.US_ASCII);
+		int found = -1;
+		for (int i = 0; i + v.length <= bytes.length; i++)
+		{
+			if (Arrays.equals(bytes, i, i + v.length, v, 0, v.length))
+			{
+				assertEquals(-1, found, value + " occurs twice");
+				found = i;
+			}
+		}
+		assertTrue(found >= 0, value + " not found");
+		return found;
+	}
+
+	/** Asserts that {@code after} is {@code before} with the old date replaced by the new one. */
+	private static void assertOnlyDateChanged(byte[] before, byte[] after)
+	{
+		int pos = indexOf(before, OLD_DATE);
+		byte[] expected = before.clone();
+		System.arraycopy(NEW_DATE.getBytes(StandardCharsets.US_ASCII), 0, expected, pos, NEW_DATE.length());
+		assertArrayEquals(expected, after);
+	}
+
+	@Test
+	void patchChangesOnlyTheDateBytes() throws IOException, ImagingException
+	{
+		Path jpeg = jpegWithDate("a.jpg");
+		byte[] before = Files.readAllBytes(jpeg);
+
+		assertTrue(ExifDateTimePatcher.patchDateTimeOriginal(jpeg, NEW_DATE));
+		assertOnlyDateChanged(before, Files.readAllBytes(jpeg));
+	}
+
+	@Test
+	void patchWritesThroughSymbolicLink() throws IOException, ImagingException
+	{
+		Path target = jpegWithDate("a.jpg");
+		byte[] before = Files.readAllBytes(target);
+		Path link = Files.createSymbolicLink(tmp.resolve("link.jpg"), target);
+
+		assertTrue(ExifDateTimePatcher.patchDateTimeOriginal(link, NEW_DATE));
+		assertTrue(Files.isSymbolicLink(link));
+		assertOnlyDateChanged(before, Files.readAllBytes(target));
+	}
+
+	@Test
+	void patchKeepsHardLinksTogether() throws IOException, ImagingException
+	{
+		Path original = jpegWithDate("a.jpg");
+		byte[] before = Files.readAllBytes(original);
+		Path link = Files.createLink(tmp.resolve("b.jpg"), original);
+
+		assertTrue(ExifDateTimePatcher.patchDateTimeOriginal(link, NEW_DATE));
+		assertTrue(Files.isSameFile(original, link));
+		assertOnlyDateChanged(before, Files.readAllBytes(original));
+	}
+
+	@Test
+	void jpegWithoutDateIsLeftAlone() throws IOException
+	{
+		Path jpeg = Files.write(tmp.resolve("plain.jpg"), plainJpeg());
+		byte[] before = Files.readAllBytes(jpeg);
+
+		assertFalse(ExifDateTimePatcher.patchDateTimeOriginal(jpeg, NEW_DATE));
+		assertArrayEquals(before, Files.readAllBytes(jpeg));
+	}
+
+	@Test
+	void valueOfOtherLengthIsRejected() throws IOException, ImagingException
+	{
+		Path jpeg = jpegWithDate("a.jpg");
+		byte[] before = Files.readAllBytes(jpeg);
+
+		assertFalse(ExifDateTimePatcher.patchDateTimeOriginal(jpeg, "2023:12:31 23:59"));
+		assertArrayEquals(before, Files.readAllBytes(jpeg));
+	}
+}
@@ -0,0 +1,239 @@
+package dev.seabird.app;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Recovery of interrupted runs from their {@link MoveJournal}: what {@link MoveJournal.Recovery#reconcile()}
+ * makes of moves whose outcome was not recorded, and what {@link MoveJournal.Recovery#rollBack()}
+ * restores.
+ */
+class MoveJournalTest
+{
+	private static final LocalDateTime CREATED = LocalDateTime.of(2024, 5, 4, 7, 30);
+
+	@TempDir
+	Path tmp;
+
+	private Path media;
+	private Path outputDir;
+	private Path library;
+
+	@BeforeEach
+	void createFolders() throws IOException
+	{
+		media = Files.createDirectories(tmp.resolve("media"));
+		outputDir = Files.createDirectories(media.resolve(MediaSortUtils.OUTPUT_FOLDER_NAME + "_1"));
+		library = Files.createDirectories(tmp.resolve("library"));
+	}
+
+	private Path write(Path file, String content) throws IOException
+	{
+		Files.createDirectories(file.getParent());
+		return Files.writeString(file, content);
+	}
+
+	private static MediaFile walked(Path file) throws IOException
+	{
+		return new MediaFile(file, file, Files.size(file), Files.getLastModifiedTime(file).toInstant(), 0, "jpg",
+				CREATED, null, "S1");
+	}
+
+	private MoveJournal.Recovery recover() throws IOException
+	{
+		MoveJournal.Recovery recovery = MoveJournal.findUnfinished(media);
+		assertNotNull(recovery);
+		return recovery;
+	}
+
+	@Test
+	void recordedMoveIsKnown() throws IOException
+	{
+		Path source = write(media.resolve("a.jpg"), "aaaa");
+		Path target = outputDir.resolve("S1/a.jpg");
+		try (MoveJournal journal = MoveJournal.create(outputDir))
+		{
+			journal.planned(walked(source), target);
+			Files.createDirectories(target.getParent());
+			Files.move(source, target);
+			journal.moved(source, target);
+		}
+
+		List<MoveJournal.Entry> known = recover().reconcile();
+		assertEquals(1, known.size());
+		assertEquals(target, known.get(0).placed());
+		assertTrue(known.get(0).isMoved());
+		assertFalse(known.get(0).finished());
+	}
+
+	@Test
+	void unrecordedCopyWithSameContentDeletesSource() throws IOException
+	{
+		Path source = write(media.resolve("a.jpg"), "aaaa");
+		Path target = write(outputDir.resolve("S1/a.jpg"), "aaaa");
+		try (MoveJournal journal = MoveJournal.create(outputDir))
+		{
+			journal.planned(walked(source), target);
+		}
+
+		List<MoveJournal.Entry> known = recover().reconcile();
+		assertEquals(1, known.size());
+		assertEquals(target, known.get(0).placed());
+		assertFalse(Files.exists(source));
+		assertEquals("aaaa", Files.readString(target));
+	}
+
+	@Test
+	void unrecordedCopyOfSameSizeButOtherContentKeepsSource() throws IOException
+	{
+		Path source = write(media.resolve("a.jpg"), "aaaa");
+		Path target = write(outputDir.resolve("S1/a.jpg"), "aa\0\0");
+		try (MoveJournal journal = MoveJournal.create(outputDir))
+		{
+			journal.planned(walked(source), target);
+		}
+
+		assertTrue(recover().reconcile().isEmpty());
+		assertEquals("aaaa", Files.readString(source));
+		assertFalse(Files.exists(target));
+	}
+
+	@Test
+	void unrecordedMoveWithoutSourceIsKnown() throws IOException
+	{
+		Path source = write(media.resolve("a.jpg"), "aaaa");
+		Path target = outputDir.resolve("S1/a.jpg");
+		try (MoveJournal journal = MoveJournal.create(outputDir))
+		{
+			journal.planned(walked(source), target);
+			Files.createDirectories(target.getParent());
+			Files.move(source, target);
+		}
+
+		List<MoveJournal.Entry> known = recover().reconcile();
+		assertEquals(1, known.size());
+		assertEquals(target, known.get(0).placed());
+	}
+
+	@Test
+	void partialCopyIsRemoved() throws IOException
+	{
+		Path source = write(media.resolve("a.jpg"), "aaaa");
+		Path target = outputDir.resolve("S1/a.jpg");
+		Path part = write(outputDir.resolve("S1/a.jpg.part"), "aa");
+		try (MoveJournal journal = MoveJournal.create(outputDir))
+		{
+			journal.planned(walked(source), target);
+		}
+
+		assertTrue(recover().reconcile().isEmpty());
+		assertFalse(Files.exists(part));
+		assertTrue(Files.exists(source));
+	}
+
+	@Test
+	void duplicateWhoseSourceWasNotDeletedIsLeftToTheWalk() throws IOException
+	{
+		Path source = write(media.resolve("a.jpg"), "aaaa");
+		Path existing = write(library.resolve("S1/a.jpg"), "aaaa");
+		try (MoveJournal journal = MoveJournal.create(outputDir))
+		{
+			journal.duplicate(walked(source), existing, existing);
+		}
+
+		assertTrue(recover().reconcile().isEmpty());
+		assertTrue(Files.exists(source));
+		assertTrue(Files.exists(existing));
+	}
+
+	@Test
+	void rollBackMovesFilesBack() throws IOException
+	{
+		Path source = write(media.resolve("cards/a.jpg"), "aaaa");
+		Path target = outputDir.resolve("S1/a.jpg");
+		try (MoveJournal journal = MoveJournal.create(outputDir))
+		{
+			journal.planned(walked(source), target);
+			Files.createDirectories(target.getParent());
+			Files.move(source, target);
+			journal.moved(source, target);
+			journal.finished(target);
+		}
+
+		MoveJournal.Recovery recovery = recover();
+		assertEquals(1, recovery.rollBack());
+		assertEquals("aaaa", Files.readString(source));
+		assertFalse(Files.exists(outputDir));
+		assertFalse(Files.exists(recovery.journalFile()));
+	}
+
+	@Test
+	void rollBackCopiesDuplicateAndKeepsLibraryFile() throws IOException
+	{
+		Path source = write(media.resolve("a.jpg"), "aaaa");
+		Path existing = write(library.resolve("S1/a.jpg"), "aaaa");
+		try (MoveJournal journal = MoveJournal.create(outputDir))
+		{
+			journal.duplicate(walked(source), existing, existing);
+			Files.delete(source);
+		}
+
+		assertEquals(1, recover().rollBack());
+		assertEquals("aaaa", Files.readString(source));
+		assertEquals("aaaa", Files.readString(existing));
+	}
+
+	@Test
+	void rollBackMovesHardLinkOfDuplicateBack() throws IOException
+	{
+		Path source = write(media.resolve("b.jpg"), "aaaa");
+		Path existing = write(outputDir.resolve("S1/a.jpg"), "aaaa");
+		Path link = Files.createLink(outputDir.resolve("S1/b.jpg"), existing);
+		try (MoveJournal journal = MoveJournal.create(outputDir))
+		{
+			journal.duplicate(walked(source), existing, link);
+			Files.delete(source);
+		}
+
+		assertEquals(1, recover().rollBack());
+		assertEquals("aaaa", Files.readString(source));
+		assertFalse(Files.exists(link));
+		assertArrayEquals("aaaa".getBytes(), Files.readAllBytes(existing));
+	}
+
+	@Test
+	void rollBackRestoresRecordedMoveBeforeDuplicateOfIt() throws IOException
+	{
+		Path first = write(media.resolve("a.jpg"), "aaaa");
+		Path second = write(media.resolve("copy/a.jpg"), "aaaa");
+		Path target = outputDir.resolve("S1/a.jpg");
+		try (MoveJournal journal = MoveJournal.create(outputDir))
+		{
+			journal.planned(walked(first), target);
+			Files.createDirectories(target.getParent());
+			Files.move(first, target);
+			journal.moved(first, target);
+			journal.finished(target);
+			journal.duplicate(walked(second), target, target);
+			Files.delete(second);
+		}
+
+		assertEquals(2, recover().rollBack());
+		assertEquals("aaaa", Files.readString(first));
+		assertEquals("aaaa", Files.readString(second));
+		assertFalse(Files.exists(outputDir));
+	}
+}
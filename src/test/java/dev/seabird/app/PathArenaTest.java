@@ -0,0 +1,156 @@
+package dev.seabird.app;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Lookups in {@link PathArena} across removals, compaction and growth of its hash table, and the
+ * order {@link PathArena#sortByName(int[])} puts names in.
+ */
+class PathArenaTest
+{
+	private static final Path DIR_A = Path.of("library", "S1");
+	private static final Path DIR_B = Path.of("library", "S2");
+
+	@Test
+	void addIsIdempotentPerFolder()
+	{
+		PathArena arena = new PathArena();
+		int a = arena.dirId(DIR_A);
+		int b = arena.dirId(DIR_B);
+
+		int first = arena.add(a, "IMG_0001.JPG");
+		assertEquals(first, arena.add(a, "IMG_0001.JPG"));
+		int other = arena.add(b, "IMG_0001.JPG");
+		assertTrue(other != first);
+		assertEquals(2, arena.liveCount());
+		assertEquals(DIR_B.resolve("IMG_0001.JPG"), arena.path(other));
+		assertEquals(-1, arena.find(a, "IMG_0002.JPG"));
+	}
+
+	@Test
+	void removedEntryIsNotFoundAndCanBeAddedAgain()
+	{
+		PathArena arena = new PathArena();
+		int dir = arena.dirId(DIR_A);
+		int a = arena.add(dir, "a.jpg");
+		int b = arena.add(dir, "b.jpg");
+		arena.add(dir, "c.jpg");
+
+		arena.remove(b);
+		assertFalse(arena.isLive(b));
+		assertEquals(-1, arena.find(dir, "b.jpg"));
+		assertEquals(a, arena.find(dir, "a.jpg"));
+		assertEquals(2, arena.find(dir, "c.jpg"));
+
+		int again = arena.add(dir, "b.jpg");
+		assertTrue(arena.isLive(again));
+		assertEquals(again, arena.find(dir, "b.jpg"));
+		assertEquals(3, arena.liveCount());
+	}
+
+	@Test
+	void compactKeepsNamesValuesAndOrder()
+	{
+		PathArena arena = new PathArena();
+		int dirA = arena.dirId(DIR_A);
+		int dirB = arena.dirId(DIR_B);
+		List<String> kept = new ArrayList<>();
+		for (int i = 0; i < 100; i++)
+		{
+			String name = "IMG_" + i + "_" + "x".repeat(i % 7) + ".JPG";
+			int entry = arena.add(i % 2 == 0 ? dirA : dirB, name);
+			arena.setValue(entry, i);
+			if (i % 3 == 0)
+				arena.remove(entry);
+			else
+				kept.add(name);
+		}
+		assertEquals(34, arena.removedCount());
+
+		arena.compact();
+		assertEquals(0, arena.removedCount());
+		assertEquals(kept.size(), arena.entryCount());
+		for (int entry = 0; entry < arena.entryCount(); entry++)
+		{
+			assertEquals(kept.get(entry), arena.name(entry));
+			int i = arena.value(entry);
+			assertEquals(i % 2 == 0 ? dirA : dirB, arena.dirOf(entry));
+			assertEquals(entry, arena.find(arena.dirOf(entry), arena.name(entry)));
+		}
+		assertEquals(-1, arena.find(dirA, "IMG_0_.JPG"));
+	}
+
+	@Test
+	void tableGrowsWithEntriesAddedAfterFirstLookup()
+	{
+		PathArena arena = new PathArena();
+		int dir = arena.dirId(DIR_A);
+		assertEquals(-1, arena.find(dir, "none"));
+
+		for (int i = 0; i < 10_000; i++)
+			assertEquals(i, i % 2 == 0 ? arena.add(dir, "f" + i) : arena.append(dir, "f" + i));
+		for (int i = 0; i < 10_000; i++)
+			assertEquals(i, arena.find(dir, "f" + i));
+		assertEquals(-1, arena.find(dir, "f10000"));
+	}
+
+	@Test
+	void sortByNameUsesCodePointOrder()
+	{
+		List<String> names = new ArrayList<>(List.of("b.jpg", "a.jpg", "Z.jpg", "é.jpg", "Ä.jpg", "日本.jpg",
+				"Ａ.jpg", "😀.jpg", "a.JPG", "ab.jpg", "a"));
+		for (int i = 0; i < 30; i++)
+			names.add(String.format("DSC%05d.ARW", (i * 7919) % 1000));
+		Collections.shuffle(names, new Random(5));
+
+		PathArena arena = new PathArena();
+		int dir = arena.dirId(DIR_A);
+		for (String name : names)
+			arena.add(dir, name);
+
+		int[] order = arena.liveEntries();
+		arena.sortByName(order);
+		List<String> sorted = new ArrayList<>();
+		for (int entry : order)
+			sorted.add(arena.name(entry));
+
+		List<String> expected = new ArrayList<>(names);
+		expected.sort(Comparator.comparing((String s) -> s.codePoints().toArray(), Arrays::compare));
+		assertEquals(expected, sorted);
+		// a supplementary character sorts after U+FF21, unlike in String.compareTo
+		assertTrue(sorted.indexOf("Ａ.jpg") < sorted.indexOf("😀.jpg"));
+	}
+
+	@Test
+	void sortByNameIsStable()
+	{
+		PathArena arena = new PathArena();
+		List<Integer> entries = new ArrayList<>();
+		for (int i = 0; i < 40; i++)
+			entries.add(arena.add(arena.dirId(Path.of("card" + i)), i % 2 == 0 ? "b.jpg" : "a.jpg"));
+
+		int[] order = entries.stream().mapToInt(Integer::intValue).toArray();
+		arena.sortByName(order);
+
+		int[] expected = new int[40];
+		for (int i = 0; i < 20; i++)
+		{
+			expected[i] = entries.get(2 * i + 1);
+			expected[20 + i] = entries.get(2 * i);
+		}
+		assertArrayEquals(expected, order);
+	}
+}
@@ -0,0 +1,154 @@
+package dev.seabird.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The walk does not visit folders {@link SortLedger#skippableFiles} allows it to skip, so a folder
+ * must only be skippable while it holds exactly the files the sorter placed there.
+ */
+class SortLedgerTest
+{
+	@TempDir
+	Path tmp;
+
+	private Path root;
+	private Path day;
+
+	@BeforeEach
+	void createFolders() throws IOException
+	{
+		root = tmp.resolve(MediaSortUtils.OUTPUT_FOLDER_NAME);
+		day = Files.createDirectories(root.resolve("S1/2024-05-01"));
+	}
+
+	private Path sorted(SortLedger ledger, String name, String subId) throws IOException
+	{
+		Path file = Files.writeString(day.resolve(name), name);
+		ledger.placed(file, subId);
+		return file;
+	}
+
+	private static int skippableFiles(SortLedger ledger, Path dir) throws IOException
+	{
+		return ledger.skippableFiles(dir, Files.readAttributes(dir, BasicFileAttributes.class));
+	}
+
+	/** Moves the folder's modification time on, as adding or removing a file does. */
+	private static void touch(Path dir) throws IOException
+	{
+		FileTime modified = Files.getLastModifiedTime(dir);
+		Files.setLastModifiedTime(dir, FileTime.fromMillis(modified.toMillis() + 2000));
+	}
+
+	private SortLedger savedWithTwoFiles() throws IOException
+	{
+		SortLedger ledger = SortLedger.load(root);
+		sorted(ledger, "IMG_0001.JPG", "S1");
+		sorted(ledger, "IMG_0002.JPG", null);
+		ledger.save();
+		return SortLedger.load(root);
+	}
+
+	@Test
+	void missingLedgerIsEmpty() throws IOException
+	{
+		SortLedger ledger = SortLedger.load(root);
+		assertEquals(-1, skippableFiles(ledger, day));
+		assertTrue(ledger.countsBySubId().isEmpty());
+		ledger.save();
+		assertFalse(Files.exists(root.resolve(SortLedger.FILE_NAME)));
+	}
+
+	@Test
+	void savedFolderIsSkippedAfterLoad() throws IOException
+	{
+		SortLedger ledger = savedWithTwoFiles();
+
+		assertTrue(Files.exists(root.resolve(SortLedger.FILE_NAME)));
+		assertEquals(2, skippableFiles(ledger, day));
+		assertTrue(ledger.contains(day.resolve("IMG_0001.JPG")));
+		assertTrue(ledger.contains(day.resolve("IMG_0002.JPG")));
+		assertEquals(Map.of("S1", 1), ledger.countsBySubId());
+	}
+
+	@Test
+	void skippedFolderThatGainsFileIsWalkedAgain() throws IOException
+	{
+		SortLedger ledger = savedWithTwoFiles();
+		Path added = Files.writeString(day.resolve("IMG_0003.JPG"), "new");
+		touch(day);
+
+		assertEquals(-1, skippableFiles(ledger, day));
+		assertFalse(ledger.contains(added));
+		assertTrue(ledger.contains(day.resolve("IMG_0001.JPG")));
+
+		// the new file stays unknown, so the folder must not become skippable on the next run
+		ledger.save();
+		ledger = SortLedger.load(root);
+		assertEquals(-1, skippableFiles(ledger, day));
+		assertFalse(ledger.contains(added));
+		assertTrue(ledger.contains(day.resolve("IMG_0002.JPG")));
+	}
+
+	@Test
+	void folderBecomesSkippableOnceNewFileIsPlaced() throws IOException
+	{
+		SortLedger ledger = savedWithTwoFiles();
+		sorted(ledger, "IMG_0003.JPG", "S2");
+		touch(day);
+		ledger.save();
+
+		ledger = SortLedger.load(root);
+		assertEquals(3, skippableFiles(ledger, day));
+		assertEquals(Map.of("S1", 1, "S2", 1), ledger.countsBySubId());
+	}
+
+	@Test
+	void deletedFileIsDropped() throws IOException
+	{
+		SortLedger ledger = savedWithTwoFiles();
+		Files.delete(day.resolve("IMG_0002.JPG"));
+		touch(day);
+		ledger.save();
+
+		ledger = SortLedger.load(root);
+		assertFalse(ledger.contains(day.resolve("IMG_0002.JPG")));
+		assertEquals(1, skippableFiles(ledger, day));
+	}
+
+	@Test
+	void folderWithSubFolderIsNotSkipped() throws IOException
+	{
+		SortLedger ledger = savedWithTwoFiles();
+		Files.createDirectory(day.resolve("extra"));
+		touch(day);
+		ledger.save();
+
+		ledger = SortLedger.load(root);
+		assertEquals(-1, skippableFiles(ledger, day));
+		assertTrue(ledger.contains(day.resolve("IMG_0001.JPG")));
+	}
+
+	@Test
+	void unreadableLedgerIsIgnored() throws IOException
+	{
+		Files.writeString(root.resolve(SortLedger.FILE_NAME), "not a ledger");
+
+		SortLedger ledger = SortLedger.load(root);
+		assertEquals(-1, skippableFiles(ledger, day));
+		assertFalse(ledger.contains(day.resolve("IMG_0001.JPG")));
+	}
+}
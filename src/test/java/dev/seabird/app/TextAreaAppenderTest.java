@@ -0,0 +1,35 @@
+package dev.seabird.app;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The appender tracks the length of every line it shows, so a message must reach the text area
+ * without the characters {@code TextArea} would silently drop.
+ */
+class TextAreaAppenderTest
+{
+	@Test
+	void plainMessageIsKept()
+	{
+		String message = "Moved\tIMG_0001.JPG to S123456/2024-05-01";
+		assertSame(message, TextAreaAppender.displayable(message));
+	}
+
+	@Test
+	void carriageReturnsBecomeLineBreaks()
+	{
+		assertEquals("frame=  12\nframe=  24\n", TextAreaAppender.displayable("frame=  12\rframe=  24\r\n"));
+		assertEquals("a\nb", TextAreaAppender.displayable("a\r\nb"));
+		assertEquals("\n", TextAreaAppender.displayable("\r"));
+	}
+
+	@Test
+	void otherControlCharactersAreDropped()
+	{
+		assertEquals("[0mdone", TextAreaAppender.displayable("\u001b[0mdone"));
+		assertEquals("bad name.jpg", TextAreaAppender.displayable("bad\u0007 name\u007F.jpg"));
+	}
+}